@@ -0,0 +1,50 @@
+package com.geometris.wqlib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Specifies an ordered list of requests sent together, such as those of a driver login: read the device address,
+ * start unidentified driver events, purge them. The Bluetooth operations of all the steps are queued back to back,
+ * in order, and the batch gets a single BatchResponse once every step is answered. Each step starts once the previous
+ * one is answered; if any step fails or cannot be sent, or the batch times out, only the failure of the batch is
+ * reported and the steps not started yet never reach the device.
+ * @see WherequbeService#sendRequest(BaseRequest, ResponseHandler, int)
+ */
+public class BatchRequest extends BaseRequest {
+
+    private final List<BaseRequest> steps;
+
+    /**
+     * @param steps requests to send, in order: REQUEST_DEVICE_ADDRESS, REQUEST_START_UDEVENTS,
+     *              REQUEST_STOP_UDEVENTS or PURGE_UDEVENTS
+     * @throws IllegalArgumentException if there is no step or a step is itself a batch
+     */
+    public BatchRequest(BaseRequest... steps) {
+        this(Arrays.asList(steps));
+    }
+
+    /**
+     * @param steps requests to send, in order
+     * @throws IllegalArgumentException if there is no step or a step is itself a batch
+     */
+    public BatchRequest(List<? extends BaseRequest> steps) {
+        super(RequestType.BATCH);
+        if (steps.isEmpty())
+            throw new IllegalArgumentException("Empty batch");
+        for (BaseRequest step : steps) {
+            if (step.requestId == RequestType.BATCH)
+                throw new IllegalArgumentException("Nested batch");
+        }
+        this.steps = Collections.unmodifiableList(new ArrayList<BaseRequest>(steps));
+    }
+
+    /**
+     * @return the requests of the batch, in order.
+     */
+    public List<BaseRequest> getSteps() {
+        return steps;
+    }
+}
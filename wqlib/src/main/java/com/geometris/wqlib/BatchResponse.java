@@ -0,0 +1,33 @@
+package com.geometris.wqlib;
+
+import java.util.List;
+
+/**
+ * Response to a BatchRequest once all its steps are answered, holding the response of each step in order.
+ */
+public class BatchResponse extends BaseResponse {
+
+    protected BatchResponse(int requestId, int messageId, List<BaseResponse> responses) {
+        super(requestId, messageId, responses);
+    }
+
+    /**
+     * @return the responses of the steps, in the order of the steps.
+     */
+    @SuppressWarnings("unchecked")
+    public List<BaseResponse> getResponses() {
+        return (List<BaseResponse>) this.obj;
+    }
+
+    /**
+     * @param requestId type of a step
+     * @return the response of the first step of that type, or null if there is none.
+     */
+    public BaseResponse getResponse(int requestId) {
+        for (BaseResponse response : getResponses()) {
+            if (response.requestId == requestId)
+                return response;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,156 @@
+package com.geometris.wqlib;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.UUID;
+
+/**
+ * Reads back the values recorded by CaptureRecorder, oldest first.
+ * The directory should not be recorded into while it is read.
+ * <pre>
+ * CaptureReader reader = new CaptureReader(directory);
+ * while (reader.next()) {
+ *     byte[] value = reader.getValue();
+ *     ...
+ * }
+ * reader.close();
+ * </pre>
+ */
+public final class CaptureReader implements Closeable {
+
+    private final ArrayList<File> segments = new ArrayList<File>();
+    private int segment = -1;
+    private MappedByteBuffer buffer;
+    private long timestampNanos;
+    private long address;
+    private int characteristicId;
+    private byte[] value;
+
+    /**
+     * @param directory directory written by a CaptureRecorder
+     * @throws IOException if the directory cannot be listed
+     */
+    public CaptureReader(File directory) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null)
+            throw new IOException("Cannot list " + directory);
+        final ArrayList<long[]> order = new ArrayList<long[]>();
+        for (int i = 0; i < files.length; i++) {
+            String name = files[i].getName();
+            if (!name.startsWith(CaptureRecorder.SEGMENT_PREFIX) || !name.endsWith(CaptureRecorder.SEGMENT_SUFFIX))
+                continue;
+            long sequence = readSequence(files[i]);
+            if (sequence >= 0)
+                order.add(new long[]{sequence, i});
+        }
+        Collections.sort(order, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return a[0] < b[0] ? -1 : (a[0] == b[0] ? 0 : 1);
+            }
+        });
+        for (long[] entry : order)
+            segments.add(files[(int) entry[1]]);
+    }
+
+    /**
+     * Reads the sequence number of a segment file.
+     * @param file segment file
+     * @return the sequence number, or -1 if the file does not exist or is not a segment
+     */
+    static long readSequence(File file) throws IOException {
+        if (!file.isFile() || file.length() < CaptureRecorder.SEGMENT_HEADER)
+            return -1;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            ByteBuffer header = ByteBuffer.allocate(CaptureRecorder.SEGMENT_HEADER);
+            raf.getChannel().read(header, 0);
+            header.flip();
+            return CaptureRecorder.isHeaderValid(header) ? header.getLong(8) : -1;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Moves to the next recorded value.
+     * @return false once every value has been read
+     * @throws IOException if a segment cannot be read
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            if (buffer != null && buffer.remaining() >= CaptureRecorder.RECORD_HEADER) {
+                int length = buffer.getInt(buffer.position());
+                if (length >= CaptureRecorder.RECORD_HEADER && length <= buffer.remaining()) {
+                    buffer.getInt();
+                    timestampNanos = buffer.getLong();
+                    address = buffer.getLong();
+                    characteristicId = buffer.getShort();
+                    value = new byte[buffer.getShort() & 0xFFFF];
+                    buffer.get(value);
+                    return true;
+                }
+            }
+            if (++segment >= segments.size()) {
+                buffer = null;
+                return false;
+            }
+            RandomAccessFile raf = new RandomAccessFile(segments.get(segment), "r");
+            try {
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            } finally {
+                raf.close();
+            }
+            buffer.position(CaptureRecorder.SEGMENT_HEADER);
+        }
+    }
+
+    /**
+     * @return monotonic time the value was received, in nanoseconds.
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    /**
+     * @return address of the device that sent the value, such as "00:11:22:AA:BB:CC".
+     */
+    public String getDeviceAddress() {
+        StringBuilder sb = new StringBuilder(17);
+        for (int shift = 40; shift >= 0; shift -= 8) {
+            if (shift != 40)
+                sb.append(':');
+            sb.append(String.format("%02X", (address >> shift) & 0xFF));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return UUID of the characteristic holding the value, or null if it was not a known one.
+     */
+    public UUID getCharacteristic() {
+        WQSmartService.WQSmartUuid[] uuids = WQSmartService.WQSmartUuid.values();
+        return characteristicId >= 0 && characteristicId < uuids.length ? uuids[characteristicId].getUuid() : null;
+    }
+
+    /**
+     * @return the value received.
+     */
+    public byte[] getValue() {
+        return value;
+    }
+
+    @Override
+    public void close() {
+        buffer = null;
+        segments.clear();
+    }
+}
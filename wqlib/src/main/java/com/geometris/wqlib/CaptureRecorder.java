@@ -0,0 +1,187 @@
+package com.geometris.wqlib;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.UUID;
+
+/**
+ * Records every characteristic value received from the device into a ring of memory-mapped segment files,
+ * for analysis with CaptureReader.
+ * <p>
+ * Each segment file starts with a 16 byte header: magic, format version and sequence number of the segment.
+ * Records follow, each made of the record length (int), a monotonic timestamp in nanoseconds (long), the
+ * device address (long, 48 bits), the characteristic id (short, WQSmartUuid ordinal, -1 if unknown), the
+ * value length (short) and the value bytes. A record length of 0 ends the segment. All values are big endian.
+ * Once the ring is full the oldest segment is overwritten.
+ * @see WherequbeService#startCapture(File, int, int)
+ */
+public final class CaptureRecorder implements Closeable {
+
+    public static final String TAG = "Geometris";
+
+    /**
+     * Default size of a segment file, in bytes.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Default number of segment files in the ring.
+     */
+    public static final int DEFAULT_SEGMENT_COUNT = 8;
+
+    static final int MAGIC = 0x57514352;    // "WQCR"
+    static final int VERSION = 1;
+    static final int SEGMENT_HEADER = 16;
+    static final int RECORD_HEADER = 24;
+    static final int MIN_SEGMENT_SIZE = 4096;
+    static final String SEGMENT_PREFIX = "capture-";
+    static final String SEGMENT_SUFFIX = ".wqc";
+
+    private static final HashMap<UUID, Integer> sCharacteristicIds = new HashMap<UUID, Integer>();
+    static {
+        for (WQSmartService.WQSmartUuid uuid : WQSmartService.WQSmartUuid.values()) {
+            if (!sCharacteristicIds.containsKey(uuid.getUuid()))
+                sCharacteristicIds.put(uuid.getUuid(), uuid.ordinal());
+        }
+    }
+
+    private final File directory;
+    private final int segmentSize;
+    private final int segmentCount;
+    private long sequence;
+    private MappedByteBuffer buffer;
+
+    /**
+     * Opens the ring in a directory, continuing after the newest segment already there.
+     * @param directory    directory holding the segment files, created if needed
+     * @param segmentSize  size of each segment file in bytes, at least 4096
+     * @param segmentCount number of segment files in the ring
+     * @throws IllegalArgumentException if the size or the count is out of range
+     * @throws IOException if the first segment cannot be created
+     */
+    public CaptureRecorder(File directory, int segmentSize, int segmentCount) throws IOException {
+        if (segmentSize < MIN_SEGMENT_SIZE)
+            throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+        if (segmentCount < 1)
+            throw new IllegalArgumentException("Invalid segment count: " + segmentCount);
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot create " + directory);
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.segmentCount = segmentCount;
+        this.sequence = -1;
+        for (int slot = 0; slot < segmentCount; slot++) {
+            long existing = CaptureReader.readSequence(segmentFile(directory, slot));
+            if (existing > sequence)
+                sequence = existing;
+        }
+        openSegment(sequence + 1);
+    }
+
+    static File segmentFile(File directory, int slot) {
+        return new File(directory, SEGMENT_PREFIX + slot + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Maps a characteristic UUID to the id stored in the records.
+     * @param uuid characteristic UUID
+     * @return the WQSmartUuid ordinal of the UUID, or -1 if it is not one of them
+     */
+    static int characteristicId(UUID uuid) {
+        Integer id = sCharacteristicIds.get(uuid);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Packs a Bluetooth address such as "00:11:22:AA:BB:CC" into the low 48 bits of a long.
+     * @param address the address, or null
+     * @return the packed address, 0 if null or malformed
+     */
+    static long packAddress(String address) {
+        if (address == null || address.length() != 17)
+            return 0;
+        long packed = 0;
+        for (int i = 0; i < 17; i += 3) {
+            int high = Character.digit(address.charAt(i), 16);
+            int low = Character.digit(address.charAt(i + 1), 16);
+            if (high < 0 || low < 0)
+                return 0;
+            packed = (packed << 8) | (high << 4) | low;
+        }
+        return packed;
+    }
+
+    /**
+     * Appends one characteristic value. Called on the Bluetooth thread for every value received;
+     * once a segment cannot be written, recording stops.
+     * @param timestampNanos   monotonic time the value was received, in nanoseconds
+     * @param address          device address, as packed by packAddress()
+     * @param characteristicId id of the characteristic, as returned by characteristicId()
+     * @param value            the value received
+     */
+    public synchronized void append(long timestampNanos, long address, int characteristicId, byte[] value) {
+        if (buffer == null)
+            return;
+        int valueLength = Math.min(Math.min(value.length, 0xFFFF), segmentSize - SEGMENT_HEADER - RECORD_HEADER - 4);
+        int length = RECORD_HEADER + valueLength;
+        if (buffer.remaining() < length + 4) {
+            try {
+                openSegment(sequence + 1);
+            } catch (IOException e) {
+                Log.w(TAG, "Capture stopped: " + e);
+                buffer = null;
+                return;
+            }
+        }
+        buffer.putInt(length);
+        buffer.putLong(timestampNanos);
+        buffer.putLong(address);
+        buffer.putShort((short) characteristicId);
+        buffer.putShort((short) valueLength);
+        buffer.put(value, 0, valueLength);
+        // Ends the segment after this record, over whatever an older lap of the ring left there.
+        buffer.putInt(buffer.position(), 0);
+    }
+
+    /**
+     * Flushes the current segment and stops recording.
+     */
+    @Override
+    public synchronized void close() {
+        if (buffer != null) {
+            buffer.force();
+            buffer = null;
+        }
+    }
+
+    private void openSegment(long sequence) throws IOException {
+        if (buffer != null)
+            buffer.force();
+        File file = segmentFile(directory, (int) (sequence % segmentCount));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(segmentSize);
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        } finally {
+            raf.close();
+        }
+        this.sequence = sequence;
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(sequence);
+        buffer.putInt(buffer.position(), 0);
+    }
+
+    // Checks the magic and format version of a segment header.
+    static boolean isHeaderValid(ByteBuffer header) {
+        return header.remaining() >= SEGMENT_HEADER && header.getInt(0) == MAGIC && header.getInt(4) == VERSION;
+    }
+}
@@ -0,0 +1,79 @@
+package com.geometris.wqlib;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Tracer writing the spans to a file in the Chrome trace event format, which can be opened with
+ * Perfetto (ui.perfetto.dev) or chrome://tracing. Spans are written as async events, so that spans
+ * starting and ending on different threads are shown as one; the thread that started a span is kept
+ * as an argument.
+ */
+public class ChromeTraceWriter implements Tracer, Closeable {
+
+    private final Writer writer;
+    private final long startNanos = System.nanoTime();
+    private boolean first = true;
+    private boolean failed;
+
+    /**
+     * Creates the file, replacing any existing one.
+     * @param file file to write
+     * @throws IOException if the file cannot be created
+     */
+    public ChromeTraceWriter(File file) throws IOException {
+        this.writer = new BufferedWriter(new FileWriter(file));
+        writer.write('[');
+    }
+
+    @Override
+    public void begin(String name, long id, int requestType) {
+        write(name, 'b', id, "requestType", requestType, -1);
+    }
+
+    @Override
+    public void begin(String name, long id, int requestType, long requestSpan) {
+        write(name, 'b', id, "requestType", requestType, requestSpan);
+    }
+
+    @Override
+    public void end(String name, long id, int status) {
+        write(name, 'e', id, "status", status, -1);
+    }
+
+    private synchronized void write(String name, char phase, long id, String argName, int argValue, long requestSpan) {
+        if (failed)
+            return;
+        long micros = (System.nanoTime() - startNanos) / 1000;
+        Thread thread = Thread.currentThread();
+        try {
+            if (!first)
+                writer.write(",\n");
+            first = false;
+            writer.write("{\"name\":\"" + name + "\",\"cat\":\"wqlib\",\"ph\":\"" + phase + "\",\"id\":\""
+                    + name + '-' + id + "\",\"ts\":" + micros + ",\"pid\":0,\"tid\":" + thread.getId()
+                    + ",\"args\":{\"" + argName + "\":" + argValue
+                    + (requestSpan >= 0 ? ",\"request\":\"" + Tracer.REQUEST + '-' + requestSpan + '"' : "")
+                    + ",\"thread\":\""
+                    + thread.getName().replace('"', '\'') + "\"}}");
+        } catch (IOException e) {
+            // Tracing must not disturb the Bluetooth threads: the trace stops at the first error.
+            failed = true;
+        }
+    }
+
+    /**
+     * Ends the trace and closes the file.
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        failed = true;
+        writer.write("]\n");
+        writer.close();
+    }
+}
@@ -0,0 +1,169 @@
+package com.geometris.wqlib;
+
+/**
+ * Sequential reader over the fragments of a reassembled protocol 1 frame.
+ * The payload is read in place, one fragment after the other, so no
+ * intermediate buffer has to be allocated or copied for each frame.
+ * Handed to TagHandler implementations positioned on the payload of their tag.
+ */
+public final class FrameCursor {
+
+    /**
+     * Bytes at the start of the first fragment that are not payload:
+     * packet count, packet identifier, protocol, total packets and one reserved byte.
+     */
+    static final int FIRST_FRAGMENT_HEADER = OBDDataInfo.TOTAL_PACKET_INDEX + 2;
+
+    /**
+     * Bytes at the start of every following fragment that are not payload: the packet count.
+     */
+    static final int FRAGMENT_HEADER = 1;
+
+    private byte[][] fragments;
+    private int fragmentCount;
+    private int fragment;   // fragment holding the next byte
+    private int index;      // position of the next byte inside that fragment
+    private int position;   // payload offset of the next byte
+    private int length;     // payload bytes available in the fragments
+
+    FrameCursor() {
+    }
+
+    /**
+     * Points the cursor at the start of a frame.
+     * @param fragments     fragments of the frame, ordered by packet count
+     * @param fragmentCount number of fragments to read from the array
+     */
+    void reset(byte[][] fragments, int fragmentCount) {
+        this.fragments = fragments;
+        this.fragmentCount = fragmentCount;
+        this.fragment = 0;
+        this.index = headerLength(0);
+        this.position = 0;
+        this.length = 0;
+        for (int i = 0; i < fragmentCount; i++) {
+            int payload = fragments[i].length - headerLength(i);
+            if (payload > 0)
+                this.length += payload;
+        }
+        normalize();
+    }
+
+    /**
+     * Makes more fragments of the same frame readable, for decoding a frame while it arrives.
+     * @param fragmentCount new number of fragments to read from the array, not less than before
+     */
+    void extend(int fragmentCount) {
+        boolean exhausted = fragment >= this.fragmentCount;
+        for (int i = this.fragmentCount; i < fragmentCount; i++) {
+            int payload = fragments[i].length - headerLength(i);
+            if (payload > 0)
+                this.length += payload;
+        }
+        this.fragmentCount = fragmentCount;
+        if (exhausted) {
+            index = headerLength(fragment);
+            normalize();
+        }
+    }
+
+    /**
+     * Moves the cursor back or forth to a payload offset of the frame it was last reset to.
+     * @param position payload offset of the next byte to read
+     */
+    void seek(int position) {
+        reset(fragments, fragmentCount);
+        skip(position);
+    }
+
+    /**
+     * @return payload offset of the next byte to be read.
+     */
+    public int position() {
+        return position;
+    }
+
+    /**
+     * @return number of payload bytes left to read.
+     */
+    public int remaining() {
+        return length - position;
+    }
+
+    /**
+     * Returns the next byte without consuming it. Callers must check remaining() first.
+     * @return the next byte, as an unsigned value
+     */
+    public int peek() {
+        return fragments[fragment][index] & 0xFF;
+    }
+
+    /**
+     * Returns a byte ahead of the cursor without consuming anything. Callers must check remaining() first.
+     * @param ahead distance from the next byte, 0 being the next byte
+     * @return the byte, as an unsigned value
+     */
+    public int peek(int ahead) {
+        int f = fragment;
+        int i = index + ahead;
+        while (i >= fragments[f].length) {
+            i -= fragments[f].length;
+            f++;
+            i += headerLength(f);
+        }
+        return fragments[f][i] & 0xFF;
+    }
+
+    /**
+     * Reads one byte. Callers must check remaining() first.
+     * @return the byte read, as an unsigned value
+     */
+    public int readUint8() {
+        int value = fragments[fragment][index++] & 0xFF;
+        position++;
+        normalize();
+        return value;
+    }
+
+    /**
+     * Reads a 32-bit value sent by the device as two 16-bit little endian words,
+     * most significant word first. Callers must check remaining() first.
+     * @return the value read; values above Integer.MAX_VALUE wrap around as in WQData.getIntValue()
+     */
+    public int readSwappedUint32() {
+        int b0 = readUint8();
+        int b1 = readUint8();
+        int b2 = readUint8();
+        int b3 = readUint8();
+        return b2 + (b3 << 8) + (b0 << 16) + (b1 << 24);
+    }
+
+    /**
+     * Skips over payload bytes, crossing fragment boundaries as needed.
+     * @param count number of bytes to skip, clamped to the bytes remaining
+     */
+    public void skip(int count) {
+        if (count > remaining())
+            count = remaining();
+        while (count > 0) {
+            int step = Math.min(count, fragments[fragment].length - index);
+            index += step;
+            position += step;
+            count -= step;
+            normalize();
+        }
+    }
+
+    private static int headerLength(int fragment) {
+        return fragment == 0 ? FIRST_FRAGMENT_HEADER : FRAGMENT_HEADER;
+    }
+
+    // Moves to the next fragment holding payload once the current one is exhausted.
+    private void normalize() {
+        while (fragment < fragmentCount && index >= fragments[fragment].length) {
+            fragment++;
+            if (fragment < fragmentCount)
+                index = headerLength(fragment);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.geometris.wqlib;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Characteristics and client characteristic configuration descriptors of a connected device, resolved once
+ * when its services are discovered, with the protocol capabilities they imply.
+ * <p>
+ * Immutable once built, so it can be read from any thread; a new table is built for every discovery.
+ */
+final class GattHandles {
+
+    /**
+     * Table of a device whose services are not discovered, resolving nothing.
+     */
+    static final GattHandles NONE = new GattHandles(null);
+
+    private final HashMap<UUID, HashMap<UUID, BluetoothGattCharacteristic>> characteristics =
+            new HashMap<UUID, HashMap<UUID, BluetoothGattCharacteristic>>();
+    private final HashMap<BluetoothGattCharacteristic, BluetoothGattDescriptor> clientConfigs =
+            new HashMap<BluetoothGattCharacteristic, BluetoothGattDescriptor>();
+    private final boolean versionTwo;
+    private final boolean deviceAddress;
+
+    /**
+     * Resolves every characteristic of the services discovered on a connection.
+     * @param gatt the connection, or null for an empty table
+     */
+    GattHandles(BluetoothGatt gatt) {
+        List<BluetoothGattService> services = gatt != null ? gatt.getServices() : null;
+        if (services != null) {
+            for (BluetoothGattService service : services) {
+                HashMap<UUID, BluetoothGattCharacteristic> byUuid = characteristics.get(service.getUuid());
+                if (byUuid == null) {
+                    byUuid = new HashMap<UUID, BluetoothGattCharacteristic>();
+                    characteristics.put(service.getUuid(), byUuid);
+                }
+                for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+                    // Like BluetoothGattService.getCharacteristic(), the first of several instances is used.
+                    if (byUuid.containsKey(characteristic.getUuid()))
+                        continue;
+                    byUuid.put(characteristic.getUuid(), characteristic);
+                    BluetoothGattDescriptor clientConfig = characteristic.getDescriptor(WQSmartService.WQSmartUuid.CCC.value);
+                    if (clientConfig != null)
+                        clientConfigs.put(characteristic, clientConfig);
+                }
+            }
+        }
+        UUID obdService = WQSmartService.WQSmartUuid.OBD_SERVICE.getUuid();
+        versionTwo = getCharacteristic(obdService, WQSmartService.WQSmartUuid.OBD_WQ_DATA_POINT.getUuid()) != null;
+        deviceAddress = getCharacteristic(obdService, WQSmartService.WQSmartUuid.OBD_DEVICE_ADDRESS.getUuid()) != null;
+    }
+
+    /**
+     * @return the characteristic of the given service, or null if the device does not have it.
+     */
+    BluetoothGattCharacteristic getCharacteristic(UUID service, UUID characteristic) {
+        HashMap<UUID, BluetoothGattCharacteristic> byUuid = characteristics.get(service);
+        return byUuid != null ? byUuid.get(characteristic) : null;
+    }
+
+    /**
+     * @return the client characteristic configuration descriptor of a characteristic of this table, or null.
+     */
+    BluetoothGattDescriptor getClientConfig(BluetoothGattCharacteristic characteristic) {
+        return clientConfigs.get(characteristic);
+    }
+
+    /**
+     * @return true if the device supports version 2 of the BLE protocol, having OBD_WQ_DATA_POINT.
+     */
+    boolean hasVersionTwo() {
+        return versionTwo;
+    }
+
+    /**
+     * @return true if the device address can be read, from OBD_DEVICE_ADDRESS.
+     */
+    boolean hasDeviceAddress() {
+        return deviceAddress;
+    }
+}
@@ -0,0 +1,44 @@
+package com.geometris.wqlib;
+
+import org.joda.time.DateTime;
+
+import java.io.Serializable;
+
+/**
+ * A single vehicle or location value, delivered as soon as it is decoded
+ * while the rest of its frame is still arriving.
+ * Sent with request type OBD_FIELD_UPDATE when incremental decoding is enabled.
+ * @see WherequbeService#setIncrementalDecoding(boolean)
+ */
+public class GeoFieldUpdate implements Serializable {
+
+    public static final int FIELD_ODOMETER = 1;
+    public static final int FIELD_ENGINE_RPM = 2;
+    public static final int FIELD_VEHICLE_SPEED = 3;
+    public static final int FIELD_FUEL_LEVEL = 4;
+    public static final int FIELD_ENGINE_HOURS = 5;
+    public static final int FIELD_LATITUDE = 6;
+    public static final int FIELD_LONGITUDE = 7;
+    public static final int FIELD_GPS_HEADING = 8;
+
+    /**
+     * Which value this is, one of the FIELD_ constants.
+     */
+    public final int field;
+
+    /**
+     * The value, scaled as the matching GeoData property.
+     */
+    public final double value;
+
+    /**
+     * Time at which decoding of the frame holding the value started.
+     */
+    public final DateTime timestamp;
+
+    GeoFieldUpdate(int field, double value, DateTime timestamp) {
+        this.field = field;
+        this.value = value;
+        this.timestamp = timestamp;
+    }
+}
@@ -0,0 +1,370 @@
+package com.geometris.wqlib;
+
+import org.joda.time.DateTime;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Vehicle and location data of one frame, stored as a fixed layout of primitive words.
+ * Holds the same values as GeoData without boxing them, so samples can be pooled,
+ * copied with a single array copy and written to a buffer or file as they are.
+ * <p>
+ * Every value occupies one word, identified by one of the class constants. Values are
+ * stored only if the frame carried them: has() tells which ones are present.
+ * Doubles are stored as their raw bits, times as milliseconds since the epoch.
+ * <p>
+ * Sent with request type OBD_SAMPLE. Receivers should call recycle() once done with the sample.
+ */
+public final class GeoSample {
+
+    /** Protocol version of the frame, long. */
+    public static final int PROTOCOL = 1;
+    /** Time the frame was decoded, long milliseconds. */
+    public static final int TIMESTAMP = 2;
+    /** Odometer, double. */
+    public static final int ODOMETER = 3;
+    /** Time the odometer was read, long milliseconds. */
+    public static final int ODOMETER_TIME = 4;
+    /** Total engine hours, double. */
+    public static final int ENGINE_HOURS = 5;
+    /** Time the engine hours were read, long milliseconds. */
+    public static final int ENGINE_HOURS_TIME = 6;
+    /** Vehicle speed, double. */
+    public static final int VEHICLE_SPEED = 7;
+    /** Time the vehicle speed was read, long milliseconds. */
+    public static final int VEHICLE_SPEED_TIME = 8;
+    /** Engine revolutions per minute, double. */
+    public static final int ENGINE_RPM = 9;
+    /** Time the engine RPM was read, long milliseconds. */
+    public static final int ENGINE_RPM_TIME = 10;
+    /** Fuel level, double. */
+    public static final int FUEL_LEVEL = 11;
+    /** Time the fuel level was read, long milliseconds. */
+    public static final int FUEL_LEVEL_TIME = 12;
+    /** GPS latitude, double. */
+    public static final int LATITUDE = 13;
+    /** GPS longitude, double. */
+    public static final int LONGITUDE = 14;
+    /** GPS heading, double. */
+    public static final int GPS_HEADING = 15;
+    /** Time of the GPS fix, long milliseconds. */
+    public static final int GPS_TIME = 16;
+    /** Count of unidentified driver events, long. */
+    public static final int TOTAL_UDRV_EVENTS = 17;
+    /** Reason of the unidentified driver event carried by the frame, long. */
+    public static final int EVENT_REASON = 18;
+    /** Timestamp of the unidentified driver event, long; the event is present when this is. */
+    public static final int EVENT_TIMESTAMP = 19;
+    /** Engine hours of the unidentified driver event, double. */
+    public static final int EVENT_ENGINE_HOURS = 20;
+    /** Vehicle speed of the unidentified driver event, double. */
+    public static final int EVENT_VEHICLE_SPEED = 21;
+    /** Odometer of the unidentified driver event, double. */
+    public static final int EVENT_ODOMETER = 22;
+    /** Latitude of the unidentified driver event, double. */
+    public static final int EVENT_LATITUDE = 23;
+    /** Longitude of the unidentified driver event, double. */
+    public static final int EVENT_LONGITUDE = 24;
+    /** GPS timestamp of the unidentified driver event, long. */
+    public static final int EVENT_GPS_TIME = 25;
+    /** Number of VIN bytes, long; see getVin(). */
+    public static final int VIN_LENGTH = 26;
+
+    // Word 0 holds the presence bits, one per value; the VIN bytes follow its length.
+    private static final int PRESENCE = 0;
+    private static final int VIN_DATA = 27;
+
+    /**
+     * Longest VIN kept, in bytes. Standard VINs are 17 characters, longer ones are truncated.
+     */
+    public static final int MAX_VIN_LENGTH = 40;
+
+    /**
+     * Number of words in a sample.
+     */
+    public static final int WORDS = VIN_DATA + MAX_VIN_LENGTH / 8;
+
+    /**
+     * Number of bytes written by writeTo().
+     */
+    public static final int BYTES = WORDS * 8;
+
+    private static final Charset VIN_CHARSET = Charset.forName("UTF-8");
+    private static final int MAX_POOL_SIZE = 32;
+    private static final Object sPoolSync = new Object();
+    private static GeoSample sPool;
+    private static int sPoolSize;
+
+    private final long[] words = new long[WORDS];
+    private GeoSample next;
+
+    /**
+     * Creates an empty sample. Use obtain() to take one from the pool instead.
+     */
+    public GeoSample() {
+    }
+
+    /**
+     * Returns an empty sample from the pool, or a new one if the pool is empty.
+     * @return an empty sample
+     */
+    public static GeoSample obtain() {
+        synchronized (sPoolSync) {
+            if (sPool != null) {
+                GeoSample sample = sPool;
+                sPool = sample.next;
+                sample.next = null;
+                sPoolSize--;
+                return sample;
+            }
+        }
+        return new GeoSample();
+    }
+
+    /**
+     * Clears this sample and returns it to the pool. It must not be used afterwards.
+     */
+    public void recycle() {
+        clear();
+        synchronized (sPoolSync) {
+            if (sPoolSize < MAX_POOL_SIZE) {
+                next = sPool;
+                sPool = this;
+                sPoolSize++;
+            }
+        }
+    }
+
+    /**
+     * Removes all values.
+     */
+    public void clear() {
+        Arrays.fill(words, 0L);
+    }
+
+    /**
+     * Replaces the values of this sample with those of another one.
+     * @param other sample to copy
+     * @return this object.
+     */
+    public GeoSample copyFrom(GeoSample other) {
+        System.arraycopy(other.words, 0, words, 0, WORDS);
+        return this;
+    }
+
+    /**
+     * @param field one of the class constants
+     * @return true if the frame carried the value.
+     */
+    public boolean has(int field) {
+        return (words[PRESENCE] & (1L << field)) != 0;
+    }
+
+    /**
+     * @param field one of the class constants holding a double
+     * @return the value, or 0 if not present.
+     */
+    public double getDouble(int field) {
+        return Double.longBitsToDouble(words[field]);
+    }
+
+    /**
+     * @param field one of the class constants holding a long
+     * @return the value, or 0 if not present.
+     */
+    public long getLong(int field) {
+        return words[field];
+    }
+
+    /**
+     * Stores a value and marks it present.
+     * @param field one of the class constants holding a double
+     * @param value value to store
+     */
+    public void setDouble(int field, double value) {
+        setLong(field, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Stores a value and marks it present.
+     * @param field one of the class constants holding a long
+     * @param value value to store
+     */
+    public void setLong(int field, long value) {
+        words[field] = value;
+        words[PRESENCE] |= 1L << field;
+    }
+
+    /**
+     * @return the vehicle identification number, or null if not present.
+     */
+    public String getVin() {
+        if (!has(VIN_LENGTH))
+            return null;
+        int length = (int) words[VIN_LENGTH];
+        byte[] vin = new byte[length];
+        for (int i = 0; i < length; i++)
+            vin[i] = vinByte(i);
+        return new String(vin, VIN_CHARSET);
+    }
+
+    /**
+     * Stores the VIN, truncated to MAX_VIN_LENGTH bytes.
+     * @param vin    buffer holding the VIN bytes
+     * @param offset position of the first VIN byte in the buffer
+     * @param length number of VIN bytes
+     */
+    public void setVin(byte[] vin, int offset, int length) {
+        length = Math.min(length, MAX_VIN_LENGTH);
+        for (int i = VIN_DATA; i < WORDS; i++)
+            words[i] = 0L;
+        for (int i = 0; i < length; i++)
+            words[VIN_DATA + (i >> 3)] |= (vin[offset + i] & 0xFFL) << ((i & 7) << 3);
+        setLong(VIN_LENGTH, length);
+    }
+
+    private byte vinByte(int index) {
+        return (byte) (words[VIN_DATA + (index >> 3)] >>> ((index & 7) << 3));
+    }
+
+    /**
+     * Writes the sample as BYTES bytes, in the byte order of the buffer.
+     * @param buffer buffer with at least BYTES bytes remaining
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.asLongBuffer().put(words);
+        buffer.position(buffer.position() + BYTES);
+    }
+
+    /**
+     * Reads a sample written by writeTo(), in the byte order of the buffer.
+     * @param buffer buffer with at least BYTES bytes remaining
+     * @return this object.
+     */
+    public GeoSample readFrom(ByteBuffer buffer) {
+        buffer.asLongBuffer().get(words);
+        buffer.position(buffer.position() + BYTES);
+        return this;
+    }
+
+    /**
+     * Creates a GeoData holding the values of this sample, for handlers of OBD_MEASUREMENT.
+     * @return a new GeoData object.
+     */
+    public GeoData toGeoData() {
+        GeoData geoData = new GeoData();
+        if (has(PROTOCOL))
+            geoData.setProtocol((int) getLong(PROTOCOL));
+        if (has(TIMESTAMP))
+            geoData.setTimeStamp(new DateTime(getLong(TIMESTAMP)));
+        if (has(VIN_LENGTH))
+            geoData.setVin(getVin());
+        if (has(ODOMETER))
+            geoData.setOdometer(getDouble(ODOMETER));
+        if (has(ODOMETER_TIME))
+            geoData.setOdometerTimestamp(new DateTime(getLong(ODOMETER_TIME)));
+        if (has(ENGINE_HOURS))
+            geoData.setEngTotalHours(getDouble(ENGINE_HOURS));
+        if (has(ENGINE_HOURS_TIME))
+            geoData.setEngTotalHoursTimestamp(new DateTime(getLong(ENGINE_HOURS_TIME)));
+        if (has(VEHICLE_SPEED))
+            geoData.setVehicleSpeed(getDouble(VEHICLE_SPEED));
+        if (has(VEHICLE_SPEED_TIME))
+            geoData.setVehicleSpeedTimestamp(new DateTime(getLong(VEHICLE_SPEED_TIME)));
+        if (has(ENGINE_RPM))
+            geoData.setEngineRPM(getDouble(ENGINE_RPM));
+        if (has(ENGINE_RPM_TIME))
+            geoData.setEngineRpmTimestamp(new DateTime(getLong(ENGINE_RPM_TIME)));
+        if (has(FUEL_LEVEL))
+            geoData.setFuelLevel(getDouble(FUEL_LEVEL));
+        if (has(FUEL_LEVEL_TIME))
+            geoData.setFuelLevelTimestamp(new DateTime(getLong(FUEL_LEVEL_TIME)));
+        if (has(LATITUDE))
+            geoData.setLatitude(getDouble(LATITUDE));
+        if (has(LONGITUDE))
+            geoData.setLongitude(getDouble(LONGITUDE));
+        if (has(GPS_HEADING))
+            geoData.setGpsHeading(getDouble(GPS_HEADING));
+        if (has(GPS_TIME))
+            geoData.setGpsTime(getLong(GPS_TIME));
+        if (has(TOTAL_UDRV_EVENTS))
+            geoData.setTotalUdrvEvents((int) getLong(TOTAL_UDRV_EVENTS));
+        if (has(EVENT_TIMESTAMP))
+            geoData.getUnidentifiedEventArrayList().add(toUnidentifiedEvent());
+        return geoData;
+    }
+
+    /**
+     * Stores the values of a GeoData created by toGeoData() that were changed since, for tag handlers
+     * still decoding into a GeoData. Unidentified events are not copied.
+     * @param geoData GeoData created from this sample
+     */
+    void updateFrom(GeoData geoData) {
+        GeoData current = toGeoData();
+        if (changed(current.getProtocol(), geoData.getProtocol()))
+            setLong(PROTOCOL, geoData.getProtocol());
+        if (changed(current.getTimeStamp(), geoData.getTimeStamp()))
+            setLong(TIMESTAMP, geoData.getTimeStamp().getMillis());
+        if (changed(current.getVin(), geoData.getVin())) {
+            byte[] vin = geoData.getVin().getBytes(VIN_CHARSET);
+            setVin(vin, 0, vin.length);
+        }
+        if (changed(current.getOdometer(), geoData.getOdometer()))
+            setDouble(ODOMETER, geoData.getOdometer());
+        if (changed(current.getOdometerTimestamp(), geoData.getOdometerTimestamp()))
+            setLong(ODOMETER_TIME, geoData.getOdometerTimestamp().getMillis());
+        if (changed(current.getEngTotalHours(), geoData.getEngTotalHours()))
+            setDouble(ENGINE_HOURS, geoData.getEngTotalHours());
+        if (changed(current.getEngTotalHoursTimestamp(), geoData.getEngTotalHoursTimestamp()))
+            setLong(ENGINE_HOURS_TIME, geoData.getEngTotalHoursTimestamp().getMillis());
+        if (changed(current.getVehicleSpeed(), geoData.getVehicleSpeed()))
+            setDouble(VEHICLE_SPEED, geoData.getVehicleSpeed());
+        if (changed(current.getVehicleSpeedTimestamp(), geoData.getVehicleSpeedTimestamp()))
+            setLong(VEHICLE_SPEED_TIME, geoData.getVehicleSpeedTimestamp().getMillis());
+        if (changed(current.getEngineRPM(), geoData.getEngineRPM()))
+            setDouble(ENGINE_RPM, geoData.getEngineRPM());
+        if (changed(current.getEngineRpmTimestamp(), geoData.getEngineRpmTimestamp()))
+            setLong(ENGINE_RPM_TIME, geoData.getEngineRpmTimestamp().getMillis());
+        if (changed(current.getFuelLevel(), geoData.getFuelLevel()))
+            setDouble(FUEL_LEVEL, geoData.getFuelLevel());
+        if (changed(current.getFuelLevelTimestamp(), geoData.getFuelLevelTimestamp()))
+            setLong(FUEL_LEVEL_TIME, geoData.getFuelLevelTimestamp().getMillis());
+        if (changed(current.getLatitude(), geoData.getLatitude()))
+            setDouble(LATITUDE, geoData.getLatitude());
+        if (changed(current.getLongitude(), geoData.getLongitude()))
+            setDouble(LONGITUDE, geoData.getLongitude());
+        if (changed(current.getGpsHeading(), geoData.getGpsHeading()))
+            setDouble(GPS_HEADING, geoData.getGpsHeading());
+        if (changed(current.getGpsTime(), geoData.getGpsTime()))
+            setLong(GPS_TIME, geoData.getGpsTime());
+        if (changed(current.getTotalUdrvEvents(), geoData.getTotalUdrvEvents()))
+            setLong(TOTAL_UDRV_EVENTS, geoData.getTotalUdrvEvents());
+    }
+
+    // A value cleared on the GeoData cannot be removed from the sample, only new values are kept.
+    private static boolean changed(Object before, Object after) {
+        return after != null && !after.equals(before);
+    }
+
+    private UnidentifiedEvent toUnidentifiedEvent() {
+        UnidentifiedEvent event = new UnidentifiedEvent();
+        event.setTimestamp(getLong(EVENT_TIMESTAMP));
+        if (has(EVENT_REASON))
+            event.setReason((int) getLong(EVENT_REASON));
+        if (has(EVENT_ENGINE_HOURS))
+            event.setEngTotalHours(getDouble(EVENT_ENGINE_HOURS));
+        if (has(EVENT_VEHICLE_SPEED))
+            event.setVehicleSpeed(getDouble(EVENT_VEHICLE_SPEED));
+        if (has(EVENT_ODOMETER))
+            event.setOdometer(getDouble(EVENT_ODOMETER));
+        if (has(EVENT_LATITUDE))
+            event.setLatitude(getDouble(EVENT_LATITUDE));
+        if (has(EVENT_LONGITUDE))
+            event.setLongitude(getDouble(EVENT_LONGITUDE));
+        if (has(EVENT_GPS_TIME))
+            event.setGPSTimestamp(getLong(EVENT_GPS_TIME));
+        return event;
+    }
+}
@@ -0,0 +1,63 @@
+package com.geometris.wqlib;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size histogram of durations in microseconds, in the manner of HdrHistogram: values are
+ * counted in buckets whose width grows with the value, keeping about 6% precision from 1 microsecond
+ * up to 38 hours in 280 counters. Recorded by one thread, read by any.
+ */
+final class LatencyHistogram {
+
+    // Values below SUB_BUCKETS get a bucket each; above, every power of two is split in HALF buckets.
+    static final int SUB_BUCKETS = 16;
+    static final int HALF = SUB_BUCKETS / 2;
+    static final long MAX_VALUE = (1L << 37) - 1;
+    static final int BUCKETS = index(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param value duration in microseconds, negative values counting as 0 and large ones as MAX_VALUE
+     */
+    void record(long value) {
+        if (value < 0)
+            value = 0;
+        else if (value > MAX_VALUE)
+            value = MAX_VALUE;
+        counts.incrementAndGet(index(value));
+        total.incrementAndGet();
+        sum.addAndGet(value);
+        if (value > max.get())
+            max.set(value);
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 3;
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) (value >> shift) - HALF;
+    }
+
+    /**
+     * @return largest value counted in a bucket.
+     */
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        long mantissa = (index - SUB_BUCKETS) % HALF + HALF;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    LatencySnapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            copy[i] = counts.get(i);
+        return new LatencySnapshot(copy, total.get(), sum.get(), max.get());
+    }
+}
@@ -0,0 +1,62 @@
+package com.geometris.wqlib;
+
+/**
+ * Copy of a latency histogram taken at one point in time. Durations are in microseconds.
+ * @see WherequbeService#getRequestStats(int)
+ */
+public class LatencySnapshot {
+
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    LatencySnapshot(long[] counts, long count, long sum, long max) {
+        this.counts = counts;
+        this.count = count;
+        this.sum = sum;
+        this.max = max;
+    }
+
+    /**
+     * @return number of durations recorded.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return longest duration recorded, 0 if none.
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return average duration, 0 if none was recorded.
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the duration that the given percentage of the recorded durations do not exceed,
+     * within the 6% precision of the histogram.
+     * @param percentile percentage, 0 to 100, such as 50 for the median or 99
+     * @return the duration, 0 if none was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0)
+            return 0;
+        long target = (long) Math.ceil(Math.max(0, Math.min(100, percentile)) / 100 * count);
+        if (target < 1)
+            target = 1;
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target)
+                return Math.min(LatencyHistogram.highestValue(i), max);
+        }
+        return max;
+    }
+}
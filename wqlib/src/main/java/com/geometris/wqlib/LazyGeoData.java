@@ -0,0 +1,312 @@
+package com.geometris.wqlib;
+
+import org.joda.time.DateTime;
+
+import java.io.ObjectStreamException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * GeoData of a protocol 1 frame that decodes each value from the frame the first time it is read.
+ * Built from the fragments of the frame and the payload offset of each tag found in it, so that
+ * frames whose values are not read cost no more than that index.
+ * Values are kept in the GeoData fields once decoded; setting a value replaces the decoded one.
+ * The accessors are synchronized, as decoding moves the shared cursor and fills the fields: like a plain GeoData,
+ * the object can be handed to another thread, the UI thread for instance, and read there.
+ */
+final class LazyGeoData extends GeoData {
+
+    static final int VIN = 0x01, ODOMETER = 0x02, ENGINE_RPM = 0x03, VEHICLE_SPEED = 0x05, FUEL_LEVEL = 0x06,
+            ENGINE_HOURS = 0x11, LATITUDE = 0x13, LONGITUDE = 0x14, GPS_TIME = 0x15, EVENT_REASON = 0x16,
+            EVENT_TIMESTAMP = 0x17, EVENT_ENGINE_HOURS = 0x18, EVENT_VEHICLE_SPEED = 0x19, EVENT_ODOMETER = 0x1A,
+            EVENT_LATITUDE = 0x1B, EVENT_LONGITUDE = 0x1C, EVENT_GPS_TIME = 0x1D, TOTAL_UDRV_EVENTS = 0x1E,
+            GPS_HEADING = 0x1F;
+
+    /**
+     * Number of tags indexed, all library tags being below it.
+     */
+    static final int TAGS = 32;
+
+    private final FrameCursor cursor = new FrameCursor();
+    // Payload offset of the occurrence of each tag providing its value, -1 if none does.
+    private final int[] offsets;
+    private final double engineRpm;
+    private final boolean hasEngineRpm;
+    // One bit per tag whose value has been decoded or set.
+    private int resolved;
+
+    /**
+     * @param fragments     fragments of the frame; only the references are kept
+     * @param fragmentCount number of fragments in the frame
+     * @param offsets       payload offset per tag, TAGS entries, -1 for tags not to decode; kept
+     * @param seen          one bit per tag present in the frame, for the value timestamps
+     * @param timestamp     time the frame was decoded
+     * @param engineRpm     engine RPM, decoded up front as it depends on the previous frames
+     * @param hasEngineRpm  whether the frame provided an engine RPM
+     */
+    LazyGeoData(byte[][] fragments, int fragmentCount, int[] offsets, int seen, DateTime timestamp,
+                double engineRpm, boolean hasEngineRpm) {
+        cursor.reset(Arrays.copyOf(fragments, fragmentCount), fragmentCount);
+        this.offsets = offsets;
+        this.engineRpm = engineRpm;
+        this.hasEngineRpm = hasEngineRpm;
+        setProtocol(1);
+        setTimeStamp(timestamp);
+        if ((seen & (1 << ODOMETER)) != 0)
+            setOdometerTimestamp(timestamp);
+        if ((seen & (1 << ENGINE_RPM)) != 0)
+            setEngineRpmTimestamp(timestamp);
+        if ((seen & (1 << VEHICLE_SPEED)) != 0)
+            setVehicleSpeedTimestamp(timestamp);
+        if ((seen & (1 << FUEL_LEVEL)) != 0)
+            setFuelLevelTimestamp(timestamp);
+        if ((seen & (1 << ENGINE_HOURS)) != 0)
+            setEngTotalHoursTimestamp(timestamp);
+    }
+
+    // Decodes the value of a tag unless it was decoded or set already; called with the lock held.
+    private void resolve(int tag) {
+        int bit = 1 << tag;
+        if ((resolved & bit) != 0)
+            return;
+        resolved |= bit;
+        if (tag == ENGINE_RPM) {
+            if (hasEngineRpm)
+                super.setEngineRPM(engineRpm);
+            return;
+        }
+        if (tag == EVENT_TIMESTAMP) {
+            if (offsets[EVENT_TIMESTAMP] >= 0)
+                super.getUnidentifiedEventArrayList().add(decodeEvent());
+            return;
+        }
+        int offset = offsets[tag];
+        if (offset < 0)
+            return;
+        cursor.seek(offset);
+        switch (tag) {
+            case VIN:
+                int length = cursor.readUint8();
+                cursor.skip(1);
+                byte[] vin = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    vin[i] = (byte) cursor.readUint8();
+                    cursor.skip(1);
+                }
+                super.setVin(new String(vin));
+                break;
+            case ODOMETER:
+                super.setOdometer((double) cursor.readSwappedUint32());
+                break;
+            case VEHICLE_SPEED:
+                super.setVehicleSpeed((double) cursor.readSwappedUint32());
+                break;
+            case FUEL_LEVEL:
+                super.setFuelLevel((double) cursor.readSwappedUint32());
+                break;
+            case ENGINE_HOURS:
+                super.setEngTotalHours(cursor.readSwappedUint32() / 10.0); //its divided by 10 because device is sending (hours times 10)
+                break;
+            case LATITUDE:
+                super.setLatitude(cursor.readSwappedUint32() / 100000.0);
+                break;
+            case LONGITUDE:
+                super.setLongitude(cursor.readSwappedUint32() / 100000.0);
+                break;
+            case GPS_HEADING:
+                super.setGpsHeading((double) cursor.readSwappedUint32());
+                break;
+            case GPS_TIME:
+                super.setGpsTime(cursor.readSwappedUint32() * 1000L);
+                break;
+            case TOTAL_UDRV_EVENTS:
+                super.setTotalUdrvEvents(cursor.readSwappedUint32());
+                break;
+        }
+    }
+
+    private UnidentifiedEvent decodeEvent() {
+        UnidentifiedEvent event = new UnidentifiedEvent();
+        event.setTimestamp((long) readEventValue(EVENT_TIMESTAMP));
+        if (offsets[EVENT_REASON] >= 0)
+            event.setReason(readEventValue(EVENT_REASON));
+        if (offsets[EVENT_ENGINE_HOURS] >= 0)
+            event.setEngTotalHours((double) readEventValue(EVENT_ENGINE_HOURS));
+        if (offsets[EVENT_VEHICLE_SPEED] >= 0)
+            event.setVehicleSpeed((double) readEventValue(EVENT_VEHICLE_SPEED));
+        if (offsets[EVENT_ODOMETER] >= 0)
+            event.setOdometer((double) readEventValue(EVENT_ODOMETER));
+        if (offsets[EVENT_LATITUDE] >= 0)
+            event.setLatitude(readEventValue(EVENT_LATITUDE) / 100000.0);
+        if (offsets[EVENT_LONGITUDE] >= 0)
+            event.setLongitude(readEventValue(EVENT_LONGITUDE) / 100000.0);
+        if (offsets[EVENT_GPS_TIME] >= 0)
+            event.setGPSTimestamp((long) readEventValue(EVENT_GPS_TIME));
+        return event;
+    }
+
+    private int readEventValue(int tag) {
+        cursor.seek(offsets[tag]);
+        return cursor.readSwappedUint32();
+    }
+
+    private void resolveAll() {
+        for (int tag = 0; tag < TAGS; tag++)
+            resolve(tag);
+    }
+
+    @Override
+    public synchronized String getVin() {
+        resolve(VIN);
+        return super.getVin();
+    }
+
+    @Override
+    public synchronized GeoData setVin(String vin) {
+        resolved |= 1 << VIN;
+        return super.setVin(vin);
+    }
+
+    @Override
+    public synchronized Double getLatitude() {
+        resolve(LATITUDE);
+        return super.getLatitude();
+    }
+
+    @Override
+    public synchronized void setLatitude(Double latitude) {
+        resolved |= 1 << LATITUDE;
+        super.setLatitude(latitude);
+    }
+
+    @Override
+    public synchronized Double getLongitude() {
+        resolve(LONGITUDE);
+        return super.getLongitude();
+    }
+
+    @Override
+    public synchronized void setLongitude(Double longitude) {
+        resolved |= 1 << LONGITUDE;
+        super.setLongitude(longitude);
+    }
+
+    @Override
+    public synchronized Double getGpsHeading() {
+        resolve(GPS_HEADING);
+        return super.getGpsHeading();
+    }
+
+    @Override
+    public synchronized void setGpsHeading(Double gpsHeading) {
+        resolved |= 1 << GPS_HEADING;
+        super.setGpsHeading(gpsHeading);
+    }
+
+    @Override
+    public synchronized Long getGpsTime() {
+        resolve(GPS_TIME);
+        return super.getGpsTime();
+    }
+
+    @Override
+    public synchronized void setGpsTime(Long gpsTime) {
+        resolved |= 1 << GPS_TIME;
+        super.setGpsTime(gpsTime);
+    }
+
+    @Override
+    public synchronized Double getEngTotalHours() {
+        resolve(ENGINE_HOURS);
+        return super.getEngTotalHours();
+    }
+
+    @Override
+    public synchronized void setEngTotalHours(Double engTotalHours) {
+        resolved |= 1 << ENGINE_HOURS;
+        super.setEngTotalHours(engTotalHours);
+    }
+
+    @Override
+    public synchronized Double getOdometer() {
+        resolve(ODOMETER);
+        return super.getOdometer();
+    }
+
+    @Override
+    public synchronized GeoData setOdometer(Double odometer) {
+        resolved |= 1 << ODOMETER;
+        return super.setOdometer(odometer);
+    }
+
+    @Override
+    public synchronized Double getEngineRPM() {
+        resolve(ENGINE_RPM);
+        return super.getEngineRPM();
+    }
+
+    @Override
+    public synchronized GeoData setEngineRPM(Double engineRPM) {
+        resolved |= 1 << ENGINE_RPM;
+        return super.setEngineRPM(engineRPM);
+    }
+
+    @Override
+    public synchronized Double getFuelLevel() {
+        resolve(FUEL_LEVEL);
+        return super.getFuelLevel();
+    }
+
+    @Override
+    public synchronized GeoData setFuelLevel(Double fuelLevel) {
+        resolved |= 1 << FUEL_LEVEL;
+        return super.setFuelLevel(fuelLevel);
+    }
+
+    @Override
+    public synchronized Double getVehicleSpeed() {
+        resolve(VEHICLE_SPEED);
+        return super.getVehicleSpeed();
+    }
+
+    @Override
+    public synchronized GeoData setVehicleSpeed(Double vehicleSpeed) {
+        resolved |= 1 << VEHICLE_SPEED;
+        return super.setVehicleSpeed(vehicleSpeed);
+    }
+
+    @Override
+    public synchronized Integer getTotalUdrvEvents() {
+        resolve(TOTAL_UDRV_EVENTS);
+        return super.getTotalUdrvEvents();
+    }
+
+    @Override
+    public synchronized GeoData setTotalUdrvEvents(Integer totalUdrvEvents) {
+        resolved |= 1 << TOTAL_UDRV_EVENTS;
+        return super.setTotalUdrvEvents(totalUdrvEvents);
+    }
+
+    @Override
+    public synchronized ArrayList<UnidentifiedEvent> getUnidentifiedEventArrayList() {
+        resolve(EVENT_TIMESTAMP);
+        return super.getUnidentifiedEventArrayList();
+    }
+
+    @Override
+    public synchronized void setUnidentifiedEventArrayList(ArrayList<UnidentifiedEvent> unidentifiedEventArrayList) {
+        resolved |= 1 << EVENT_TIMESTAMP;
+        super.setUnidentifiedEventArrayList(unidentifiedEventArrayList);
+    }
+
+    @Override
+    public synchronized GeoData copy() {
+        resolveAll();
+        return super.copy();
+    }
+
+    // Serialized as a plain GeoData holding every value, the frame itself is not kept.
+    private Object writeReplace() throws ObjectStreamException {
+        return copy();
+    }
+}
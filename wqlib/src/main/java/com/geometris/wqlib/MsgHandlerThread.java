@@ -1,14 +1,19 @@
 package com.geometris.wqlib;
 
 import android.content.Context;
+import android.os.Build;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Message;
 import android.util.Log;
+import androidx.annotation.RequiresApi;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -27,11 +32,18 @@ public class MsgHandlerThread extends HandlerThread {
     AtomicBoolean mBusy = new AtomicBoolean();
     protected HashMap<Integer, RequestHandler> mInboundRequests = new HashMap();
     protected HashMap<Integer, ResponseHandler> mPendingOutboundRequests = new HashMap();
+    // One bit per request type having a handler, read by the Bluetooth threads.
+    private volatile long mHandledTypes;
     protected static ArrayList<UUID> sDIS_CHARS = new ArrayList();
     int dis_pos = 0;
     static int sHANDLES;
     ArrayList<MsgHandlerThread.ReqTuple> mXmitQueue = new ArrayList();
     ArrayList<MsgHandlerThread.ReqTuple> mPendingXmitQueue = new ArrayList();
+    final RequestMetrics mMetrics = new RequestMetrics();
+    final PipelineMetrics mPipeline = new PipelineMetrics();
+    private long mPipelineLogInterval;
+    private PipelineStats mLastPipelineStats;
+    private long mDispatchSpans;
 
 
     /**
@@ -51,8 +63,21 @@ public class MsgHandlerThread extends HandlerThread {
         // message handling callback
         this.mHandler = new Handler(this.getLooper()) {
             public void handleMessage(Message msg) {
-                if(!MsgHandlerThread.this.mWS.isConnected()){
-                    Log.d(TAG, "MH: Ignore msg, Gatt disconnected");
+                if(msg.what == PIPELINE_LOG) {
+                    logPipelineStats();
+                }
+                else if(!MsgHandlerThread.this.mWS.isConnected()){
+                    if (WQLog.DEBUG)
+                        WQLog.d(TAG, "MH: Ignore msg, Gatt disconnected");
+                    // Requests that cannot be sent or answered any more are failed rather than left pending.
+                    if (msg.what == WQREQUEST || msg.what == WQREQUESTTIMEOUT) {
+                        MsgHandlerThread.ReqTuple rt = (MsgHandlerThread.ReqTuple) msg.obj;
+                        if (MsgHandlerThread.this.mXmitQueue.remove(rt)) {
+                            if (msg.what == WQREQUESTTIMEOUT)
+                                mWS.mTracer.end(Tracer.REQUEST, rt.handle, Tracer.FAILED);
+                            rt.fail(WQError.ERROR_UNAVAILABLE);
+                        }
+                    }
                 }
                 else {
                     MsgHandlerThread.ReqTuple rxReqTuple;
@@ -66,7 +91,13 @@ public class MsgHandlerThread extends HandlerThread {
                             BaseRequest request = (BaseRequest) msg.obj;
                             RequestHandler rh = (RequestHandler) MsgHandlerThread.this.mInboundRequests.get(request.requestId);
                             if (rh != null) {
+                                Tracer tracer = mWS.mTracer;
+                                long span = ++mDispatchSpans;
+                                tracer.begin(Tracer.HANDLER_DISPATCH, span, request.requestId);
+                                long start = System.nanoTime();
                                 rh.onRecv(MsgHandlerThread.this.mContext, request);
+                                mPipeline.messageDelivered(System.nanoTime() - start);
+                                tracer.end(Tracer.HANDLER_DISPATCH, span, Tracer.OK);
                             }
                             break;
                         case APP_IDENTIFIER:
@@ -77,26 +108,18 @@ public class MsgHandlerThread extends HandlerThread {
                         case WQREQUEST:
                             status = false;
                             rxReqTuple = (MsgHandlerThread.ReqTuple) msg.obj;
+                            mWS.mTracer.begin(Tracer.REQUEST, rxReqTuple.handle, rxReqTuple.mReq.requestId);
                             mBusy.set(true);
-                            switch(rxReqTuple.mReq.requestId)
-                            {
-                                case BaseRequest.REQUEST_DEVICE_ADDRESS:
-                                    status = mWS.readDeviceAddress();
-                                    break;
-                                case BaseRequest.PURGE_UDEVENTS:
-                                    status = mWS.purgeUnidentifiedDriverMessages();
-                                    break;
-                                case BaseRequest.REQUEST_START_UDEVENTS:
-                                    status = mWS.startTransmittingUnidentifiedDriverMessages();
-                                    break;
-                                case BaseRequest.REQUEST_STOP_UDEVENTS:
-                                    status  = mWS.stopTransmittingUnidentifiedDriverMessages();
-                                    break;
-
-                            }
+                            if (rxReqTuple.mReq instanceof BatchRequest)
+                                status = transmitBatch(rxReqTuple);
+                            else
+                                status = transmit(rxReqTuple.mReq, rxReqTuple.mPriority, rxReqTuple.handle, -1);
                             mBusy.set(false);
-                            Log.d(TAG, "MH: +++ " + rxReqTuple.mReq.requestId + " xmitted.");
+                            if (WQLog.DEBUG)
+                                WQLog.d(TAG, "MH: +++ " + rxReqTuple.mReq.requestId + " xmitted.");
                             rxReqTuple.mTxTS = System.currentTimeMillis();
+                            rxReqTuple.mTxNanos = System.nanoTime();
+                            mMetrics.recordQueueWait(rxReqTuple.mReq.requestId, rxReqTuple.mTxNanos - rxReqTuple.mQueuedNanos);
 
                             if(status) {
                                 if (rxReqTuple.mTimeout > 0) {
@@ -105,11 +128,12 @@ public class MsgHandlerThread extends HandlerThread {
                                 }
                             }
                             else {
-                                if (rxReqTuple.mResponseHandler != null) {
-                                    rxReqTuple.mResponseHandler.onError(mContext);
-                                }
+                                mMetrics.recordFailure(rxReqTuple.mReq.requestId);
+                                mWS.mTracer.end(Tracer.REQUEST, rxReqTuple.handle, Tracer.FAILED);
+                                rxReqTuple.fail(WQError.ERROR_UNAVAILABLE);
                             }
-                            Log.d("PT", "MH: after sending" + rxReqTuple.mReq.requestId  + ", Q =" + MsgHandlerThread.this.mPendingXmitQueue.size());
+                            if (WQLog.DEBUG)
+                                WQLog.d("PT", "MH: after sending" + rxReqTuple.mReq.requestId  + ", Q =" + MsgHandlerThread.this.mPendingXmitQueue.size());
                             if (MsgHandlerThread.this.mPendingXmitQueue.size() > 0) {
                                 MsgHandlerThread.this._sendNext((MsgHandlerThread.ReqTuple) MsgHandlerThread.this.mPendingXmitQueue.remove(0));
                             }
@@ -132,13 +156,15 @@ public class MsgHandlerThread extends HandlerThread {
                             if(rxReqTuplex == null) {
                                 Log.w(TAG, "MH: -?- Rx stale status:" + bs.requestId);
                             } else {
-                                Log.v(TAG, "MH: --- Rx status:" + bs.requestId + ", " + (System.currentTimeMillis() - rxReqTuplex.mTxTS) + "ms");
+                                if (WQLog.DEBUG)
+                                    WQLog.v(TAG, "MH: --- Rx status:" + bs.requestId + ", " + (System.currentTimeMillis() - rxReqTuplex.mTxTS) + "ms");
+                                mMetrics.recordRoundTrip(bs.requestId, System.nanoTime() - rxReqTuplex.mTxNanos);
+                                mWS.mTracer.end(Tracer.REQUEST, rxReqTuplex.handle, Tracer.OK);
                                 MsgHandlerThread.this.mXmitQueue.remove(rxReqTuplex);
-                                Log.d(TAG, "MH: Remove RT w/handle " + rxReqTuplex.handle);
+                                if (WQLog.DEBUG)
+                                    WQLog.d(TAG, "MH: Remove RT w/handle " + rxReqTuplex.handle);
                                 MsgHandlerThread.this.mHandler.removeMessages(WQREQUESTTIMEOUT, rxReqTuplex);
-                                if(rxReqTuplex.mResponseHandler != null) {
-                                    rxReqTuplex.mResponseHandler.onRecv(MsgHandlerThread.this.mContext, bs);
-                                }
+                                rxReqTuplex.respond(bs);
                             }
                             break;
                         case WQREQUESTFAILED:
@@ -156,22 +182,24 @@ public class MsgHandlerThread extends HandlerThread {
                             if(rxReqTuplex == null) {
                                 Log.w(TAG, "MH: -?- Rx stale status:" + bs.requestId);
                             } else {
-                                Log.v(TAG, "MH: --- Rx status:" + bs.requestId + ", " + (System.currentTimeMillis() - rxReqTuplex.mTxTS) + "ms");
+                                if (WQLog.DEBUG)
+                                    WQLog.v(TAG, "MH: --- Rx status:" + bs.requestId + ", " + (System.currentTimeMillis() - rxReqTuplex.mTxTS) + "ms");
+                                mMetrics.recordFailure(bs.requestId);
+                                mWS.mTracer.end(Tracer.REQUEST, rxReqTuplex.handle, Tracer.FAILED);
                                 MsgHandlerThread.this.mXmitQueue.remove(rxReqTuplex);
-                                Log.d(TAG, "MH: Remove RT w/handle " + rxReqTuplex.handle);
+                                if (WQLog.DEBUG)
+                                    WQLog.d(TAG, "MH: Remove RT w/handle " + rxReqTuplex.handle);
                                 MsgHandlerThread.this.mHandler.removeMessages(WQREQUESTTIMEOUT, rxReqTuplex);
-                                if(rxReqTuplex.mResponseHandler != null) {
-                                    rxReqTuplex.mResponseHandler.onError(mContext);
-                                }
+                                rxReqTuplex.fail(WQError.ERROR_FAIL);
                             }
                             break;
                         case WQREQUESTTIMEOUT:
                             rxReqTuple = (MsgHandlerThread.ReqTuple)msg.obj;
                             Log.w(TAG, "MH: ??? Timeout for :" + rxReqTuple.handle + "," + rxReqTuple.mReq.requestId + ", " + (System.currentTimeMillis() - rxReqTuple.mTxTS) + "ms");
+                            mMetrics.recordTimeout(rxReqTuple.mReq.requestId);
+                            mWS.mTracer.end(Tracer.REQUEST, rxReqTuple.handle, Tracer.FAILED);
                             MsgHandlerThread.this.mXmitQueue.remove(rxReqTuple);
-                            if(rxReqTuple.mResponseHandler != null) {
-                                rxReqTuple.mResponseHandler.onError(MsgHandlerThread.this.mContext);
-                            }
+                            rxReqTuple.fail(WQError.ERROR_TIME_OUT);
                             break;
                         case SERVICEDISCOVERED:
 
@@ -186,6 +214,50 @@ public class MsgHandlerThread extends HandlerThread {
         };
     }
 
+    // Queues the Bluetooth operations of a request, traced as part of the request with the given handle, as a step of
+    // the batch with the given handle, or -1; false if the device does not support it.
+    private boolean transmit(BaseRequest request, int priority, int handle, int batch) {
+        switch(request.requestId)
+        {
+            case BaseRequest.REQUEST_DEVICE_ADDRESS:
+                return mWS.readDeviceAddress(priority, handle, batch);
+            case BaseRequest.PURGE_UDEVENTS:
+                return mWS.purgeUnidentifiedDriverMessages(priority, handle, batch);
+            case BaseRequest.REQUEST_START_UDEVENTS:
+                return mWS.startTransmittingUnidentifiedDriverMessages(priority, handle, batch);
+            case BaseRequest.REQUEST_STOP_UDEVENTS:
+                return mWS.stopTransmittingUnidentifiedDriverMessages(priority, handle, batch);
+        }
+        return false;
+    }
+
+    // Queues the operations of every step of a batch at once in the same priority class, so that they run back to back
+    // in order, each step answered as a request of its own; WQSmartService starts a step once the previous one is
+    // answered and drops the later steps when one fails. False, with the steps queued so far dropped, if one step is
+    // not supported.
+    private boolean transmitBatch(MsgHandlerThread.ReqTuple rt) {
+        List<BaseRequest> steps = ((BatchRequest) rt.mReq).getSteps();
+        int priority = rt.mPriority != RequestPriority.DEFAULT ? rt.mPriority : RequestPriority.INTERACTIVE;
+        BatchState batch = new BatchState(rt, steps.size());
+        rt.mBatch = batch;
+        for (int index = 0; index < steps.size(); index++) {
+            BaseRequest step = steps.get(index);
+            MsgHandlerThread.ReqTuple stepTuple = new MsgHandlerThread.ReqTuple(step, batch.new StepHandler(index), 0, priority);
+            batch.mSteps.add(stepTuple);
+            this.mXmitQueue.add(stepTuple);
+            mWS.mTracer.begin(Tracer.REQUEST, stepTuple.handle, step.requestId);
+            stepTuple.mTxTS = System.currentTimeMillis();
+            stepTuple.mTxNanos = System.nanoTime();
+            if (!transmit(step, priority, stepTuple.handle, rt.handle)) {
+                Log.w(TAG, "MH: batch step not supported: " + step.requestId);
+                mMetrics.recordFailure(step.requestId);
+                batch.finish();
+                return false;
+            }
+        }
+        return true;
+    }
+
     protected  void cancelAllRequests(){
         this.mXmitQueue.clear();
         this.mPendingXmitQueue.clear();
@@ -232,37 +304,229 @@ public class MsgHandlerThread extends HandlerThread {
             this.mPendingXmitQueue.add(rt);
         } else {
             this.mXmitQueue.add(rt);
-            Log.d("PT", "MH: sendRequest:RT w/handle " + rt.handle + ",from:" + Thread.currentThread().getName());
+            if (WQLog.DEBUG)
+                WQLog.d("PT", "MH: sendRequest:RT w/handle " + rt.handle + ",from:" + Thread.currentThread().getName());
             Message m = this.mHandler.obtainMessage(WQREQUEST, rt);
             this.mHandler.sendMessage(m);
         }
 
     }
     protected void sendRequest(BaseRequest request, ResponseHandler sh, int timeout) {
-        Log.d(TAG, "MH: Tx Request: " + request.requestId);
-        MsgHandlerThread.ReqTuple rt = new MsgHandlerThread.ReqTuple(request, sh, timeout);
+        this.sendRequest(request, sh, timeout, RequestPriority.DEFAULT);
+    }
+
+    protected void sendRequest(BaseRequest request, ResponseHandler sh, int timeout, int priority) {
+        if (WQLog.DEBUG)
+            WQLog.d(TAG, "MH: Tx Request: " + request.requestId);
+        MsgHandlerThread.ReqTuple rt = new MsgHandlerThread.ReqTuple(request, sh, timeout, priority);
+        this._sendRequest(rt);
+
+    }
+
+    /**
+     * Sends a request whose response completes a future.
+     * @param request  request data
+     * @param future   future completed with the response or failure
+     * @param timeout  timeout in ms, 0 for none
+     * @param priority one of the RequestPriority constants
+     */
+    @RequiresApi(Build.VERSION_CODES.N)
+    protected void sendRequest(BaseRequest request, RequestFuture<?> future, int timeout, int priority) {
+        if (WQLog.DEBUG)
+            WQLog.d(TAG, "MH: Tx Request: " + request.requestId);
+        MsgHandlerThread.ReqTuple rt = new MsgHandlerThread.ReqTuple(request, future, timeout, priority);
+        future.bind(this, rt);
         this._sendRequest(rt);
+    }
 
+    /**
+     * Withdraws a request whose caller lost interest: it is not sent if it is still queued, and its response,
+     * failure or timeout is ignored otherwise. Safe to call from any thread.
+     * @param rt the request
+     */
+    protected void cancelRequest(MsgHandlerThread.ReqTuple rt) {
+        this.mHandler.post(() -> {
+            // Not yet handled: the request was never sent nor traced.
+            boolean queued = this.mHandler.hasMessages(WQREQUEST, rt) || this.mPendingXmitQueue.remove(rt);
+            this.mHandler.removeMessages(WQREQUEST, rt);
+            if (rt.mBatch != null)
+                rt.mBatch.finish();
+            if (this.mXmitQueue.remove(rt) && !queued) {
+                this.mHandler.removeMessages(WQREQUESTTIMEOUT, rt);
+                mWS.mTracer.end(Tracer.REQUEST, rt.handle, Tracer.FAILED);
+            }
+            if (WQLog.DEBUG)
+                WQLog.d(TAG, "MH: Cancelled RT w/handle " + rt.handle);
+        });
     }
+    /**
+     * Logs the pipeline counters, and their rates since the previous log, at a fixed interval.
+     * @param interval interval in ms, 0 to stop logging
+     */
+    protected void setPipelineLogInterval(long interval) {
+        this.mHandler.removeMessages(PIPELINE_LOG);
+        this.mPipelineLogInterval = interval;
+        this.mLastPipelineStats = null;
+        if (interval > 0)
+            this.mHandler.sendEmptyMessageDelayed(PIPELINE_LOG, interval);
+    }
+
+    private void logPipelineStats() {
+        WQSmartService service = mWS.mService;
+        if (service != null) {
+            PipelineStats stats = service.getPipelineStats();
+            Log.i(TAG, "MH: pipeline " + (mLastPipelineStats != null ? stats.since(mLastPipelineStats) : stats));
+            mLastPipelineStats = stats;
+        }
+        if (mPipelineLogInterval > 0)
+            this.mHandler.sendEmptyMessageDelayed(PIPELINE_LOG, mPipelineLogInterval);
+    }
+
     protected void setReqHandler(int type, RequestHandler rh) {
         this.mInboundRequests.put(type, rh);
+        if (type >= 0 && type < 64) {
+            if (rh != null)
+                mHandledTypes |= 1L << type;
+            else
+                mHandledTypes &= ~(1L << type);
+        }
+    }
+
+    /**
+     * Tells whether a handler is set for a message type; safe to call from any thread.
+     * @param type type of message
+     * @return true if a handler was set for the type
+     */
+    protected boolean hasReqHandler(int type) {
+        return type >= 0 && type < 64 && (mHandledTypes & (1L << type)) != 0;
+    }
+
+
+
+    /**
+     * Implemented by response handlers wanting to know why a request got no response.
+     */
+    interface FailureListener {
+        /**
+         * Called instead of ResponseHandler.onError().
+         * @param errorCode WQError.ERROR_FAIL, ERROR_TIME_OUT or ERROR_UNAVAILABLE
+         */
+        void onFailure(int errorCode);
     }
 
+    /**
+     * Progress of a batch through its steps, on the message handler thread.
+     */
+    class BatchState {
+        final MsgHandlerThread.ReqTuple mParent;
+        final ArrayList<MsgHandlerThread.ReqTuple> mSteps;
+        final BaseResponse[] mResponses;
+        int mRemaining;
+        boolean mFinished;
+
+        BatchState(MsgHandlerThread.ReqTuple parent, int count) {
+            this.mParent = parent;
+            this.mSteps = new ArrayList<MsgHandlerThread.ReqTuple>(count);
+            this.mResponses = new BaseResponse[count];
+            this.mRemaining = count;
+        }
+
+        // Stops waiting for the steps not answered yet, whose responses are then ignored, and drops those not started.
+        void finish() {
+            if (mFinished)
+                return;
+            mFinished = true;
+            WQSmartService service = mWS.mService;
+            if (service != null)
+                service.cancelBatch(mParent.handle);
+            for (MsgHandlerThread.ReqTuple step : mSteps) {
+                if (MsgHandlerThread.this.mXmitQueue.remove(step))
+                    mWS.mTracer.end(Tracer.REQUEST, step.handle, Tracer.FAILED);
+            }
+        }
+
+        // Ends the batch itself, which is answered by its steps rather than by the device.
+        private void end() {
+            MsgHandlerThread.this.mXmitQueue.remove(mParent);
+            MsgHandlerThread.this.mHandler.removeMessages(WQREQUESTTIMEOUT, mParent);
+        }
+
+        class StepHandler implements ResponseHandler, FailureListener {
+            private final int mIndex;
+
+            StepHandler(int index) {
+                this.mIndex = index;
+            }
+
+            @Override
+            public void onRecv(Context context, BaseResponse response) {
+                if (mFinished)
+                    return;
+                mResponses[mIndex] = response;
+                if (--mRemaining > 0)
+                    return;
+                finish();
+                end();
+                mMetrics.recordRoundTrip(mParent.mReq.requestId, System.nanoTime() - mParent.mTxNanos);
+                mWS.mTracer.end(Tracer.REQUEST, mParent.handle, Tracer.OK);
+                mParent.respond(new BatchResponse(mParent.mReq.requestId, WQSmartService.MESSAGE_CHARACTERISTIC_VALUE,
+                        Collections.unmodifiableList(Arrays.asList(mResponses))));
+            }
 
+            @Override
+            public void onError(Context context) {
+                onFailure(WQError.ERROR_FAIL);
+            }
+
+            @Override
+            public void onFailure(int errorCode) {
+                if (mFinished)
+                    return;
+                if (WQLog.DEBUG)
+                    WQLog.d(TAG, "MH: batch failed at step " + mIndex);
+                end();
+                mMetrics.recordFailure(mParent.mReq.requestId);
+                mWS.mTracer.end(Tracer.REQUEST, mParent.handle, Tracer.FAILED);
+                mParent.fail(errorCode);
+            }
+        }
+    }
 
     class ReqTuple {
        // public final String mStatus;
         public final BaseRequest mReq;
         public final ResponseHandler mResponseHandler;
         public final int mTimeout;
+        public final int mPriority;
         public final Integer handle;
         public long mTxTS;
-        ReqTuple(BaseRequest req, ResponseHandler responseHandler, int timeout) {
+        // Monotonic times the request was queued and sent, for the request metrics.
+        public final long mQueuedNanos;
+        public long mTxNanos;
+        // Set when the request is a batch being sent.
+        BatchState mBatch;
+        ReqTuple(BaseRequest req, ResponseHandler responseHandler, int timeout, int priority) {
           //  this.mStatus = status;
             this.mReq = req;
             this.mResponseHandler = responseHandler;
             this.mTimeout = timeout;
+            this.mPriority = priority;
             this.handle = Integer.valueOf(MsgHandlerThread.sHANDLES++);
+            this.mQueuedNanos = System.nanoTime();
+        }
+
+        void respond(BaseResponse response) {
+            if (this.mResponseHandler != null)
+                this.mResponseHandler.onRecv(MsgHandlerThread.this.mContext, response);
+        }
+
+        void fail(int errorCode) {
+            if (this.mBatch != null)
+                this.mBatch.finish();
+            if (this.mResponseHandler instanceof FailureListener)
+                ((FailureListener) this.mResponseHandler).onFailure(errorCode);
+            else if (this.mResponseHandler != null)
+                this.mResponseHandler.onError(MsgHandlerThread.this.mContext);
         }
 
         public boolean equals(Object obj) {
@@ -278,6 +542,7 @@ public class MsgHandlerThread extends HandlerThread {
     public static final int WQREQUESTTIMEOUT =5;
     public static final int WQRESPONSE =6;
     public static final int SERVICEDISCOVERED = 7;
+    public static final int PIPELINE_LOG = 8;
 }
 
 
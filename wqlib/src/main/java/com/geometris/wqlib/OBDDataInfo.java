@@ -1,16 +1,14 @@
 package com.geometris.wqlib;
 
 
-import android.util.Log;
+import android.os.SystemClock;
 
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
 
 /**
  * Created by bipin_2 on 1/25/2018.
@@ -20,6 +18,16 @@ public class OBDDataInfo {
     public static final String TAG ="Geometris";
     public static final int PACKET_COUNT_OFFSET = 0, PACKET_IDENTIFIER=1,PROTOCOL_IDENTIFIER = 2,TOTAL_PACKET_INDEX=3;
 
+    /**
+     * Number of packet slots; one per possible value of the packet count byte.
+     */
+    public static final int MAX_PACKETS = 256;
+
+    /**
+     * Default time after which a frame still missing fragments is discarded, in milliseconds.
+     */
+    public static final long DEFAULT_FRAGMENT_TIMEOUT = 2000;
+
     public GeoData geoData = null;
     private static final long RPM_MAX_AGE_IN_MILLIS= 30000; //30 seconds
     private static final Double RPM_THRESHOLD= 200.00; //30 seconds
@@ -27,19 +35,99 @@ public class OBDDataInfo {
     private static DateTime prevEngineRpmTimestamp = DateTime.now();
     private Byte protocolId;
     private Byte totalPacket;
-    private Set<Byte> pi;
-    private HashMap<Byte, byte[]> packetList;
-    private boolean complete;
-    StringBuilder VINsb = new StringBuilder();
+    // Fragments of the current frame indexed by packet count, kept between frames and reset.
+    private final byte[][] packets = new byte[MAX_PACKETS][];
+    // One bit per received packet count, so duplicates are counted once.
+    private final long[] receivedMask = new long[MAX_PACKETS / 64];
+    private int receivedCount;
+    // Reassembly of the current frame: arrival of its header, whether it arrived, and whether
+    // the fragments that followed it arrived out of order.
+    private long frameStartTime;
+    private boolean headerReceived;
+    private boolean outOfOrder;
+    private volatile long fragmentTimeout = DEFAULT_FRAGMENT_TIMEOUT;
+    // Written by the notification thread only, read by any thread.
+    private volatile long completedFrames;
+    private volatile long incompleteFrames;
+    private volatile long recoveredFrames;
+    private volatile long droppedFragments;
+    // Values of the current frame; a GeoData is only created from them when asked for.
+    private final GeoSample sample = new GeoSample();
+    private boolean frameDecoded;
+    private final FrameCursor cursor = new FrameCursor();
+    private byte[] vinBytes = new byte[40];
+    private int vinLength;
+    private volatile FieldListener fieldListener;
+    // Protocol 1 decoding progress, kept across fragments when decoding incrementally.
+    private boolean decodeStarted;
+    private boolean leadingBytesSkipped;
+    private int decodedPackets;
+    private DateTime decodeTime;
+    // Bulk unidentified event mode: every event of a frame is kept for drainUnidentifiedEvents().
+    private volatile boolean bulkEvents;
+    private boolean bulkEventsFrame;
+    private final ArrayList<UnidentifiedEvent> bulkEventList = new ArrayList<UnidentifiedEvent>();
+    private UnidentifiedEvent bulkEvent;
+    private int bulkEventTags;
+
+    // Tags decoded by the library itself. COOLANT (0x04), ECU_VOLTAGE, THROTTLE, Ambient Temperature,
+    // OBD_MPG, OBD_TRIP_MPG, OBD_INSTANT_MPG, MIL_STATUS, DTC_COUNT (0x0E), 0x0F, REGEN_SWITCH_STATUS (0x10)
+    // and 0x12 are skipped by length.
+    private static final int[] BUILTIN_TAGS = {
+            0x01, 0x02, 0x03, 0x05, 0x06, 0x11, 0x13, 0x14, 0x15, 0x1F,
+            0x16, 0x17, 0x18, 0x19, 0x1A, 0x1B, 0x1C, 0x1D, 0x1E
+    };
+    private final TagHandler builtinHandler = new BuiltinTagHandler();
+    // Per-tag payload length and handler, copied from TagRegistry; null handlers are skipped.
+    private final int[] tagLengths = new int[256];
+    private final TagHandler[] tagHandlers = new TagHandler[256];
+    private int tagTableVersion = -1;
+    // Whether applications registered handlers for tags the library does not decode.
+    private boolean customTagHandlers;
 
     public OBDDataInfo() {
-        this.pi = new HashSet<>();
         this.protocolId = -1;
         this.totalPacket=0;
-        this.packetList = new HashMap<>();
-        this.geoData = new GeoData();
-        this.complete = false;
     }
+
+    /**
+     * Clears the reassembly state so this instance can collect the next frame.
+     * The GeoData handed out by getGeoData() is left to its receiver; the sample returned
+     * by getGeoSample() is cleared and reused for the next frame.
+     */
+    public void reset() {
+        for (int i = 0; i < receivedMask.length; i++) {
+            long mask = receivedMask[i];
+            while (mask != 0) {
+                packets[(i << 6) + Long.numberOfTrailingZeros(mask)] = null;
+                mask &= mask - 1;
+            }
+            receivedMask[i] = 0;
+        }
+        receivedCount = 0;
+        this.headerReceived = false;
+        this.outOfOrder = false;
+        this.protocolId = -1;
+        this.totalPacket = 0;
+        this.geoData = null;
+        this.sample.clear();
+        this.frameDecoded = false;
+        this.vinLength = 0;
+        this.decodeStarted = false;
+        this.leadingBytesSkipped = false;
+        this.decodedPackets = 0;
+        this.decodeTime = null;
+        this.bulkEventsFrame = false;
+        for (int i = 0; i < bulkEventList.size(); i++)
+            bulkEventList.get(i).recycle();
+        bulkEventList.clear();
+        if (bulkEvent != null) {
+            bulkEvent.recycle();
+            bulkEvent = null;
+        }
+        bulkEventTags = 0;
+    }
+
     private void setProtocolId(Byte protocolId){
         this.protocolId = protocolId;
         if(protocolId==0){
@@ -62,34 +150,44 @@ public class OBDDataInfo {
     }
     public Byte getTotalPacket(){ return this.totalPacket; }
 
+    /**
+     * @return true once every packet of the frame announced by the header has arrived.
+     */
     public boolean isFull() {
-        if(totalPacket>0) {
-            if (protocolId == 0)
-                return pi.size() >= 7;
-            else if (protocolId >= 1)
-                return pi.size() >= totalPacket;
-        }
-        return false;
+        return protocolId >= 0 && totalPacket != 0 && receivedCount >= (totalPacket & 0xFF);
     }
 
+    /**
+     * Adds a fragment to the frame being reassembled. A frame starts with its header, packet 0;
+     * fragments arriving without a header, duplicates and fragments beyond the announced total are dropped.
+     * @param value the fragment, as received
+     */
     public void insertPacket(byte[] value)
+    {
+        insertPacket(value, SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * @param now arrival time of the fragment, in milliseconds of SystemClock.elapsedRealtime()
+     */
+    void insertPacket(byte[] value, long now)
     {
         if(value.length<=0) return;
 
-        Byte packet_count = value[PACKET_COUNT_OFFSET];
-        Log.d(TAG, "OBD Raw Data:");
-        String logString="";
-        StringBuilder sb = new StringBuilder();
-        for(byte c : value) {
-            sb.append(String.format("%02x, ",c));
-        }
-        logString = new String(sb);
-        Log.d(TAG, logString + "\r\n");
+        int packet_count = value[PACKET_COUNT_OFFSET] & 0xFF;
+        if(WQLog.DEBUG)
+            WQLog.d(TAG, "OBD Raw Data: " + WQLog.hex(value));
 
-        if(packet_count> 0 && pi.isEmpty())
-            return;
+        if(receivedCount > 0 && !isFull() && now - frameStartTime > fragmentTimeout) {
+            // A fragment of the frame was lost; the rest of it is dropped until the next header.
+            discardFrame();
+        }
         if(packet_count ==0 )
         {
+            // A header starts a new frame, whatever is left of the previous one can no longer complete.
+            if(headerReceived)
+                discardFrame();
+            headerReceived = true;
             if(value.length>1 && value[PACKET_IDENTIFIER] == (byte) 0xCB)
             {
                 Byte protocol_id = value[PROTOCOL_IDENTIFIER];
@@ -101,31 +199,86 @@ public class OBDDataInfo {
                 setProtocolId( (byte) 0);
             }
         }
-        insertIndex(packet_count);
+        else if(!headerReceived) {
+            // Without its header, a fragment cannot be told from one of an earlier frame whose header was lost.
+            droppedFragments++;
+            return;
+        }
+        // Packets beyond the announced total cannot complete the frame; a repeated packet is only kept once.
+        if(packet_count >= (totalPacket & 0xFF) || hasPacket(packet_count)) {
+            droppedFragments++;
+            return;
+        }
+        if(packet_count == 0)
+            frameStartTime = now;
+        else if(packet_count != receivedCount)
+            outOfOrder = true;
         insertPacket(packet_count, value);
+        if(isFull()) {
+            completedFrames++;
+            if(outOfOrder)
+                recoveredFrames++;
+        }
 
+        if(fieldListener != null && protocolId == 1) {
+            int available = contiguousPackets();
+            if(available > decodedPackets)
+                decodeProtocolOne(available, DateTime.now());
+        }
+    }
+    // Discards the frame being reassembled, counting it as incomplete unless it was complete.
+    private void discardFrame() {
+        if(headerReceived && !isFull())
+            incompleteFrames++;
+        reset();
+    }
+
+    /**
+     * Sets how long a frame may wait for its missing fragments. Once exceeded, the frame is discarded
+     * on the next fragment and fragments are dropped until the next header.
+     * @param timeout timeout in milliseconds
+     */
+    void setFragmentTimeout(long timeout) {
+        this.fragmentTimeout = timeout;
     }
-    private void insertIndex(Byte index) {
-        pi.add(index);
+
+    /**
+     * @return counters of the frames reassembled so far.
+     */
+    ReassemblyStats getReassemblyStats() {
+        return new ReassemblyStats(completedFrames, incompleteFrames, recoveredFrames, droppedFragments);
+    }
+
+    private boolean hasPacket(int index) {
+        return (receivedMask[index >> 6] & (1L << (index & 63))) != 0;
     }
-    private void insertPacket(Byte index, byte[] packet){
-        packetList.put(index, packet);
-   }
-    private HashMap<Byte, byte[]> getPacketList(){ return packetList;};
 
-    private void insertVIN(Byte index, String data) {
+    private void insertPacket(int index, byte[] packet){
+        receivedMask[index >> 6] |= 1L << (index & 63);
+        receivedCount++;
+        packets[index] = packet;
+    }
+
+    // The protocol 0 VIN is split over packets 0 and 1, a leading '-' meaning it is not available.
+    private void insertVIN(int index, byte[] packet) {
+        int length = packet.length - 1;
         if (index == 0) {
-            if (data.length() > 0)
-                VINsb.insert(0, data);
+            vinLength = 0;
+            if (length > 0) {
+                if (vinBytes.length < length)
+                    vinBytes = new byte[length];
+                System.arraycopy(packet, 1, vinBytes, 0, length);
+                vinLength = length;
+            }
         } else if (index == 1) {
-            if (VINsb != null && VINsb.length() > 0) {
-                VINsb.append(data);
-                if (VINsb.charAt(0) != '-') {
-                    if (this.geoData != null)
-                        this.geoData.setVin(VINsb.toString());
-                }
+            if (vinLength > 0) {
+                if (vinBytes.length < vinLength + length)
+                    vinBytes = Arrays.copyOf(vinBytes, vinLength + length);
+                System.arraycopy(packet, 1, vinBytes, vinLength, length);
+                if (vinBytes[0] != '-')
+                    sample.setVin(vinBytes, 0, vinLength + length);
             }
-            VINsb = new StringBuilder(35);
+            vinLength = 0;
         }
     }
 
@@ -136,72 +289,128 @@ public class OBDDataInfo {
      */
     private void setRPM(double RPM, DateTime rpmTime){
         if(RPM !=-1) {
-            geoData.setEngineRPM(RPM);
+            sample.setDouble(GeoSample.ENGINE_RPM, RPM);
             prevEngineRpm = RPM;
             prevEngineRpmTimestamp=rpmTime;
+            publish(GeoFieldUpdate.FIELD_ENGINE_RPM, RPM, rpmTime);
         }
         else
         {
-            if(is_RPM_Active())
-                geoData.setEngineRPM(prevEngineRpm);
+            if(is_RPM_Active()) {
+                sample.setDouble(GeoSample.ENGINE_RPM, prevEngineRpm);
+                publish(GeoFieldUpdate.FIELD_ENGINE_RPM, prevEngineRpm, rpmTime);
+            }
         }
     }
+    /**
+     * Decodes the frame, once complete, into a GeoData object.
+     * @return the vehicle and location data, or null if the frame is not complete yet.
+     */
     public GeoData getGeoData()
     {
         if(!isFull())
             return null;
-        DateTime now = DateTime.now();
-        geoData.setTimeStamp(now);
+        if(getProtocolId()==1 && !frameDecoded && !decodeStarted && !bulkEvents)
+            geoData = indexProtocolOne(DateTime.now());
+        if(geoData == null) {
+            decodeFrame();
+            geoData = sample.toGeoData();
+        }
+        if(WQLog.DEBUG)
+            logFrame(geoData);
+        return geoData;
+    }
+
+    private static void logFrame(GeoData geoData) {
+        DateTime now = geoData.getTimeStamp();
         DateTimeFormatter formatter = DateTimeFormat.forPattern("HH:mm:ss");
-        HashMap<Byte, byte[]> packets = getPacketList();
-        geoData.setProtocol( getProtocolId().intValue());
         StringBuilder sb = new StringBuilder();
+        sb.append("vi:").append(geoData.getVin()).append('(').append(now).append(')');
+        sb.append("od:").append(geoData.getOdometer()).append('(').append(now).append(')');
+        sb.append("r:").append(geoData.getEngineRPM()).append('(').append(now).append(')');
+        sb.append("fl:").append(geoData.getFuelLevel()).append('(').append(now).append(')');
+        sb.append("sp:").append(geoData.getVehicleSpeed()).append('(').append(now).append(')');
+        sb.append("enhr:").append(geoData.getEngTotalHours()).append('(').append(now).append(')');
+        sb.append("lt:").append(geoData.getLatitude());
+        sb.append("ln:").append(geoData.getLongitude());
+        DateTimeFormatter formatter1 = DateTimeFormat.forPattern("yyyy/M/d h:m:s a");
+        sb.append("gt:").append(formatter1.print(new DateTime(geoData.getGpsTime())));
+        sb.append("TUL: ").append(geoData.getTotalUdrvEvents()).append(' ');
+        ArrayList<UnidentifiedEvent> uList = geoData.getUnidentifiedEventArrayList();
+        for (int i = 0; i < uList.size(); i++) {
+            UnidentifiedEvent ue = uList.get(i);
+            sb.append("( ure:").append(ue.getReason()).append(' ');
+            sb.append("uts:").append(ue.getTimestamp()).append(' ');
+            sb.append("uhr:").append(ue.getEngTotalHours()).append(' ');
+            sb.append("us:").append(ue.getVehicleSpeed()).append(' ');
+            sb.append("uo:").append(ue.getOdometer()).append(' ');
+            sb.append("ult:").append(ue.getLatitude()).append(' ');
+            sb.append("uln:").append(ue.getLongitude()).append(' ');
+            sb.append("ugt:").append(ue.getGPSTimestamp()).append(')');
+        }
+        WQLog.d(TAG, sb.toString());
+        WQLog.d(TAG, "New Data Updated: RPM:  " + geoData.getEngineRPM() + ", Time: " + formatter.print(now));
+    }
+
+    /**
+     * Decodes the frame, once complete, without creating any object for its values.
+     * @return the values of the frame, valid until reset(); null if the frame is not complete yet.
+     */
+    public GeoSample getGeoSample() {
+        if(!isFull())
+            return null;
+        decodeFrame();
+        return sample;
+    }
+
+    private void decodeFrame() {
+        if(frameDecoded)
+            return;
+        frameDecoded = true;
+        DateTime now = DateTime.now();
+        long nowMillis = now.getMillis();
+        sample.setLong(GeoSample.TIMESTAMP, nowMillis);
+        sample.setLong(GeoSample.PROTOCOL, getProtocolId());
 
         if(getProtocolId()==0){
 
-            Byte ind = 0, totalPacket = getTotalPacket();
+            int ind = 0, totalPacket = getTotalPacket();
 
             while(ind<totalPacket){
-                byte[] packet = packets.get(ind);
+                byte[] packet = packets[ind];
                 switch(ind) {
                     case 0:
                     case 1:
-                        String VIN = WQData.getStringValue(1, packet);
-                        insertVIN(ind, VIN);
+                        insertVIN(ind, packet);
                         break;
                     case 2:
-
-                        double odometer =
-                                (double) WQData.getIntValue(WQData.FORMAT_UINT32,
-                                        1, packet);
+                        // Values are read as signed 32-bit so 0xFFFFFFFF (not available) stays -1.
+                        double odometer = WQData.getSint32(1, packet);
                         if(odometer != -1) {
-                            geoData.setOdometer(odometer);
+                            sample.setDouble(GeoSample.ODOMETER, odometer);
                         }
 
-                        geoData.setOdometerTimestamp(now);
-                        double RPM =
-                                (double) WQData.getIntValue(WQData.FORMAT_UINT32,
-                                        5,packet);
+                        sample.setLong(GeoSample.ODOMETER_TIME, nowMillis);
+                        double RPM = WQData.getSint32(5, packet);
 
                         setRPM(RPM, now);
-                        geoData.setEngineRpmTimestamp(now);
-                        Log.d(TAG, "rpm:"+RPM);
+                        sample.setLong(GeoSample.ENGINE_RPM_TIME, nowMillis);
+                        if(WQLog.DEBUG)
+                            WQLog.d(TAG, "rpm:"+RPM);
 
-                        double speed =
-                                (double) WQData.getIntValue(WQData.FORMAT_UINT32,
-                                        13, packet);
+                        double speed = WQData.getSint32(13, packet);
                         if(speed != -1) {
-                            geoData.setVehicleSpeed(speed);
+                            sample.setDouble(GeoSample.VEHICLE_SPEED, speed);
                         }
-                        geoData.setVehicleSpeedTimestamp(now);
+                        sample.setLong(GeoSample.VEHICLE_SPEED_TIME, nowMillis);
                         break;
                     case 3:
-                        double fuel_level = (double) WQData.getIntValue(WQData.FORMAT_UINT32,
-                                1,packet);
+                        double fuel_level = WQData.getSint32(1, packet);
                         if (fuel_level != -1)
-                            geoData.setFuelLevel(fuel_level);
-                        geoData.setFuelLevelTimestamp(now);
-                        Log.d(TAG, "fuel:"+fuel_level);
+                            sample.setDouble(GeoSample.FUEL_LEVEL, fuel_level);
+                        sample.setLong(GeoSample.FUEL_LEVEL_TIME, nowMillis);
+                        if(WQLog.DEBUG)
+                            WQLog.d(TAG, "fuel:"+fuel_level);
 
                         break;
 
@@ -210,11 +419,11 @@ public class OBDDataInfo {
                     case 5:
                         break;
                     case 6:
-                        double engine_hours = WQData.getIntValue(WQData.FORMAT_UINT32, 5, packet);
+                        double engine_hours = WQData.getSint32(5, packet);
                         if (engine_hours != -1) {
-                            geoData.setEngTotalHours(engine_hours / 10); //its divided by 10 because device is sending (hours times 10)
+                            sample.setDouble(GeoSample.ENGINE_HOURS, engine_hours / 10); //its divided by 10 because device is sending (hours times 10)
                         }
-                        geoData.setEngTotalHoursTimestamp(now);
+                        sample.setLong(GeoSample.ENGINE_HOURS_TIME, nowMillis);
                         break;
                 }
                 ind++;
@@ -222,295 +431,416 @@ public class OBDDataInfo {
 
         }
         else if(getProtocolId()==1) {
-            byte[] geobuff = new byte[500];
-            Byte pi = 0,totalPacket = getTotalPacket();
-            int totaldata=0,  index_count=0;
-
-            while(pi<totalPacket) {
-                byte[] packetData = packets.get(pi);
-                for (int k = 1; k < packetData.length; k++) {
-                    if(pi==0 && k <=(TOTAL_PACKET_INDEX+1)) continue;
-                    geobuff[totaldata++] = packetData[k];
-                }
-                pi++;
-            }
-
-            index_count=2;
-            boolean parseexit =false;
-            byte[] tbytes;
-            UnidentifiedEvent unidentifiedEvent = new UnidentifiedEvent();
-            Integer totalUdrvEvents = 0;
-            while(index_count < totaldata){
-
-                switch(geobuff[index_count])
-                {
-                    case 0x01:  //VIN
-                        index_count+=2;
-                        int vinlength  = geobuff[index_count];
-                        index_count+=2;
-                        if(vinlength>0) {
-                            byte[] strBytes = new byte[vinlength];
-                            for (int i = 0; i < vinlength; i++) {
-                                strBytes[i] = geobuff[index_count];
-                                index_count+=2;
-                            }
-                            String vin = new String(strBytes);
-                            geoData.setVin(vin);
-                        }
-
-                        break;
-
-                    case 0x02:
-                        index_count+=2;
-                        tbytes= WQData.fixUint32Endian(geobuff, index_count);
-                        double odometer = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
-                        if (odometer != -1) {
-                            geoData.setOdometer(odometer);
-                        }
-                        geoData.setOdometerTimestamp(now);
-                        index_count = index_count+4;
-                        break;
-
-                    case 0x03: //RPM
-                        index_count+=2;
-                        tbytes= WQData.fixUint32Endian(geobuff, index_count);
-                        double RPM = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
-                        setRPM(RPM, now);
-                        geoData.setEngineRpmTimestamp(now);
-                        Log.d(TAG, "rpm:"+RPM);
-                        index_count = index_count+4;
-
-                        break;
+            decodeProtocolOne(getTotalPacket() & 0xFF, now);
+            finishBulkEvent();
+        }
+    }
 
-                    case 0x04: //COOLANT
-                        index_count+=2;
-                        index_count = index_count+4;
+    /**
+     * Enables bulk decoding of unidentified driver events, for streaming the device's backlog.
+     * Every event of a protocol 1 frame is then decoded into a pooled UnidentifiedEvent, kept for
+     * drainUnidentifiedEvents() instead of being added to the frame's GeoData.
+     * Applies from the next frame on.
+     * @param enable true to keep every event of each frame
+     */
+    void setBulkUnidentifiedEvents(boolean enable) {
+        this.bulkEvents = enable;
+    }
 
-                        break;
-                    case 0x05: //SPEED
-                        index_count+=2;
-                        tbytes= WQData.fixUint32Endian(geobuff, index_count);
-                        double speed = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
-                        if (speed != -1) {
-                            geoData.setVehicleSpeed(speed);
-                        }
-                        geoData.setVehicleSpeedTimestamp(now);
-                        index_count = index_count+4;
-                        break;
+    /**
+     * Moves the events decoded in bulk mode from the complete frame to a list.
+     * @param out list receiving the events, which then belong to the caller
+     * @return number of events added to the list
+     */
+    int drainUnidentifiedEvents(ArrayList<UnidentifiedEvent> out) {
+        if(!isFull())
+            return 0;
+        decodeFrame();
+        int count = bulkEventList.size();
+        out.addAll(bulkEventList);
+        bulkEventList.clear();
+        return count;
+    }
 
-                    case 0x06: //FUEL LEVEL
-                        index_count+=2;
-                        tbytes= WQData.fixUint32Endian(geobuff, index_count);
-                        double fuel_level = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
-                        if (fuel_level != -1) {
-                            geoData.setFuelLevel(fuel_level);
-                        }
-                        geoData.setFuelLevelTimestamp(now);
-                        Log.d(TAG, "fuel:"+fuel_level);
-                        index_count = index_count+4;
+    /**
+     * Receives fields of a protocol 1 frame as soon as they are decoded,
+     * before the whole frame has arrived.
+     */
+    interface FieldListener {
+        /**
+         * @param field     one of the GeoFieldUpdate field constants
+         * @param value     decoded value, scaled as in GeoData
+         * @param timestamp time at which decoding of the frame started
+         */
+        void onFieldDecoded(int field, double value, DateTime timestamp);
+    }
 
-                        break;
-                    case 0x07: //ECU_VOLTAGE
-                        index_count+=2;
-                        index_count = index_count+4;
+    /**
+     * Enables incremental decoding of protocol 1 frames. Each TLV is then decoded as soon as
+     * the fragments holding it, and all fragments before them, have arrived.
+     * getGeoData() still returns the consolidated frame.
+     * @param listener receiver of the decoded fields, or null to decode only complete frames
+     */
+    void setFieldListener(FieldListener listener) {
+        this.fieldListener = listener;
+    }
 
+    // Number of packets, starting at packet 0, that have all been received.
+    private int contiguousPackets() {
+        int total = totalPacket & 0xFF;
+        int count = decodedPackets;
+        while (count < total && (receivedMask[count >> 6] & (1L << (count & 63))) != 0)
+            count++;
+        return count;
+    }
 
-                        break;
-                    case 0x08: //THROTTLE
-                        index_count+=2;
-                        index_count = index_count+4;
+    /**
+     * Decodes every complete TLV found in the first packets of a protocol 1 frame,
+     * resuming where the previous call stopped.
+     * @param available number of leading packets that have been received
+     * @param now       timestamp for the decoded fields, used when decoding of the frame starts
+     */
+    private void decodeProtocolOne(int available, DateTime now) {
+        FrameCursor cursor = this.cursor;
+        if (!decodeStarted) {
+            updateTagTable();
+            cursor.reset(packets, available);
+            decodeStarted = true;
+            decodeTime = now;
+            bulkEventsFrame = bulkEvents;
+        } else if (available > decodedPackets) {
+            cursor.extend(available);
+        }
+        decodedPackets = available;
+        if (!leadingBytesSkipped) {
+            if (cursor.remaining() < 2)
+                return;
+            cursor.skip(2);
+            leadingBytesSkipped = true;
+        }
+        while (cursor.remaining() > 0) {
+            int tag = cursor.peek();
+            int length = tlvLength(tag);
+            if (cursor.remaining() < length)
+                return;
+            cursor.skip(2);
+            int end = cursor.position() + length - 2;
+            TagHandler handler = tagHandlers[tag];
+            if (handler != null)
+                handler.decode(tag, cursor, sample);
+            cursor.skip(end - cursor.position());
+        }
+    }
 
-                        break;
-                    case 0x09: //Ambient Temperature
-                        index_count+=2;
-                        index_count = index_count+4;
-                        break;
+    /**
+     * @return total length of the TLV starting at the cursor, tag word included.
+     */
+    private int tlvLength(int tag) {
+        int payload = tagLengths[tag];
+        if (payload != TagHandler.COUNTED_PAYLOAD)
+            return 2 + payload;
+        if (cursor.remaining() < 4)
+            return 4;
+        return 4 + cursor.peek(2) * 2;
+    }
 
-                    case 0x0A: //OBD_MPG
-                        index_count+=2;
-                        index_count = index_count+4;
-                        break;
+    /**
+     * Indexes a complete protocol 1 frame for a LazyGeoData, which decodes the values when they are read.
+     * Only the engine RPM is decoded here, as its fallback depends on the previous frames.
+     * @param now time the frame is decoded
+     * @return the lazy GeoData, or null if application tag handlers require decoding the whole frame
+     */
+    private GeoData indexProtocolOne(DateTime now) {
+        updateTagTable();
+        if (customTagHandlers)
+            return null;
+        int[] offsets = new int[LazyGeoData.TAGS];
+        Arrays.fill(offsets, -1);
+        int seen = 0;
+        decodeTime = now;
+        FrameCursor cursor = this.cursor;
+        int total = totalPacket & 0xFF;
+        cursor.reset(packets, total);
+        if (cursor.remaining() >= 2) {
+            cursor.skip(2);
+            while (cursor.remaining() > 0) {
+                int tag = cursor.peek();
+                int length = tlvLength(tag);
+                if (cursor.remaining() < length)
+                    break;
+                cursor.skip(2);
+                int position = cursor.position();
+                int end = position + length - 2;
+                if (tag < LazyGeoData.TAGS && tagHandlers[tag] == builtinHandler) {
+                    seen |= 1 << tag;
+                    switch (tag) {
+                        case LazyGeoData.VIN:
+                            if (cursor.peek() > 0)
+                                offsets[tag] = position;
+                            break;
+                        case LazyGeoData.ENGINE_RPM:
+                            setRPM(cursor.readSwappedUint32(), now);
+                            break;
+                        case LazyGeoData.ODOMETER:
+                        case LazyGeoData.VEHICLE_SPEED:
+                        case LazyGeoData.FUEL_LEVEL:
+                        case LazyGeoData.ENGINE_HOURS:
+                        case LazyGeoData.LATITUDE:
+                        case LazyGeoData.LONGITUDE:
+                        case LazyGeoData.GPS_HEADING:
+                        case LazyGeoData.EVENT_LATITUDE:
+                        case LazyGeoData.EVENT_LONGITUDE:
+                            // -1 means not available, an earlier value of the tag is then kept.
+                            if (cursor.readSwappedUint32() != -1)
+                                offsets[tag] = position;
+                            break;
+                        default:
+                            offsets[tag] = position;
+                            break;
+                    }
+                }
+                cursor.skip(end - cursor.position());
+            }
+        }
+        return new LazyGeoData(packets, total, offsets, seen, now,
+                sample.getDouble(GeoSample.ENGINE_RPM), sample.has(GeoSample.ENGINE_RPM));
+    }
 
-                    case 0x0B: //OBD_TRIP_MPG
-                        index_count+=2;
-                        index_count = index_count+4;
-                        break;
+    // Refreshes the tag table when applications registered or removed handlers.
+    private void updateTagTable() {
+        if (tagTableVersion == TagRegistry.version())
+            return;
+        for (int tag = 0; tag < 256; tag++)
+            tagHandlers[tag] = null;
+        for (int tag : BUILTIN_TAGS)
+            tagHandlers[tag] = builtinHandler;
+        tagTableVersion = TagRegistry.copyTo(tagLengths, tagHandlers);
+        customTagHandlers = false;
+        for (int tag = 0; tag < 256; tag++) {
+            if (tagHandlers[tag] != null && tagHandlers[tag] != builtinHandler)
+                customTagHandlers = true;
+        }
+    }
 
-                    case 0x0C: //OBD_INSTANT_MPG
-                        index_count+=2;
-                        index_count = index_count+4;
-                        break;
+    private void publish(int field, double value, DateTime now) {
+        FieldListener listener = fieldListener;
+        if (listener != null && decodeStarted)
+            listener.onFieldDecoded(field, value, now);
+    }
 
-                    case 0x0D: //MIL_STATUS
-                        index_count+=2;
-                        index_count = index_count+4;
-                        break;
+    /**
+     * Decodes the tags the library knows about into the frame's sample.
+     * A single class handles all of them so the decode loop only ever calls one implementation.
+     */
+    private class BuiltinTagHandler implements TagHandler {
+        @Override
+        public void decode(int tag, FrameCursor cursor, GeoSample sample) {
+            decodeBuiltinTag(tag, cursor, sample, decodeTime);
+        }
+    }
 
-                    case 0x0E: //DTC_COUNT
-                        index_count+=2;
-                        index_count = index_count+4;
-                        break  ;
-                    case 0x0F:
-                        index_count+=2;
-                        int i= geobuff[index_count];
-                        index_count+=2;
-                        index_count = index_count +i*2 ;
-                        break;
-                    case 0x10: //REGEN_SWITCH_STATUS
-                        index_count+=2;
-                        index_count = index_count+4;
-                        break;
+    private void decodeBuiltinTag(int tag, FrameCursor cursor, GeoSample sample, DateTime now) {
+        long nowMillis = now.getMillis();
+        switch(tag)
+        {
+            case 0x01:  //VIN
+                int vinlength  = cursor.readUint8();
+                cursor.skip(1);
+                if(vinlength>0) {
+                    if(vinBytes.length < vinlength)
+                        vinBytes = new byte[vinlength];
+                    for (int i = 0; i < vinlength; i++) {
+                        vinBytes[i] = (byte) cursor.readUint8();
+                        cursor.skip(1);
+                    }
+                    sample.setVin(vinBytes, 0, vinlength);
+                }
+                break;
 
-                    case 0x11: //Engine Hours
-                        index_count+=2;
-                        tbytes= WQData.fixUint32Endian(geobuff, index_count);
-                        double engine_hours = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
-                        if (engine_hours != -1) {
-                            geoData.setEngTotalHours(engine_hours / 10); //its divided by 10 because device is sending (hours times 10)
-                        }
-                        geoData.setEngTotalHoursTimestamp(now);
-                        index_count = index_count+4;
-                        break;
-                    case 0x12:
-                        index_count+=2;
-                        index_count = index_count+4;
-                        break;
-                    case 0x13: //Longitude
-                        index_count+=2;
-                        tbytes= WQData.fixUint32Endian(geobuff, index_count);
-                        double latitude = WQData.getIntValue(WQData.FORMAT_UINT32, 0,tbytes);
-                        if (latitude != -1)
-                            geoData.setLatitude(latitude / 100000);
-                        index_count = index_count+4;
-                        break;
-                    case 0x14: //Latitude
-                        index_count+=2;
-                        tbytes= WQData.fixUint32Endian(geobuff, index_count);
-                        double longitude = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
-                        if (longitude != -1)
-                            geoData.setLongitude(longitude / 100000);
-                        index_count = index_count+4;
-                        break;
-                    case 0x15: //Location Time Stamp
-                        index_count+=2;
-                        tbytes= WQData.fixUint32Endian(geobuff, index_count);
-                        long timestamp = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
-                        geoData.setGpsTime(timestamp*1000);
-                        long _startTS = (long) (timestamp * 1000);
-                        DateTime _startDate = new DateTime( _startTS );
-                        DateTimeFormatter formatter1 = DateTimeFormat.forPattern("yyyy/M/d h:m:s a");
-                        Log.d(TAG, "LATLON TIMESTAMP: " + formatter1.print(_startDate));
-                        index_count = index_count+4;
+            case 0x02:
+                double odometer = cursor.readSwappedUint32();
+                if (odometer != -1) {
+                    sample.setDouble(GeoSample.ODOMETER, odometer);
+                    publish(GeoFieldUpdate.FIELD_ODOMETER, odometer, now);
+                }
+                sample.setLong(GeoSample.ODOMETER_TIME, nowMillis);
+                break;
+
+            case 0x03: //RPM
+                double RPM = cursor.readSwappedUint32();
+                setRPM(RPM, now);
+                sample.setLong(GeoSample.ENGINE_RPM_TIME, nowMillis);
+                if(WQLog.DEBUG)
+                    WQLog.d(TAG, "rpm:"+RPM);
+                break;
+
+            case 0x05: //SPEED
+                double speed = cursor.readSwappedUint32();
+                if (speed != -1) {
+                    sample.setDouble(GeoSample.VEHICLE_SPEED, speed);
+                    publish(GeoFieldUpdate.FIELD_VEHICLE_SPEED, speed, now);
+                }
+                sample.setLong(GeoSample.VEHICLE_SPEED_TIME, nowMillis);
+                break;
+
+            case 0x06: //FUEL LEVEL
+                double fuel_level = cursor.readSwappedUint32();
+                if (fuel_level != -1) {
+                    sample.setDouble(GeoSample.FUEL_LEVEL, fuel_level);
+                    publish(GeoFieldUpdate.FIELD_FUEL_LEVEL, fuel_level, now);
+                }
+                sample.setLong(GeoSample.FUEL_LEVEL_TIME, nowMillis);
+                if(WQLog.DEBUG)
+                    WQLog.d(TAG, "fuel:"+fuel_level);
+                break;
+
+            case 0x11: //Engine Hours
+                double engine_hours = cursor.readSwappedUint32();
+                if (engine_hours != -1) {
+                    sample.setDouble(GeoSample.ENGINE_HOURS, engine_hours / 10); //its divided by 10 because device is sending (hours times 10)
+                    publish(GeoFieldUpdate.FIELD_ENGINE_HOURS, engine_hours / 10, now);
+                }
+                sample.setLong(GeoSample.ENGINE_HOURS_TIME, nowMillis);
+                break;
+            case 0x13: //Longitude
+                double latitude = cursor.readSwappedUint32();
+                if (latitude != -1) {
+                    sample.setDouble(GeoSample.LATITUDE, latitude / 100000);
+                    publish(GeoFieldUpdate.FIELD_LATITUDE, latitude / 100000, now);
+                }
+                break;
+            case 0x14: //Latitude
+                double longitude = cursor.readSwappedUint32();
+                if (longitude != -1) {
+                    sample.setDouble(GeoSample.LONGITUDE, longitude / 100000);
+                    publish(GeoFieldUpdate.FIELD_LONGITUDE, longitude / 100000, now);
+                }
+                break;
+            case 0x15: //Location Time Stamp
+                long timestamp = cursor.readSwappedUint32();
+                sample.setLong(GeoSample.GPS_TIME, timestamp*1000);
+                if(WQLog.DEBUG) {
+                    DateTimeFormatter formatter1 = DateTimeFormat.forPattern("yyyy/M/d h:m:s a");
+                    WQLog.d(TAG, "LATLON TIMESTAMP: " + formatter1.print(new DateTime(timestamp * 1000)));
+                }
+                break;
+            case 0x1F:
+                double heading = cursor.readSwappedUint32();
+                if (heading != -1) {
+                    sample.setDouble(GeoSample.GPS_HEADING, heading);
+                    publish(GeoFieldUpdate.FIELD_GPS_HEADING, heading, now);
+                }
+                break;
+            case 0x16:
+            case 0x17:
+            case 0x18:
+            case 0x19:
+            case 0x1A:
+            case 0x1B:
+            case 0x1C:
+            case 0x1D:
+            case 0x1E:
+                int value = cursor.readSwappedUint32();
+                if (bulkEventsFrame && tag != 0x1E) {
+                    decodeBulkEvent(tag, value);
+                    break;
+                }
+                switch(tag) {
+                    case 0x1E:
+                        if(WQLog.DEBUG)
+                            WQLog.d(TAG, "Total unidentified Event:" + value + ", ");
+                        sample.setLong(GeoSample.TOTAL_UDRV_EVENTS, value);
                         break;
-                    case 0x1F:
-                        index_count+=2;
-                        tbytes= WQData.fixUint32Endian(geobuff, index_count);
-                        double heading = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
-                        if (heading != -1) {
-                            geoData.setGpsHeading(heading);
-                        }
-
-                        index_count = index_count+4;
+                    case 0x17:
+                        long tstamp = value;
+                        if(WQLog.DEBUG)
+                            WQLog.d(TAG, "timestamp:" + tstamp + ", ");
+                        sample.setLong(GeoSample.EVENT_TIMESTAMP, tstamp);
                         break;
                     case 0x16:
-                    case 0x17:
+                        if(WQLog.DEBUG)
+                            WQLog.d(TAG, "Unidentified Data:");
+                        sample.setLong(GeoSample.EVENT_REASON, value);
+                        break;
                     case 0x18:
+                        double eHrs = value;
+                        sample.setDouble(GeoSample.EVENT_ENGINE_HOURS, eHrs);
+                        break;
                     case 0x19:
+                        double vSpeed = value;
+                        sample.setDouble(GeoSample.EVENT_VEHICLE_SPEED, vSpeed);
+                        break;
                     case 0x1A:
+                        double odom = value;
+                        sample.setDouble(GeoSample.EVENT_ODOMETER, odom);
+                        break;
                     case 0x1B:
+                        double lat = value;
+                        if (lat != -1)
+                            sample.setDouble(GeoSample.EVENT_LATITUDE, lat / 100000);
+                        break;
                     case 0x1C:
-                    case 0x1D:
-                    case 0x1E:
-                        byte index_value =  geobuff[index_count];
-                        index_count+=2;
-                        tbytes= WQData.fixUint32Endian(geobuff, index_count);
-                        index_count = index_count+4;
-                        switch(index_value) {
-                            case 0x1E:
-                                totalUdrvEvents = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
-                                Log.d(TAG, "Total unidentified Event:" + totalUdrvEvents       +", ");
-                                geoData.setTotalUdrvEvents(totalUdrvEvents);
-                                break;
-                            case 0x17:
-                                long tstamp = WQData.getIntValue(WQData.FORMAT_UINT32,0, tbytes);
-                                Log.d(TAG, "timestamp:" + tstamp       +", ");
-                                unidentifiedEvent.setTimestamp(tstamp);
-                                break;
-                            case 0x16:
-                                Integer reason = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
-                                Log.d(TAG, "Unidentified Data:\r\n");
-                                unidentifiedEvent.setReason(reason);
-                                break;
-                            case 0x18:
-                                double eHrs = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
-                                unidentifiedEvent.setEngTotalHours(eHrs);
-                                break;
-                            case 0x19:
-                                double vSpeed = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
-                                unidentifiedEvent.setVehicleSpeed(vSpeed);
-                                break;
-                            case 0x1A:
-                                double odom = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
-                                unidentifiedEvent.setOdometer(odom);
-                                break;
-                            case 0x1B:
-                                double lat = WQData.getIntValue(WQData.FORMAT_UINT32,  0,tbytes);
-                                if (lat != -1)
-                                    unidentifiedEvent.setLatitude(lat / 100000);
-                                break;
-                            case 0x1C:
-                                double lon = WQData.getIntValue(WQData.FORMAT_UINT32,  0,tbytes);
-                                if (lon != -1)
-                                    unidentifiedEvent.setLongitude(lon / 100000);
-                                break;
-                            case 0x1D:
-                                long gpsTime = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
-                                unidentifiedEvent.setGPSTimestamp(gpsTime);
-                                break;
-                        }
+                        double lon = value;
+                        if (lon != -1)
+                            sample.setDouble(GeoSample.EVENT_LONGITUDE, lon / 100000);
                         break;
-                    default:
-                        parseexit=true;
+                    case 0x1D:
+                        long gpsTime = value;
+                        sample.setLong(GeoSample.EVENT_GPS_TIME, gpsTime);
                         break;
                 }
-                if(parseexit)
-                    break;
-            }
-            if(unidentifiedEvent.getTimestamp()!=null ){
-                geoData.getUnidentifiedEventArrayList().add(unidentifiedEvent);
-            }
+                break;
+        }
+    }
 
+    // A tag already seen for the current event starts the next one.
+    private void decodeBulkEvent(int tag, int value) {
+        int bit = 1 << (tag - 0x16);
+        if (bulkEvent == null || (bulkEventTags & bit) != 0) {
+            finishBulkEvent();
+            bulkEvent = UnidentifiedEvent.obtain();
+        }
+        bulkEventTags |= bit;
+        UnidentifiedEvent event = bulkEvent;
+        switch (tag) {
+            case 0x16:
+                event.setReason(value);
+                break;
+            case 0x17:
+                event.setTimestamp((long) value);
+                break;
+            case 0x18:
+                event.setEngTotalHours((double) value);
+                break;
+            case 0x19:
+                event.setVehicleSpeed((double) value);
+                break;
+            case 0x1A:
+                event.setOdometer((double) value);
+                break;
+            case 0x1B:
+                if (value != -1)
+                    event.setLatitude(value / 100000.0);
+                break;
+            case 0x1C:
+                if (value != -1)
+                    event.setLongitude(value / 100000.0);
+                break;
+            case 0x1D:
+                event.setGPSTimestamp((long) value);
+                break;
+        }
     }
 
-    sb.append(new String("vi:"+geoData.getVin()+"("+now+")"));
-    sb.append(new String("od:"+geoData.getOdometer()+"("+now+")"));
-    sb.append(new String("r:"+geoData.getEngineRPM()+"("+now+")"));
-    sb.append(new String("fl:"+geoData.getFuelLevel()+"("+now+")"));
-    sb.append(new String("sp:"+geoData.getVehicleSpeed()+"("+now+")"));
-    sb.append(new String("enhr:"+geoData.getEngTotalHours()+"("+now+")"));
-    sb.append(new String("lt:"+geoData.getLatitude()));
-    sb.append(new String("ln:"+geoData.getLongitude()));
-    DateTime _startDate = new DateTime( geoData.getGpsTime() );
-    DateTimeFormatter formatter1 = DateTimeFormat.forPattern("yyyy/M/d h:m:s a");
-    sb.append(new String("gt:"+formatter1.print(_startDate)));
-    sb.append("TUL: "+geoData.getTotalUdrvEvents() + " ");
-    ArrayList<UnidentifiedEvent> uList =  geoData.getUnidentifiedEventArrayList();
-    for(int i = 0; i <uList.size();i++ ){
-        UnidentifiedEvent ue = uList.get(i);
-        sb.append(new String("( ure:"+ue.getReason()+ " "));
-        sb.append(new String("uts:"+ue.getTimestamp()+" "));
-        sb.append(new String("uhr:"+ue.getEngTotalHours() + " "));
-        sb.append(new String("us:"+ue.getVehicleSpeed()+" "));
-        sb.append(new String("uo:"+ue.getOdometer()+ " "));
-        sb.append(new String("ult:"+ue.getLatitude()+ " "));
-        sb.append(new String("uln:"+ue.getLongitude()+ " "));
-        sb.append(new String("ugt:"+ue.getGPSTimestamp()+ ")"));
-
-    }
-    String logString = new String(sb);
-    Log.e(TAG, logString);
-    Log.d(TAG, "New Data Updated: RPM:  " + geoData.getEngineRPM() + ", Time: " + formatter.print(now));
-
-    return geoData;
+    // Keeps the current bulk event if it is complete enough to report, as getGeoData() does.
+    private void finishBulkEvent() {
+        if (bulkEvent == null)
+            return;
+        if (bulkEvent.getTimestamp() != null)
+            bulkEventList.add(bulkEvent);
+        else
+            bulkEvent.recycle();
+        bulkEvent = null;
+        bulkEventTags = 0;
     }
 }
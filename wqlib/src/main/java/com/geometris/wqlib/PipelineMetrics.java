@@ -0,0 +1,39 @@
+package com.geometris.wqlib;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the inbound data path, updated without locking by the Bluetooth thread and the message handler thread.
+ * @see PipelineStats
+ */
+final class PipelineMetrics {
+
+    private final long startNanos = System.nanoTime();
+    final AtomicLong notifications = new AtomicLong();
+    final AtomicLong reads = new AtomicLong();
+    final AtomicLong fragments = new AtomicLong();
+    final AtomicLong decodedFrames = new AtomicLong();
+    final AtomicLong unhandledFrames = new AtomicLong();
+    final AtomicLong deliveredMessages = new AtomicLong();
+    final AtomicLong decodeNanos = new AtomicLong();
+    final AtomicLong handlerNanos = new AtomicLong();
+
+    void frameDecoded(long nanos) {
+        decodedFrames.incrementAndGet();
+        decodeNanos.addAndGet(nanos);
+    }
+
+    void messageDelivered(long nanos) {
+        deliveredMessages.incrementAndGet();
+        handlerNanos.addAndGet(nanos);
+    }
+
+    /**
+     * @param reassembly counters of the reassembly, which counts the complete and incomplete frames
+     */
+    PipelineStats snapshot(ReassemblyStats reassembly) {
+        return new PipelineStats(notifications.get(), reads.get(), fragments.get(), reassembly.completedFrames,
+                decodedFrames.get(), reassembly.incompleteFrames + unhandledFrames.get(), deliveredMessages.get(),
+                decodeNanos.get(), handlerNanos.get(), System.nanoTime() - startNanos);
+    }
+}
@@ -0,0 +1,120 @@
+package com.geometris.wqlib;
+
+/**
+ * Counters of the stages OBD data goes through, from the Bluetooth notification to the application handler,
+ * since the service was initialized. Comparing the stages tells whether data is lost or delayed by the radio,
+ * the reassembly of frames or the application.
+ * @see WherequbeService#getPipelineStats()
+ */
+public class PipelineStats {
+
+    /**
+     * Characteristic values notified by the device.
+     */
+    public final long notifications;
+
+    /**
+     * Characteristic values read from the device on request.
+     */
+    public final long reads;
+
+    /**
+     * Fragments of OBD frames passed to the reassembly.
+     */
+    public final long fragments;
+
+    /**
+     * OBD frames whose fragments were all received.
+     */
+    public final long completedFrames;
+
+    /**
+     * Complete frames decoded and sent to the OBD_MEASUREMENT or OBD_SAMPLE handler.
+     */
+    public final long decodedFrames;
+
+    /**
+     * Frames lost: discarded incomplete, or complete while no handler was set to receive them.
+     */
+    public final long droppedFrames;
+
+    /**
+     * Messages passed to the application's RequestHandlers.
+     */
+    public final long deliveredMessages;
+
+    /**
+     * Total time spent decoding the complete frames, in nanoseconds.
+     */
+    public final long decodeNanos;
+
+    /**
+     * Total time spent in the application's RequestHandlers, in nanoseconds.
+     */
+    public final long handlerNanos;
+
+    /**
+     * Time covered by the counters, in nanoseconds.
+     */
+    public final long elapsedNanos;
+
+    PipelineStats(long notifications, long reads, long fragments, long completedFrames, long decodedFrames,
+                  long droppedFrames, long deliveredMessages, long decodeNanos, long handlerNanos, long elapsedNanos) {
+        this.notifications = notifications;
+        this.reads = reads;
+        this.fragments = fragments;
+        this.completedFrames = completedFrames;
+        this.decodedFrames = decodedFrames;
+        this.droppedFrames = droppedFrames;
+        this.deliveredMessages = deliveredMessages;
+        this.decodeNanos = decodeNanos;
+        this.handlerNanos = handlerNanos;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns the counters of the interval between an earlier snapshot and this one, for measuring current rates.
+     * @param earlier snapshot taken before this one
+     * @return the difference of the counters
+     */
+    public PipelineStats since(PipelineStats earlier) {
+        return new PipelineStats(notifications - earlier.notifications, reads - earlier.reads,
+                fragments - earlier.fragments, completedFrames - earlier.completedFrames, decodedFrames - earlier.decodedFrames,
+                droppedFrames - earlier.droppedFrames, deliveredMessages - earlier.deliveredMessages,
+                decodeNanos - earlier.decodeNanos, handlerNanos - earlier.handlerNanos,
+                elapsedNanos - earlier.elapsedNanos);
+    }
+
+    /**
+     * @param count one of the counters of this object
+     * @return the count per second over the time covered, 0 if none elapsed.
+     */
+    public double perSecond(long count) {
+        return elapsedNanos > 0 ? count * 1e9 / elapsedNanos : 0;
+    }
+
+    /**
+     * @return average time spent decoding a frame, in nanoseconds.
+     */
+    public long getMeanDecodeNanos() {
+        return decodedFrames > 0 ? decodeNanos / decodedFrames : 0;
+    }
+
+    /**
+     * @return average time spent in a RequestHandler, in nanoseconds.
+     */
+    public long getMeanHandlerNanos() {
+        return deliveredMessages > 0 ? handlerNanos / deliveredMessages : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "notifications " + notifications + " (" + Math.round(perSecond(notifications)) + "/s)"
+                + ", reads " + reads
+                + ", fragments " + fragments
+                + ", frames completed " + completedFrames + " (" + Math.round(perSecond(completedFrames)) + "/s)"
+                + ", decoded " + decodedFrames + " in " + getMeanDecodeNanos() + "ns"
+                + ", dropped " + droppedFrames
+                + ", delivered " + deliveredMessages + " in " + getMeanHandlerNanos() + "ns";
+    }
+}
@@ -0,0 +1,36 @@
+package com.geometris.wqlib;
+
+/**
+ * Counters of the OBD frames reassembled from Bluetooth notifications since the service started.
+ * @see WherequbeService#getReassemblyStats()
+ */
+public class ReassemblyStats {
+
+    /**
+     * Frames received completely.
+     */
+    public final long completedFrames;
+
+    /**
+     * Frames discarded because a fragment was missing when they timed out or the next frame started.
+     */
+    public final long incompleteFrames;
+
+    /**
+     * Completed frames whose fragments arrived out of order after the frame header.
+     */
+    public final long recoveredFrames;
+
+    /**
+     * Fragments dropped because they did not belong to any frame being reassembled: fragments arriving without
+     * their frame header, beyond the number of packets it announced, or already received.
+     */
+    public final long droppedFragments;
+
+    ReassemblyStats(long completedFrames, long incompleteFrames, long recoveredFrames, long droppedFragments) {
+        this.completedFrames = completedFrames;
+        this.incompleteFrames = incompleteFrames;
+        this.recoveredFrames = recoveredFrames;
+        this.droppedFragments = droppedFragments;
+    }
+}
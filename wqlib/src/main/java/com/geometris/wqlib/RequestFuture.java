@@ -0,0 +1,63 @@
+package com.geometris.wqlib;
+
+import android.content.Context;
+import android.os.Build;
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Future of a request, completed by MsgHandlerThread with the response converted to the result type, or with a
+ * WQRequestException. Cancelling it withdraws the request if it is still waiting to be sent or answered.
+ */
+@RequiresApi(Build.VERSION_CODES.N)
+final class RequestFuture<T> extends CompletableFuture<T> implements ResponseHandler, MsgHandlerThread.FailureListener {
+
+    private final int requestId;
+    private final Function<BaseResponse, T> converter;
+    private MsgHandlerThread thread;
+    private MsgHandlerThread.ReqTuple tuple;
+
+    RequestFuture(int requestId, Function<BaseResponse, T> converter) {
+        this.requestId = requestId;
+        this.converter = converter;
+    }
+
+    // Set before the request is queued, so a cancellation always finds it.
+    void bind(MsgHandlerThread thread, MsgHandlerThread.ReqTuple tuple) {
+        this.thread = thread;
+        this.tuple = tuple;
+    }
+
+    @Override
+    public void onRecv(@NonNull Context context, @NonNull BaseResponse response) {
+        T result;
+        try {
+            result = converter.apply(response);
+        } catch (RuntimeException e) {
+            completeExceptionally(e);
+            return;
+        }
+        complete(result);
+    }
+
+    @Override
+    public void onError(@NonNull Context context) {
+        onFailure(WQError.ERROR_FAIL);
+    }
+
+    @Override
+    public void onFailure(int errorCode) {
+        completeExceptionally(new WQRequestException(requestId, errorCode));
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled && thread != null)
+            thread.cancelRequest(tuple);
+        return cancelled;
+    }
+}
@@ -0,0 +1,99 @@
+package com.geometris.wqlib;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Latency histograms and outcome counters of the requests sent by MsgHandlerThread, per request type.
+ * Recorded on the message handler thread, read from any thread through snapshots.
+ */
+final class RequestMetrics {
+
+    /**
+     * Request types tracked, from 0; other types are not recorded.
+     */
+    static final int MAX_TYPES = 64;
+
+    private static final class Entry {
+        final LatencyHistogram roundTrip = new LatencyHistogram();
+        final LatencyHistogram queueWait = new LatencyHistogram();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong timeouts = new AtomicLong();
+    }
+
+    // Created on the first request of each type, so unused types take no memory.
+    private final AtomicReferenceArray<Entry> entries = new AtomicReferenceArray<Entry>(MAX_TYPES);
+
+    private Entry entry(int type) {
+        if (type < 0 || type >= MAX_TYPES)
+            return null;
+        Entry entry = entries.get(type);
+        if (entry == null) {
+            entries.compareAndSet(type, null, new Entry());
+            entry = entries.get(type);
+        }
+        return entry;
+    }
+
+    /**
+     * @param nanos time from queuing the request to sending it
+     */
+    void recordQueueWait(int type, long nanos) {
+        Entry entry = entry(type);
+        if (entry != null)
+            entry.queueWait.record(nanos / 1000);
+    }
+
+    /**
+     * @param nanos time from sending the request to receiving its response
+     */
+    void recordRoundTrip(int type, long nanos) {
+        Entry entry = entry(type);
+        if (entry != null)
+            entry.roundTrip.record(nanos / 1000);
+    }
+
+    void recordFailure(int type) {
+        Entry entry = entry(type);
+        if (entry != null)
+            entry.failures.incrementAndGet();
+    }
+
+    void recordTimeout(int type) {
+        Entry entry = entry(type);
+        if (entry != null)
+            entry.timeouts.incrementAndGet();
+    }
+
+    /**
+     * @return the statistics of a request type, empty if no request of the type was sent.
+     */
+    RequestStats snapshot(int type) {
+        Entry entry = type >= 0 && type < MAX_TYPES ? entries.get(type) : null;
+        if (entry == null)
+            entry = new Entry();
+        return new RequestStats(type, entry.roundTrip.snapshot(), entry.queueWait.snapshot(),
+                entry.failures.get(), entry.timeouts.get());
+    }
+
+    /**
+     * @return the statistics of every request type sent, by type.
+     */
+    ArrayList<RequestStats> snapshot() {
+        ArrayList<RequestStats> stats = new ArrayList<RequestStats>();
+        for (int type = 0; type < MAX_TYPES; type++) {
+            if (entries.get(type) != null)
+                stats.add(snapshot(type));
+        }
+        return stats;
+    }
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    void reset() {
+        for (int type = 0; type < MAX_TYPES; type++)
+            entries.set(type, null);
+    }
+}
@@ -0,0 +1,39 @@
+package com.geometris.wqlib;
+
+/**
+ * Priority classes of the Bluetooth operations sent to a Whereqube device. Operations of a higher class are
+ * started first; an operation waiting longer than WQSmartService.MAX_QUEUE_WAIT is started before any other,
+ * so lower classes are never starved.
+ * @see WherequbeService#sendRequest(BaseRequest, ResponseHandler, int, int)
+ */
+public class RequestPriority {
+
+    /**
+     * Lets the library choose the class from the operation: CONTROL for notification setup and the
+     * application identifier, INTERACTIVE for other writes and BACKGROUND for reads.
+     */
+    public static final int DEFAULT = -1;
+
+    /**
+     * Connection and notification setup, needed before any data arrives.
+     */
+    public static final int CONTROL = 0;
+
+    /**
+     * Commands a user or driver is waiting on, such as purging events.
+     */
+    public static final int INTERACTIVE = 1;
+
+    /**
+     * Reads whose result is not urgent, such as device information.
+     */
+    public static final int BACKGROUND = 2;
+
+    /**
+     * Number of priority classes.
+     */
+    static final int COUNT = 3;
+
+    private RequestPriority() {
+    }
+}
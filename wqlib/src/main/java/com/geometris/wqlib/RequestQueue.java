@@ -0,0 +1,200 @@
+package com.geometris.wqlib;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * GATT operations waiting to be started, in one queue per RequestPriority class. Any thread may add operations;
+ * a single thread, the GATT thread of WQSmartService, takes them.
+ */
+final class RequestQueue {
+
+    private static final String TAG = "Geometris";
+
+    private final long maxWait;
+    @SuppressWarnings("unchecked")
+    private final ConcurrentLinkedQueue<WQSmartRequest>[] queues = new ConcurrentLinkedQueue[RequestPriority.COUNT];
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * @param maxWait time after which an operation is started before those of higher classes, in milliseconds
+     */
+    RequestQueue(long maxWait) {
+        this.maxWait = maxWait;
+        for (int priority = 0; priority < RequestPriority.COUNT; priority++)
+            queues[priority] = new ConcurrentLinkedQueue<WQSmartRequest>();
+    }
+
+    /**
+     * Adds an operation behind those of its class.
+     * @param request  the operation
+     * @param priority one of the RequestPriority constants, DEFAULT or an unknown class choosing it from the operation
+     * @param now      current uptime in milliseconds
+     */
+    void offer(WQSmartRequest request, int priority, long now) {
+        if (priority < 0 || priority >= RequestPriority.COUNT)
+            priority = defaultPriority(request);
+        request.priority = priority;
+        request.queuedAt = now;
+        request.sequence = sequence.incrementAndGet();
+        queues[priority].offer(request);
+    }
+
+    // Notification setup and the application identifier come first as no data arrives before them.
+    static int defaultPriority(WQSmartRequest request) {
+        switch (request.type) {
+            case CHARACTERISTIC_NOTIFICATION:
+                return RequestPriority.CONTROL;
+            case WRITE_CHARACTERISTIC:
+            case WRITE_DESCRIPTOR:
+                return request.requestId == BaseRequest.WRITE_APP_IDENTIFIER ? RequestPriority.CONTROL : RequestPriority.INTERACTIVE;
+            default:
+                return RequestPriority.BACKGROUND;
+        }
+    }
+
+    /**
+     * @param now current uptime in milliseconds
+     * @return the operation poll() would take next, before merging, or null if none is queued.
+     */
+    WQSmartRequest peek(long now) {
+        ConcurrentLinkedQueue<WQSmartRequest> queue = nextQueue(now);
+        return queue != null ? queue.peek() : null;
+    }
+
+    /**
+     * Takes the next operation to start: the first of the highest priority class, unless an operation of a lower
+     * class has waited more than the maximum wait, in which case the one of the lowest such class goes first.
+     * The queued operations it makes redundant are merged into it, see coalesce().
+     * @param now current uptime in milliseconds
+     * @return the operation, or null if none is queued
+     */
+    WQSmartRequest poll(long now) {
+        WQSmartRequest request = pollNext(now);
+        while (request != null && coalesce(request))
+            request = pollNext(now);
+        return request;
+    }
+
+    /**
+     * Takes an operation returned by peek(), merging the queued operations it makes redundant like poll().
+     * @param request the operation
+     * @return false if it was merged into a later operation and must not be started
+     */
+    boolean take(WQSmartRequest request) {
+        return queues[request.priority].remove(request) && !coalesce(request);
+    }
+
+    /**
+     * Removes the queued steps of a batch.
+     * @param batchHandle handle of the batch
+     * @return the number of steps removed
+     */
+    int removeBatch(long batchHandle) {
+        int removed = 0;
+        for (ConcurrentLinkedQueue<WQSmartRequest> queue : queues) {
+            Iterator<WQSmartRequest> queued = queue.iterator();
+            while (queued.hasNext()) {
+                if (queued.next().batchHandle == batchHandle) {
+                    queued.remove();
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Removes every queued operation.
+     */
+    void clear() {
+        for (ConcurrentLinkedQueue<WQSmartRequest> queue : queues)
+            queue.clear();
+    }
+
+    private WQSmartRequest pollNext(long now) {
+        ConcurrentLinkedQueue<WQSmartRequest> queue = nextQueue(now);
+        return queue != null ? queue.poll() : null;
+    }
+
+    // Queue holding the next operation to start, null if all are empty.
+    private ConcurrentLinkedQueue<WQSmartRequest> nextQueue(long now) {
+        for (int priority = RequestPriority.COUNT - 1; priority > 0; priority--) {
+            WQSmartRequest head = queues[priority].peek();
+            if (head != null && now - head.queuedAt >= maxWait)
+                return queues[priority];
+        }
+        for (int priority = 0; priority < RequestPriority.COUNT; priority++) {
+            if (!queues[priority].isEmpty())
+                return queues[priority];
+        }
+        return null;
+    }
+
+    /**
+     * Merges the queued operations made redundant by an operation about to start: identical reads of any priority,
+     * and writes of the same command to OBD_WQ_DATA_POINT of the same priority not separated by another command.
+     * A notification request is instead merged into a later one for the same characteristic, which supersedes it.
+     * Merged operations are answered along with the one they were merged into. Steps of a batch are never merged, as
+     * they are dropped when a previous step fails. Called on the GATT thread, while other threads may queue operations.
+     *
+     * @param request
+     *            The operation taken from the queue.
+     * @return true if the operation was merged into a later one and must not be started.
+     */
+    private boolean coalesce(WQSmartRequest request) {
+        if (request.batchHandle >= 0)
+            return false;
+        switch (request.type) {
+            case CHARACTERISTIC_NOTIFICATION:
+                WQSmartRequest last = null;
+                for (ConcurrentLinkedQueue<WQSmartRequest> queue : queues) {
+                    for (WQSmartRequest other : queue) {
+                        if (other.type == request.type && other.sequence > request.sequence && request.hasSameTarget(other)
+                                && (last == null || other.sequence > last.sequence))
+                            last = other;
+                    }
+                }
+                if (last == null)
+                    return false;
+                last.merged += request.merged + 1;
+                if (WQLog.DEBUG)
+                    WQLog.d(TAG, "WQSS: notification request superseded: " + request.requestId);
+                return true;
+            case READ_CHARACTERISTIC:
+            case READ_DESCRIPTOR:
+                for (ConcurrentLinkedQueue<WQSmartRequest> queue : queues) {
+                    Iterator<WQSmartRequest> queued = queue.iterator();
+                    while (queued.hasNext()) {
+                        WQSmartRequest other = queued.next();
+                        if (other.type == request.type && other.requestId == request.requestId && other.batchHandle < 0
+                                && request.hasSameTarget(other)) {
+                            queued.remove();
+                            request.merged += other.merged + 1;
+                        }
+                    }
+                }
+                return false;
+            case WRITE_CHARACTERISTIC:
+                if (!WQSmartService.WQSmartUuid.OBD_WQ_DATA_POINT.getUuid().equals(request.characteristicUuid))
+                    return false;
+                Iterator<WQSmartRequest> queued = queues[request.priority].iterator();
+                while (queued.hasNext()) {
+                    WQSmartRequest other = queued.next();
+                    if (other.type != request.type || !request.hasSameTarget(other))
+                        continue;
+                    if (other.batchHandle >= 0)
+                        break;
+                    if (other.requestId != request.requestId || !Arrays.equals(other.value, request.value))
+                        break;
+                    queued.remove();
+                    request.merged += other.merged + 1;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+}
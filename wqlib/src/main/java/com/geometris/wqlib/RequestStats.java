@@ -0,0 +1,41 @@
+package com.geometris.wqlib;
+
+/**
+ * Latency and outcome counters of the requests of one type sent since the service started.
+ * @see WherequbeService#getRequestStats(int)
+ */
+public class RequestStats {
+
+    /**
+     * Type of the requests, as described by the RequestType constants.
+     */
+    public final int requestType;
+
+    /**
+     * Time from sending each request to the device until its response, in microseconds.
+     */
+    public final LatencySnapshot roundTrip;
+
+    /**
+     * Time each request waited in the queue before being sent, in microseconds.
+     */
+    public final LatencySnapshot queueWait;
+
+    /**
+     * Requests that could not be sent or that the device reported as failed.
+     */
+    public final long failures;
+
+    /**
+     * Requests that received no response in time.
+     */
+    public final long timeouts;
+
+    RequestStats(int requestType, LatencySnapshot roundTrip, LatencySnapshot queueWait, long failures, long timeouts) {
+        this.requestType = requestType;
+        this.roundTrip = roundTrip;
+        this.queueWait = queueWait;
+        this.failures = failures;
+        this.timeouts = timeouts;
+    }
+}
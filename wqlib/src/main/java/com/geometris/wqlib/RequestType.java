@@ -61,4 +61,24 @@ public class RequestType {
      * Obsolete
      */
     public static final int MESSAGE_SERVICE_DISCOVERED = 8;
+
+    /**
+     * Single OBD value decoded before its frame completed, see GeoFieldUpdate.
+     */
+    public static final int OBD_FIELD_UPDATE = 9;
+
+    /**
+     * Values of a complete OBD frame as a pooled GeoSample, see GeoSample.
+     */
+    public static final int OBD_SAMPLE = 10;
+
+    /**
+     * Unidentified driving events streamed in bulk, see UnidentifiedEventBatch.
+     */
+    public static final int UDEVENT_BATCH = 11;
+
+    /**
+     * Ordered list of requests sent together, see BatchRequest.
+     */
+    public static final int BATCH = 12;
 }
@@ -0,0 +1,102 @@
+package com.geometris.wqlib;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tracer keeping the latest span events in memory, for tests and for looking at the last operations
+ * when something goes wrong. Once full, each event replaces the oldest one.
+ */
+public class RingTracer implements Tracer {
+
+    /**
+     * Start or end of a span.
+     */
+    public static class Event {
+        /** Name of the span. */
+        public final String name;
+        /** Id of the span. */
+        public final long id;
+        /** True for the start of the span, false for its end. */
+        public final boolean begin;
+        /** Request type given at the start, status given at the end. */
+        public final int value;
+        /** Id of the REQUEST span given at the start, -1 if none. */
+        public final long requestSpan;
+        /** Monotonic time of the event, in nanoseconds. */
+        public final long timestampNanos;
+        /** Name of the thread the event happened on. */
+        public final String thread;
+
+        Event(String name, long id, boolean begin, int value, long requestSpan, long timestampNanos, String thread) {
+            this.name = name;
+            this.id = id;
+            this.begin = begin;
+            this.value = value;
+            this.requestSpan = requestSpan;
+            this.timestampNanos = timestampNanos;
+            this.thread = thread;
+        }
+
+        @Override
+        public String toString() {
+            return (begin ? "begin " : "end ") + name + " #" + id + " " + value
+                    + (requestSpan >= 0 ? " request #" + requestSpan : "");
+        }
+    }
+
+    private final Event[] events;
+    private int next;
+    private int size;
+
+    /**
+     * @param capacity number of events kept
+     */
+    public RingTracer(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        this.events = new Event[capacity];
+    }
+
+    @Override
+    public void begin(String name, long id, int requestType) {
+        begin(name, id, requestType, -1);
+    }
+
+    @Override
+    public void begin(String name, long id, int requestType, long requestSpan) {
+        add(new Event(name, id, true, requestType, requestSpan, System.nanoTime(), Thread.currentThread().getName()));
+    }
+
+    @Override
+    public void end(String name, long id, int status) {
+        add(new Event(name, id, false, status, -1, System.nanoTime(), Thread.currentThread().getName()));
+    }
+
+    private synchronized void add(Event event) {
+        events[next] = event;
+        next = (next + 1) % events.length;
+        if (size < events.length)
+            size++;
+    }
+
+    /**
+     * @return the events kept, oldest first.
+     */
+    public synchronized List<Event> getEvents() {
+        List<Event> list = new ArrayList<Event>(size);
+        for (int i = 0; i < size; i++)
+            list.add(events[(next - size + i + events.length) % events.length]);
+        return list;
+    }
+
+    /**
+     * Removes all events.
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < events.length; i++)
+            events[i] = null;
+        next = 0;
+        size = 0;
+    }
+}
@@ -0,0 +1,46 @@
+package com.geometris.wqlib;
+
+/**
+ * Decodes one tag of a protocol 1 frame.
+ * Handlers are registered for a tag with WherequbeService.registerTagHandler(),
+ * together with the length of the tag's payload, and are called on the Bluetooth
+ * notification thread for every frame that carries the tag.
+ * @see WherequbeService#registerTagHandler(int, int, TagHandler)
+ */
+public interface TagHandler {
+
+    /**
+     * Payload length for tags whose payload is a 16-bit count followed by that many 16-bit words,
+     * such as the VIN.
+     */
+    int COUNTED_PAYLOAD = -1;
+
+    /**
+     * Called with the cursor positioned on the first payload byte, after the 16-bit tag word.
+     * The handler may read up to the payload length it was registered with; whatever it does
+     * not read is skipped.
+     * <p>
+     * The default implementation calls decode(int, FrameCursor, GeoData), for handlers written
+     * before GeoSample existed, and stores the values it changed back into the sample.
+     * @param tag     the tag being decoded
+     * @param payload reader over the frame
+     * @param sample  the values decoded from the frame so far
+     */
+    default void decode(int tag, FrameCursor payload, GeoSample sample) {
+        GeoData geoData = sample.toGeoData();
+        decode(tag, payload, geoData);
+        sample.updateFrom(geoData);
+    }
+
+    /**
+     * Called by the default decode(int, FrameCursor, GeoSample) with a GeoData holding the values
+     * decoded from the frame so far. Values set on it are kept, unidentified events added to it are not.
+     * @param tag     the tag being decoded
+     * @param payload reader over the frame
+     * @param geoData the data decoded from the frame so far
+     * @deprecated creates a GeoData for every tag decoded, override decode(int, FrameCursor, GeoSample) instead.
+     */
+    @Deprecated
+    default void decode(int tag, FrameCursor payload, GeoData geoData) {
+    }
+}
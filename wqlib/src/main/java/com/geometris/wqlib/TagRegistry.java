@@ -0,0 +1,85 @@
+package com.geometris.wqlib;
+
+/**
+ * Payload lengths and application handlers for the 256 possible protocol 1 tags.
+ * Tags nobody registered are assumed to carry a 32-bit value, so the decoder
+ * can skip tags added by newer firmware instead of dropping the rest of the frame.
+ * Not to be used outside of the OBDDataInfo and WherequbeService classes.
+ */
+final class TagRegistry {
+
+    /**
+     * Payload length of tags that were not registered: one 32-bit value.
+     */
+    static final int DEFAULT_PAYLOAD_LENGTH = 4;
+
+    private static final int[] sBuiltinLengths = new int[256];
+    private static final int[] sLengths = new int[256];
+    private static final TagHandler[] sHandlers = new TagHandler[256];
+    private static final boolean[] sRegistered = new boolean[256];
+    private static volatile int sVersion;
+
+    static {
+        for (int tag = 0; tag < 256; tag++)
+            sBuiltinLengths[tag] = DEFAULT_PAYLOAD_LENGTH;
+        sBuiltinLengths[0x01] = TagHandler.COUNTED_PAYLOAD;    // VIN
+        sBuiltinLengths[0x0F] = TagHandler.COUNTED_PAYLOAD;
+        System.arraycopy(sBuiltinLengths, 0, sLengths, 0, 256);
+    }
+
+    private TagRegistry() {
+    }
+
+    /**
+     * Registers an application handler for a tag, replacing the library's own decoding of it.
+     * @param tag           tag byte, 0 to 255
+     * @param payloadLength bytes following the tag word, or TagHandler.COUNTED_PAYLOAD
+     * @param handler       handler to call, or null to only skip the tag
+     */
+    static synchronized void register(int tag, int payloadLength, TagHandler handler) {
+        if (tag < 0 || tag > 255)
+            throw new IllegalArgumentException("Invalid tag " + tag);
+        if (payloadLength < 0 && payloadLength != TagHandler.COUNTED_PAYLOAD)
+            throw new IllegalArgumentException("Invalid payload length " + payloadLength);
+        sLengths[tag] = payloadLength;
+        sHandlers[tag] = handler;
+        sRegistered[tag] = true;
+        sVersion++;
+    }
+
+    /**
+     * Removes the application handler for a tag, restoring the library's own decoding.
+     * @param tag tag byte, 0 to 255
+     */
+    static synchronized void unregister(int tag) {
+        if (tag < 0 || tag > 255)
+            throw new IllegalArgumentException("Invalid tag " + tag);
+        sLengths[tag] = sBuiltinLengths[tag];
+        sHandlers[tag] = null;
+        sRegistered[tag] = false;
+        sVersion++;
+    }
+
+    /**
+     * @return a number that changes on every registration, to detect stale copies.
+     */
+    static int version() {
+        return sVersion;
+    }
+
+    /**
+     * Copies the current table. Application handlers replace the entries already in handlers,
+     * other entries are left as they are.
+     * @param lengths  receives the payload length of every tag
+     * @param handlers receives the application handlers
+     * @return the version copied
+     */
+    static synchronized int copyTo(int[] lengths, TagHandler[] handlers) {
+        System.arraycopy(sLengths, 0, lengths, 0, 256);
+        for (int tag = 0; tag < 256; tag++) {
+            if (sRegistered[tag])
+                handlers[tag] = sHandlers[tag];
+        }
+        return sVersion;
+    }
+}
@@ -0,0 +1,87 @@
+package com.geometris.wqlib;
+
+/**
+ * Receives the start and end of the operations of the library, to follow them on a timeline: connection,
+ * service discovery, GATT reads and writes, frame assembly, requests and handler calls.
+ * <p>
+ * Spans are identified by their name and an id unique among the spans of that name, and carry the request type
+ * they are part of. GATT operations also carry the id of the REQUEST span that caused them, when there is one.
+ * Methods are called on the Bluetooth and message handler threads and must return quickly.
+ * @see WherequbeService#setTracer(Tracer)
+ */
+public interface Tracer {
+
+    /** Connection to the device, from connect() to the connection state change. */
+    String CONNECT = "connect";
+    /** Exchange of the ATT MTU, after connecting and before service discovery. */
+    String MTU_EXCHANGE = "requestMtu";
+    /** Discovery of the GATT services. */
+    String SERVICE_DISCOVERY = "discoverServices";
+    /** Read of a client characteristic configuration descriptor, before enabling notifications. */
+    String CCC_READ = "readCCC";
+    /** Write of a client characteristic configuration descriptor, enabling or disabling notifications. */
+    String CCC_WRITE = "writeCCC";
+    /** Read of a characteristic. */
+    String CHARACTERISTIC_READ = "readCharacteristic";
+    /** Write of a characteristic. */
+    String CHARACTERISTIC_WRITE = "writeCharacteristic";
+    /** Read of a descriptor. */
+    String DESCRIPTOR_READ = "readDescriptor";
+    /** Reassembly of an OBD frame, from its first fragment to its last. */
+    String FRAME_ASSEMBLY = "frame";
+    /** Request sent through WherequbeService.sendRequest(), until its response, failure or timeout. */
+    String REQUEST = "request";
+    /** Call of the RequestHandler of a message. */
+    String HANDLER_DISPATCH = "dispatch";
+
+    /**
+     * Status of a span that ended successfully.
+     */
+    int OK = 0;
+
+    /**
+     * Status of a span that ended without a result, for instance a timed out request or a discarded frame.
+     */
+    int FAILED = -1;
+
+    /**
+     * Tracer doing nothing, used when none is set.
+     */
+    Tracer NONE = new Tracer() {
+        @Override
+        public void begin(String name, long id, int requestType) {
+        }
+
+        @Override
+        public void end(String name, long id, int status) {
+        }
+    };
+
+    /**
+     * Called when an operation starts.
+     * @param name        one of the span names of this interface
+     * @param id          id of the span
+     * @param requestType type of the request the operation is part of, -1 if none
+     */
+    void begin(String name, long id, int requestType);
+
+    /**
+     * Called when an operation started for a request sent through WherequbeService.sendRequest() starts, such as
+     * the GATT operations of the request. Calls begin(name, id, requestType) unless overridden.
+     * @param name        one of the span names of this interface
+     * @param id          id of the span
+     * @param requestType type of the request the operation is part of, -1 if none
+     * @param requestSpan id of the REQUEST span of the request, -1 if none
+     */
+    default void begin(String name, long id, int requestType, long requestSpan) {
+        begin(name, id, requestType);
+    }
+
+    /**
+     * Called when an operation ends.
+     * @param name   name given to begin()
+     * @param id     id given to begin()
+     * @param status OK, FAILED or the GATT status of the operation
+     */
+    void end(String name, long id, int status);
+}
@@ -17,7 +17,48 @@ public class UnidentifiedEvent implements Serializable {
     private Double longitude;        // Longitude
     private Long gpsTimeStamp;
 
+    private static final int MAX_POOL_SIZE = 64;
+    private static final Object sPoolSync = new Object();
+    private static UnidentifiedEvent sPool;
+    private static int sPoolSize;
+    private transient UnidentifiedEvent next;
+
     public UnidentifiedEvent() {
+        clear();
+    }
+
+    /**
+     * Returns an event from the pool, or a new one if the pool is empty.
+     * @return an event with the same values as a new one
+     */
+    public static UnidentifiedEvent obtain() {
+        synchronized (sPoolSync) {
+            if (sPool != null) {
+                UnidentifiedEvent event = sPool;
+                sPool = event.next;
+                event.next = null;
+                sPoolSize--;
+                return event;
+            }
+        }
+        return new UnidentifiedEvent();
+    }
+
+    /**
+     * Returns this event to the pool. It must not be used afterwards.
+     */
+    public void recycle() {
+        clear();
+        synchronized (sPoolSync) {
+            if (sPoolSize < MAX_POOL_SIZE) {
+                next = sPool;
+                sPool = this;
+                sPoolSize++;
+            }
+        }
+    }
+
+    private void clear() {
         reason = null;
         timestamp = null;
         engTotalHours = 0.0;   //total hours
@@ -27,6 +68,7 @@ public class UnidentifiedEvent implements Serializable {
         longitude = 0.0;        // Longitude
         gpsTimeStamp = null;
     }
+
     public Integer getReason(){return reason; }
     public void setReason(Integer reason){
         this.reason = reason;
@@ -0,0 +1,49 @@
+package com.geometris.wqlib;
+
+import java.util.ArrayList;
+
+/**
+ * Unidentified driver events received while streaming the device's backlog.
+ * Sent with request type UDEVENT_BATCH between REQUEST_START_UDEVENTS and REQUEST_STOP_UDEVENTS
+ * when a handler is set for UDEVENT_BATCH.
+ * The events come from a pool: receivers should call recycle() once they are done with them.
+ */
+public class UnidentifiedEventBatch {
+
+    /**
+     * Events of this batch, oldest first.
+     */
+    public final ArrayList<UnidentifiedEvent> events;
+
+    /**
+     * Number of events delivered since streaming started, this batch included.
+     */
+    public final int delivered;
+
+    /**
+     * Number of events the device reported holding, or -1 if it has not reported it yet.
+     */
+    public final int total;
+
+    /**
+     * True for the last batch, sent once the reported number of events has been delivered
+     * or streaming was stopped.
+     */
+    public final boolean complete;
+
+    UnidentifiedEventBatch(ArrayList<UnidentifiedEvent> events, int delivered, int total, boolean complete) {
+        this.events = events;
+        this.delivered = delivered;
+        this.total = total;
+        this.complete = complete;
+    }
+
+    /**
+     * Returns the events of this batch to their pool and empties it.
+     */
+    public void recycle() {
+        for (int i = 0; i < events.size(); i++)
+            events.get(i).recycle();
+        events.clear();
+    }
+}
@@ -83,24 +83,77 @@ public class WQData {
                 + (unsignedByteToInt(b2) << 16) + (unsignedByteToInt(b3) << 24);
     }
 
+    /**
+     * SFLOAT mantissa values with a special meaning (IEEE 11073-20601), exponent being 0.
+     */
+    private static final int SFLOAT_POSITIVE_INFINITY = 0x07FE;
+    private static final int SFLOAT_NAN = 0x07FF;
+    private static final int SFLOAT_NRES = 0x0800;
+    private static final int SFLOAT_RESERVED = 0x0801;
+    private static final int SFLOAT_NEGATIVE_INFINITY = 0x0802;
+
+    /**
+     * FLOAT mantissa values with a special meaning (IEEE 11073-20601), exponent being 0.
+     */
+    private static final int FLOAT_POSITIVE_INFINITY = 0x007FFFFE;
+    private static final int FLOAT_NAN = 0x007FFFFF;
+    private static final int FLOAT_NRES = 0x00800000;
+    private static final int FLOAT_RESERVED = 0x00800001;
+    private static final int FLOAT_NEGATIVE_INFINITY = 0x00800002;
+
+    /**
+     * Powers of ten for every exponent a FLOAT can carry, from 10^-128 at index 0 to 10^127.
+     */
+    private static final double[] POW10 = new double[256];
+
+    static {
+        for (int i = 0; i < POW10.length; i++) {
+            POW10[i] = Double.parseDouble("1e" + (i - 128));
+        }
+    }
+
     /**
      * Convert signed bytes to a 16-bit short float value.
      */
     private static float bytesToFloat(byte b0, byte b1) {
-        int mantissa = unsignedToSigned(unsignedByteToInt(b0)
-                + ((unsignedByteToInt(b1) & 0x0F) << 8), 12);
-        int exponent = unsignedToSigned(unsignedByteToInt(b1) >> 4, 4);
-        return (float)(mantissa * Math.pow(10, exponent));
+        int raw = unsignedByteToInt(b0) + ((unsignedByteToInt(b1) & 0x0F) << 8);
+        int exponent = unsignedByteToInt(b1) >> 4;
+        if (exponent == 0 && raw >= SFLOAT_POSITIVE_INFINITY && raw <= SFLOAT_NEGATIVE_INFINITY) {
+            switch (raw) {
+                case SFLOAT_POSITIVE_INFINITY:
+                    return Float.POSITIVE_INFINITY;
+                case SFLOAT_NEGATIVE_INFINITY:
+                    return Float.NEGATIVE_INFINITY;
+                default:
+                    // NaN, NRes and the reserved value have no numeric meaning.
+                    return Float.NaN;
+            }
+        }
+        // Sign-extend the 12-bit mantissa and the 4-bit exponent.
+        int mantissa = (raw << 20) >> 20;
+        return (float)(mantissa * POW10[128 + ((exponent << 28) >> 28)]);
     }
 
     /**
      * Convert signed bytes to a 32-bit short float value.
      */
     private static float bytesToFloat(byte b0, byte b1, byte b2, byte b3) {
-        int mantissa = unsignedToSigned(unsignedByteToInt(b0)
+        int raw = unsignedByteToInt(b0)
                 + (unsignedByteToInt(b1) << 8)
-                + (unsignedByteToInt(b2) << 16), 24);
-        return (float)(mantissa * Math.pow(10, b3));
+                + (unsignedByteToInt(b2) << 16);
+        if (b3 == 0 && raw >= FLOAT_POSITIVE_INFINITY && raw <= FLOAT_NEGATIVE_INFINITY) {
+            switch (raw) {
+                case FLOAT_POSITIVE_INFINITY:
+                    return Float.POSITIVE_INFINITY;
+                case FLOAT_NEGATIVE_INFINITY:
+                    return Float.NEGATIVE_INFINITY;
+                default:
+                    return Float.NaN;
+            }
+        }
+        // Sign-extend the 24-bit mantissa; the exponent byte is already signed.
+        int mantissa = (raw << 8) >> 8;
+        return (float)(mantissa * POW10[128 + b3]);
     }
 
     /**
@@ -124,6 +177,15 @@ public class WQData {
         return i;
     }
 
+    /**
+     * Reads an integer value of the given format.
+     * The result is boxed; the primitive readers such as getUint16() or getSint32() avoid that.
+     * @param formatType one of the FORMAT_ constants
+     * @param offset     offset of the value in the array
+     * @param mValue     raw data
+     * @return the value read, or null if the array is too short or the format is not an integer.
+     *         FORMAT_UINT32 values above Integer.MAX_VALUE wrap around.
+     */
     public static Integer getIntValue(int formatType, int offset, byte[] mValue) {
         if ((offset + getTypeLen(formatType)) > mValue.length) return null;
 
@@ -152,6 +214,149 @@ public class WQData {
         return null;
     }
 
+    /**
+     * Reads an unsigned 8-bit value without boxing.
+     * @param offset offset of the value in the array
+     * @param mValue raw data
+     * @return the value read
+     */
+    public static int getUint8(int offset, byte[] mValue) {
+        return mValue[offset] & 0xFF;
+    }
+
+    /**
+     * Reads an unsigned little endian 16-bit value without boxing.
+     * @param offset offset of the value in the array
+     * @param mValue raw data
+     * @return the value read
+     */
+    public static int getUint16(int offset, byte[] mValue) {
+        return (mValue[offset] & 0xFF) | ((mValue[offset+1] & 0xFF) << 8);
+    }
+
+    /**
+     * Reads an unsigned little endian 32-bit value without boxing.
+     * @param offset offset of the value in the array
+     * @param mValue raw data
+     * @return the value read, always positive
+     */
+    public static long getUint32(int offset, byte[] mValue) {
+        return getSint32(offset, mValue) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Reads a signed 8-bit value without boxing.
+     * @param offset offset of the value in the array
+     * @param mValue raw data
+     * @return the value read
+     */
+    public static int getSint8(int offset, byte[] mValue) {
+        return mValue[offset];
+    }
+
+    /**
+     * Reads a signed little endian 16-bit value without boxing.
+     * @param offset offset of the value in the array
+     * @param mValue raw data
+     * @return the value read
+     */
+    public static int getSint16(int offset, byte[] mValue) {
+        return (short) getUint16(offset, mValue);
+    }
+
+    /**
+     * Reads a signed little endian 32-bit value without boxing.
+     * @param offset offset of the value in the array
+     * @param mValue raw data
+     * @return the value read
+     */
+    public static int getSint32(int offset, byte[] mValue) {
+        return (mValue[offset] & 0xFF)
+                | ((mValue[offset+1] & 0xFF) << 8)
+                | ((mValue[offset+2] & 0xFF) << 16)
+                | (mValue[offset+3] << 24);
+    }
+
+    /**
+     * Reads a 32-bit value sent as two little endian 16-bit words, most significant word first,
+     * as used by protocol 1 of the Whereqube. Same result as getUint32() on the output of
+     * fixUint32Endian(), without the intermediate array.
+     * @param offset offset of the value in the array
+     * @param mValue raw data
+     * @return the value read, always positive
+     */
+    public static long getSwappedUint32(int offset, byte[] mValue) {
+        return getSwappedSint32(offset, mValue) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Signed variant of getSwappedUint32().
+     * @param offset offset of the value in the array
+     * @param mValue raw data
+     * @return the value read
+     */
+    public static int getSwappedSint32(int offset, byte[] mValue) {
+        return (mValue[offset+2] & 0xFF)
+                | ((mValue[offset+3] & 0xFF) << 8)
+                | ((mValue[offset] & 0xFF) << 16)
+                | (mValue[offset+1] << 24);
+    }
+
+    /**
+     * Reads a 16-bit SFLOAT value without boxing. Reserved values are returned as NaN or infinity.
+     * @param offset offset of the value in the array
+     * @param mValue raw data
+     * @return the value read
+     */
+    public static float getSFloat(int offset, byte[] mValue) {
+        return bytesToFloat(mValue[offset], mValue[offset+1]);
+    }
+
+    /**
+     * Reads a 32-bit FLOAT value without boxing. Reserved values are returned as NaN or infinity.
+     * @param offset offset of the value in the array
+     * @param mValue raw data
+     * @return the value read
+     */
+    public static float getFloat(int offset, byte[] mValue) {
+        return bytesToFloat(mValue[offset], mValue[offset+1], mValue[offset+2], mValue[offset+3]);
+    }
+
+    /**
+     * Converts consecutive 16-bit SFLOAT values in one call.
+     * Reserved values are returned as NaN or infinity.
+     * @param offset    offset of the first value in the array
+     * @param mValue    raw data
+     * @param out       receives the converted values
+     * @param outOffset index of the first value in out
+     * @param count     number of values to convert
+     */
+    public static void getSFloatValues(int offset, byte[] mValue, float[] out, int outOffset, int count) {
+        for (int i = 0; i < count; i++, offset += 2) {
+            out[outOffset + i] = bytesToFloat(mValue[offset], mValue[offset+1]);
+        }
+    }
+
+    /**
+     * Converts consecutive 32-bit FLOAT values in one call.
+     * Reserved values are returned as NaN or infinity.
+     * @param offset    offset of the first value in the array
+     * @param mValue    raw data
+     * @param out       receives the converted values
+     * @param outOffset index of the first value in out
+     * @param count     number of values to convert
+     */
+    public static void getFloatValues(int offset, byte[] mValue, float[] out, int outOffset, int count) {
+        for (int i = 0; i < count; i++, offset += 4) {
+            out[outOffset + i] = bytesToFloat(mValue[offset], mValue[offset+1], mValue[offset+2], mValue[offset+3]);
+        }
+    }
+
+    /**
+     * Swaps the two 16-bit words of a protocol 1 value into a new array.
+     * @deprecated allocates on every call, use getSwappedUint32() or getSwappedSint32() instead.
+     */
+    @Deprecated
     public static byte[] fixUint32Endian(byte[] inputArray, int offset){
         byte[] returnArray = new byte[4];
         returnArray[0] = inputArray[offset+2];
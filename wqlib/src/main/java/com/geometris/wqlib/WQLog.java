@@ -0,0 +1,52 @@
+package com.geometris.wqlib;
+
+import android.util.Log;
+
+import com.github.Geometris.wqlib.BuildConfig;
+
+/**
+ * Debug logging for the library.
+ * DEBUG is a compile-time constant, false in release builds, so code guarded by
+ * {@code if (WQLog.DEBUG)} is removed by the compiler and costs nothing per notification.
+ * Messages built from values should still be guarded, so the string is not built either.
+ * Warnings, errors and connection diagnostics are still logged with android.util.Log directly.
+ */
+final class WQLog {
+
+    /**
+     * True in debug builds of the library only.
+     */
+    static final boolean DEBUG = BuildConfig.DEBUG;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private WQLog() {
+    }
+
+    static void d(String tag, String msg) {
+        if (DEBUG)
+            Log.d(tag, msg);
+    }
+
+    static void v(String tag, String msg) {
+        if (DEBUG)
+            Log.v(tag, msg);
+    }
+
+    /**
+     * Formats bytes as two lower case hex digits each, followed by ", ".
+     * @param value bytes to format
+     * @return the formatted bytes
+     */
+    static String hex(byte[] value) {
+        char[] out = new char[value.length * 4];
+        int i = 0;
+        for (byte b : value) {
+            out[i++] = HEX_DIGITS[(b >> 4) & 0x0F];
+            out[i++] = HEX_DIGITS[b & 0x0F];
+            out[i++] = ',';
+            out[i++] = ' ';
+        }
+        return new String(out);
+    }
+}
@@ -0,0 +1,37 @@
+package com.geometris.wqlib;
+
+/**
+ * Completes the future of a request sent with WherequbeService.sendRequestAsync() that got no response.
+ * @see WherequbeService#sendRequestAsync(BaseRequest, int)
+ */
+public class WQRequestException extends Exception {
+
+    private final int requestId;
+    private final int errorCode;
+
+    /**
+     * @param requestId type of the request, from BaseRequest
+     * @param errorCode reason, WQError.ERROR_FAIL, ERROR_TIME_OUT or ERROR_UNAVAILABLE
+     */
+    public WQRequestException(int requestId, int errorCode) {
+        super("Request " + requestId + (errorCode == WQError.ERROR_TIME_OUT ? " timed out"
+                : errorCode == WQError.ERROR_UNAVAILABLE ? " not supported by the device or not connected" : " failed"));
+        this.requestId = requestId;
+        this.errorCode = errorCode;
+    }
+
+    /**
+     * @return the type of the request, from BaseRequest.
+     */
+    public int getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * @return WQError.ERROR_FAIL if the device reported a failure, ERROR_TIME_OUT if it did not answer in time,
+     * ERROR_UNAVAILABLE if the request could not be sent.
+     */
+    public int getErrorCode() {
+        return errorCode;
+    }
+}
@@ -18,6 +18,19 @@ public class WQSmartRequest {
     public UUID descriptorUuid;
     public int requestId;
     public byte [] value;
+    // Number of identical operations queued after this one and merged into it, each to be answered like this one.
+    public int merged;
+    // RequestPriority class, time the operation was queued (uptime ms) and its order among all queued operations.
+    public int priority;
+    public long queuedAt;
+    public long sequence;
+    // Handle of the WherequbeService request the operation was queued for, -1 if none; traced with the operation.
+    public long requestHandle = -1;
+    // Handle of the batch the operation is a step of, -1 if none; once a step fails, the later ones are not started.
+    public long batchHandle = -1;
+    // GATT callback the operation waits for once passed to the stack, and whether the watchdog failed it meanwhile.
+    int pendingCallback;
+    boolean stalled;
 
     public WQSmartRequest(RequestType type, int requestId, UUID service, UUID characteristic, UUID descriptor) {
         this.type = type;
@@ -37,4 +50,12 @@ public class WQSmartRequest {
         this.descriptorUuid = descriptor;
         this.value = value;
     }
+
+    /**
+     * @return true if both operations are for the same service, characteristic and descriptor.
+     */
+    public boolean hasSameTarget(WQSmartRequest other) {
+        return serviceUuid.equals(other.serviceUuid) && characteristicUuid.equals(other.characteristicUuid)
+                && (descriptorUuid == null ? other.descriptorUuid == null : descriptorUuid.equals(other.descriptorUuid));
+    }
 }
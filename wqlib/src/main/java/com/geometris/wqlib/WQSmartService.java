@@ -7,23 +7,30 @@ import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCallback;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
-import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothManager;
 import android.bluetooth.BluetoothProfile;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Binder;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.ParcelUuid;
+import android.os.SystemClock;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import android.util.Log;
 
+import org.joda.time.DateTime;
+
 import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  *  Singleton provides a service to send and receive data from Whereqube devices,
@@ -75,19 +82,436 @@ public class WQSmartService extends Service {
     // Characteristic currently waiting to have a notification value written to it.
     private BluetoothGattCharacteristic mPendingCharacteristic = null;
 
-    Queue<WQSmartRequest> requestQueue = new LinkedList<WQSmartRequest>();
+    // Set to read the CCC before writing it when enabling or disabling notifications, as older versions did.
+    private volatile boolean mReadCccFirst;
+
+    // Characteristics of the connected device, resolved when its services are discovered.
+    private volatile GattHandles mHandles = GattHandles.NONE;
+
+    // GATT operations are run one at a time by the GATT thread, the only one touching currentRequest and the
+    // GATT callbacks handling; other threads only add operations to mRequests.
+    private HandlerThread mGattThread;
+    private Handler mGattHandler;
+
+    /**
+     * Time after which a queued operation is started before those of higher priority, in milliseconds.
+     */
+    public static final long MAX_QUEUE_WAIT = 1000;
+    private final RequestQueue mRequests = new RequestQueue(MAX_QUEUE_WAIT);
+    private final AtomicBoolean mDrainPosted = new AtomicBoolean();
+
+    // Acknowledged operation in progress, null if none; writes without response in progress are in mUnsentWrites.
+    volatile WQSmartRequest currentRequest = null;
+
+    // Starts the queued operations that can start.
+    private final Runnable mDrainRequests = new Runnable() {
+        @Override
+        public void run() {
+            mDrainPosted.set(false);
+            startRequests();
+        }
+    };
+
+    // Forgets the operations of the previous connection.
+    private final Runnable mClearRequests = new Runnable() {
+        @Override
+        public void run() {
+            mRequests.clear();
+            currentRequest = null;
+            mUnsentWrites.clear();
+            mDeferredWrite = null;
+            mIssuedOperations.clear();
+            mGattHandler.removeCallbacks(mOperationWatchdog);
+            endGattSpan(Tracer.FAILED);
+        }
+    };
+
+    /**
+     * Default time a GATT operation may take before being failed, in milliseconds.
+     */
+    public static final long DEFAULT_OPERATION_TIMEOUT = 5000;
+
+    /**
+     * Default number of writes without response passed to the Bluetooth stack before it reports sending them.
+     */
+    public static final int DEFAULT_WRITE_CREDITS = 4;
+
+    private volatile boolean mWriteWithoutResponse;
+    private volatile int mWriteCredits = DEFAULT_WRITE_CREDITS;
+    // Writes without response passed to the stack and not yet reported sent, in order.
+    private final ArrayDeque<WQSmartRequest> mUnsentWrites = new ArrayDeque<WQSmartRequest>();
+    // Write without response the stack refused while busy with other operations, retried once one of them completes.
+    private WQSmartRequest mDeferredWrite;
+    // Operations passed to the stack and waiting for their callback, in the order the stack calls back.
+    private final ArrayDeque<WQSmartRequest> mIssuedOperations = new ArrayDeque<WQSmartRequest>();
+
+    // GATT callback an issued operation waits for.
+    private static final int NO_CALLBACK = 0;
+    private static final int CHARACTERISTIC_READ_CALLBACK = 1;
+    private static final int CHARACTERISTIC_WRITE_CALLBACK = 2;
+    private static final int DESCRIPTOR_READ_CALLBACK = 3;
+    private static final int DESCRIPTOR_WRITE_CALLBACK = 4;
+
+    private volatile long mOperationTimeout = DEFAULT_OPERATION_TIMEOUT;
+    private volatile int mStallResetThreshold;
+    private volatile long mStalledOperations;
+    private int mConsecutiveStalls;
+
+    // Fails the operations in progress when the callback of the oldest did not come in time, as some Bluetooth stacks
+    // never call back.
+    private final Runnable mOperationWatchdog = new Runnable() {
+        @Override
+        public void run() {
+            WQSmartRequest request = currentRequest != null ? currentRequest : mUnsentWrites.peek();
+            if (request == null)
+                return;
+            mStalledOperations++;
+            mConsecutiveStalls++;
+            Log.w(TAG, "WQSS: GATT operation stalled: " + request.type + ", " + request.requestId);
+            // Every issued operation is answered below; their callbacks, if they still come, are ignored.
+            for (WQSmartRequest issued : mIssuedOperations)
+                issued.stalled = true;
+            endGattSpan(Tracer.FAILED);
+            answerRequest(request, MESSAGE_REQUEST_FAILED);
+            failUnsentWrites(request);
+            if (mStallResetThreshold > 0 && mConsecutiveStalls >= mStallResetThreshold) {
+                Log.w(TAG, "WQSS: " + mConsecutiveStalls + " GATT operations stalled, resetting the connection");
+                mConsecutiveStalls = 0;
+                failQueuedRequests();
+                mClearRequests.run();
+                disconnect();
+            } else {
+                processNextRequest();
+            }
+        }
+    };
+
+    /**
+     * ATT MTU of a connection until a larger one is negotiated; notifications then carry 20 bytes.
+     */
+    public static final int DEFAULT_MTU = 23;
+
+    /**
+     * Largest ATT MTU allowed by the Bluetooth specification, asked for by default after connecting.
+     */
+    public static final int MAX_MTU = 517;
+
+    // ATT opcode and handle preceding the value in a notification or write.
+    private static final int ATT_HEADER = 3;
+    // Time given to the MTU exchange before discovering the services anyway, in milliseconds.
+    private static final long MTU_EXCHANGE_TIMEOUT = 1000;
+
+    private volatile int mPreferredMtu = MAX_MTU;
+    private volatile int mMtu = DEFAULT_MTU;
+    // Set on connection until service discovery is started, by the MTU exchange callback or its timeout.
+    private final AtomicBoolean mDiscoveryPending = new AtomicBoolean();
+
+    private final Runnable mMtuExchangeTimeout = new Runnable() {
+        @Override
+        public void run() {
+            Log.w(TAG, "WQSS: No MTU exchange response, keeping MTU " + mMtu);
+            startServiceDiscovery(Tracer.FAILED);
+        }
+    };
+
+    // Transfers during which the connection interval is shortened: the burst of operations setting up a connection,
+    // until the GATT queue first empties after service discovery, and the streaming of unidentified events.
+    private static final int BULK_SETUP = 1;
+    private static final int BULK_EVENTS = 2;
+    private final AtomicInteger mBulkTransfers = new AtomicInteger();
+    private volatile boolean mPriorityControl = true;
+    private volatile boolean mServicesDiscovered;
+    private int mConnectionPriority = BluetoothGatt.CONNECTION_PRIORITY_BALANCED;
+
+    private final OBDDataInfo obdDataInfo= new OBDDataInfo();
+
+    // Set by callers on other threads, the reassembly buffer is then reset by the notification thread.
+    private volatile boolean mObdDataResetPending = true;
+
+    // Raw value recorder, with the device address packed for it. Values are recorded on the binder thread for
+    // notifications and on the GATT thread for reads, so the address and its packed form are swapped as one object.
+    private volatile CaptureRecorder mCaptureRecorder;
+    private volatile CaptureAddress mCaptureAddress;
+
+    private static final class CaptureAddress {
+        final String address;
+        final long bits;
+
+        CaptureAddress(String address) {
+            this.address = address;
+            this.bits = CaptureRecorder.packAddress(address);
+        }
+    }
+
+    // Spans open for the tracer: connection or discovery, the GATT operation in progress and the frame being assembled.
+    private final AtomicLong mSpanIds = new AtomicLong();
+    private String mLinkSpan;
+    private long mLinkSpanId;
+    private String mGattSpan;
+    private long mGattSpanId;
+    private long mFrameSpanId;
+
+    // Unidentified driver events collected while streaming the device's backlog.
+    private static final int UDEVENT_BATCH_SIZE = 32;
+    private final Object mEventBatchLock = new Object();
+    private boolean mEventStreaming;
+    private ArrayList<UnidentifiedEvent> mEventBatch = new ArrayList<UnidentifiedEvent>(UDEVENT_BATCH_SIZE);
+    private int mEventsDelivered;
+    private int mEventsTotal = -1;
+
+    // Publishes fields decoded before their frame completes.
+    private final OBDDataInfo.FieldListener mFieldListener = new OBDDataInfo.FieldListener() {
+        @Override
+        public void onFieldDecoded(int field, double value, DateTime timestamp) {
+            BaseRequest bs = new BaseRequest(BaseRequest.OBD_FIELD_UPDATE, WQSmartService.MESSAGE_CHARACTERISTIC_VALUE,
+                    (Object) new GeoFieldUpdate(field, value, timestamp));
+            mWherequbeService.mMHT.onMessage(bs);
+        }
+    };
+
+    /**
+     * Enables or disables publishing of OBD_FIELD_UPDATE messages while frames are arriving.
+     * @param enable true to decode each field as soon as its fragment arrives
+     */
+    public void setIncrementalDecoding(boolean enable) {
+        obdDataInfo.setFieldListener(enable ? mFieldListener : null);
+    }
+
+    // Switches event streaming once the device accepted the command starting or stopping its transmission.
+    // A failed command leaves the device, and so the streaming mode, as they were.
+    private void onEventStreamingWritten(boolean start, boolean written) {
+        if (!written) {
+            Log.w(TAG, "WQSS: Command to " + (start ? "start" : "stop") + " transmitting unidentified events failed");
+            return;
+        }
+        setUnidentifiedEventStreaming(start && mWherequbeService.mMHT.hasReqHandler(BaseRequest.UDEVENT_BATCH));
+    }
+
+    /**
+     * Starts or stops streaming of unidentified driver events in batches to the UDEVENT_BATCH handler.
+     * Stopping sends the events still collected as the last, complete, batch.
+     * Called once the command starting or stopping the transmission of events has been written.
+     * @param enable true when the device transmits its events
+     */
+    void setUnidentifiedEventStreaming(boolean enable) {
+        synchronized (mEventBatchLock) {
+            if (enable && !mEventStreaming) {
+                mEventsDelivered = 0;
+                mEventsTotal = -1;
+            } else if (!enable && mEventStreaming) {
+                sendEventBatch(true);
+            }
+            mEventStreaming = enable;
+        }
+        obdDataInfo.setBulkUnidentifiedEvents(enable);
+        setBulkTransfer(BULK_EVENTS, enable);
+    }
+
+    /**
+     * Sets the ATT MTU asked for on the next connections. A larger MTU lets the device send a frame in fewer,
+     * larger notifications; the Bluetooth stacks of the phone and the device may each lower it.
+     * @param mtu MTU to negotiate, from DEFAULT_MTU, which keeps the default without exchanging it, to MAX_MTU
+     * @throws IllegalArgumentException if mtu is out of range
+     */
+    public void setPreferredMtu(int mtu) {
+        if (mtu < DEFAULT_MTU || mtu > MAX_MTU)
+            throw new IllegalArgumentException("Invalid MTU: " + mtu);
+        mPreferredMtu = mtu;
+    }
+
+    /**
+     * @return the ATT MTU of the current connection, DEFAULT_MTU until one is negotiated.
+     */
+    public int getMtu() {
+        return mMtu;
+    }
+
+    /**
+     * @return the largest value a notification can carry on the current connection, in bytes.
+     */
+    public int getMaxPayloadLength() {
+        return mMtu - ATT_HEADER;
+    }
+
+    /**
+     * Enables or disables asking for a high priority connection, with a short connection interval, while setting
+     * up a connection and while streaming unidentified events, and for a balanced one the rest of the time.
+     * @param enable true to change the connection priority during bulk transfers
+     */
+    public void setConnectionPriorityControl(boolean enable) {
+        mPriorityControl = enable;
+        updateConnectionPriority();
+    }
+
+    private void setBulkTransfer(int transfer, boolean active) {
+        int transfers;
+        do {
+            transfers = mBulkTransfers.get();
+        } while (!mBulkTransfers.compareAndSet(transfers, active ? transfers | transfer : transfers & ~transfer));
+        updateConnectionPriority();
+    }
+
+    private synchronized void updateConnectionPriority() {
+        BluetoothGatt gatt = mGattClient;
+        if (gatt == null || !isConnected())
+            return;
+        int priority = mPriorityControl && mBulkTransfers.get() != 0
+                ? BluetoothGatt.CONNECTION_PRIORITY_HIGH : BluetoothGatt.CONNECTION_PRIORITY_BALANCED;
+        if (priority != mConnectionPriority && gatt.requestConnectionPriority(priority)) {
+            Log.d(TAG, "WQSS: Connection priority " + priority);
+            mConnectionPriority = priority;
+        }
+    }
+
+    // Asks for the preferred MTU, discovering the services once it is exchanged or right away if it is not asked for.
+    private void exchangeMtu() {
+        mDiscoveryPending.set(true);
+        BluetoothGatt gatt = mGattClient;
+        if (mPreferredMtu > DEFAULT_MTU && gatt != null) {
+            beginLinkSpan(Tracer.MTU_EXCHANGE);
+            if (gatt.requestMtu(mPreferredMtu)) {
+                mGattHandler.postDelayed(mMtuExchangeTimeout, MTU_EXCHANGE_TIMEOUT);
+                return;
+            }
+            Log.w(TAG, "WQSS: MTU exchange not started");
+            startServiceDiscovery(Tracer.FAILED);
+        } else {
+            startServiceDiscovery(Tracer.OK);
+        }
+    }
 
-    WQSmartRequest currentRequest = null;
+    private void startServiceDiscovery(int exchangeStatus) {
+        if (!mDiscoveryPending.getAndSet(false))
+            return;
+        mGattHandler.removeCallbacks(mMtuExchangeTimeout);
+        endLinkSpan(exchangeStatus);
+        BluetoothGatt gatt = mGattClient;
+        if (gatt == null)
+            return;
+        beginLinkSpan(Tracer.SERVICE_DISCOVERY);
+        Log.d(TAG, "WQSS: Attempting to start service discovery:" + gatt.discoverServices());
+    }
 
-    private OBDDataInfo obdDataInfo= null;
+    // Collects the events of a complete frame; a batch is sent once full, once the reported
+    // number of events has been delivered, or when a frame brings no more events.
+    private void collectUnidentifiedEvents() {
+        synchronized (mEventBatchLock) {
+            if (!mEventStreaming)
+                return;
+            GeoSample sample = obdDataInfo.getGeoSample();
+            if (sample.has(GeoSample.TOTAL_UDRV_EVENTS))
+                mEventsTotal = (int) sample.getLong(GeoSample.TOTAL_UDRV_EVENTS);
+            int count = obdDataInfo.drainUnidentifiedEvents(mEventBatch);
+            mEventsDelivered += count;
+            boolean drained = mEventsTotal >= 0 && mEventsDelivered >= mEventsTotal;
+            if (mEventBatch.size() >= UDEVENT_BATCH_SIZE || (drained && count > 0)
+                    || (count == 0 && !mEventBatch.isEmpty()))
+                sendEventBatch(drained);
+        }
+    }
+
+    private void sendEventBatch(boolean complete) {
+        if (mEventBatch.isEmpty() && !complete)
+            return;
+        UnidentifiedEventBatch batch = new UnidentifiedEventBatch(mEventBatch, mEventsDelivered, mEventsTotal, complete);
+        mEventBatch = new ArrayList<UnidentifiedEvent>(UDEVENT_BATCH_SIZE);
+        mWherequbeService.mMHT.onMessage(new BaseRequest(BaseRequest.UDEVENT_BATCH, WQSmartService.MESSAGE_CHARACTERISTIC_VALUE, (Object) batch));
+    }
+
+    /**
+     * Sets how long a frame may wait for its missing fragments before being discarded.
+     * @param timeout timeout in milliseconds
+     */
+    public void setFragmentTimeout(long timeout) {
+        obdDataInfo.setFragmentTimeout(timeout);
+    }
+
+    /**
+     * @return counters of the frames reassembled so far.
+     */
+    public ReassemblyStats getReassemblyStats() {
+        return obdDataInfo.getReassemblyStats();
+    }
+
+    /**
+     * @return counters of the inbound data path so far.
+     */
+    public PipelineStats getPipelineStats() {
+        return mWherequbeService.mMHT.mPipeline.snapshot(obdDataInfo.getReassemblyStats());
+    }
+
+    /**
+     * Starts recording every characteristic value received, replacing any recorder in use.
+     * @param recorder recorder to append the values to, or null to stop recording
+     */
+    public void setCaptureRecorder(CaptureRecorder recorder) {
+        CaptureRecorder previous = mCaptureRecorder;
+        mCaptureRecorder = recorder;
+        if (previous != null)
+            previous.close();
+    }
+
+    // Link spans are opened and closed on the Bluetooth thread and, when the MTU exchange times out, the GATT thread.
+    private synchronized void beginLinkSpan(String name) {
+        endLinkSpan(Tracer.FAILED);
+        mLinkSpan = name;
+        mLinkSpanId = mSpanIds.incrementAndGet();
+        mWherequbeService.mTracer.begin(name, mLinkSpanId, -1);
+    }
+
+    private synchronized void endLinkSpan(int status) {
+        if (mLinkSpan != null) {
+            mWherequbeService.mTracer.end(mLinkSpan, mLinkSpanId, status);
+            mLinkSpan = null;
+        }
+    }
+
+    // Called right before passing an operation to the stack: starts its span and waits for its callback.
+    private void beginGattOperation(String name, int callback, WQSmartRequest request) {
+        request.pendingCallback = callback;
+        mIssuedOperations.add(request);
+        beginGattSpan(name, request);
+    }
 
+    // Called when the stack refused the operation just begun, which gets no callback.
+    private void abortGattOperation() {
+        WQSmartRequest request = mIssuedOperations.pollLast();
+        if (request != null)
+            request.pendingCallback = NO_CALLBACK;
+        endGattSpan(Tracer.FAILED);
+    }
+
+    // GATT operations are serialized on the GATT thread, so a single span is open at a time.
+    private void beginGattSpan(String name, WQSmartRequest request) {
+        endGattSpan(Tracer.FAILED);
+        mGattSpan = name;
+        mGattSpanId = mSpanIds.incrementAndGet();
+        mWherequbeService.mTracer.begin(name, mGattSpanId, request.requestId, request.requestHandle);
+    }
+
+    private void endGattSpan(int status) {
+        if (mGattSpan != null) {
+            mWherequbeService.mTracer.end(mGattSpan, mGattSpanId, status);
+            mGattSpan = null;
+        }
+    }
+
+    private void endFrameSpan(int status) {
+        if (mFrameSpanId != 0) {
+            mWherequbeService.mTracer.end(Tracer.FRAME_ASSEMBLY, mFrameSpanId, status);
+            mFrameSpanId = 0;
+        }
+    }
+
+    /**
+     * Discards any partially received frame. The buffer is reused for the next frame.
+     */
     public void initOBDDataInfo() {
-        obdDataInfo = new OBDDataInfo();
+        mObdDataResetPending = true;
     }
 
     public void LogMessage(String tag, String msg)
     {
-        //if(GeoPreferences.debug)
         Log.d(tag, msg);
     }
 
@@ -98,21 +522,36 @@ public class WQSmartService extends Service {
 
         @Override
         public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
-            LogMessage(TAG, "onConnectionStateChange state: "+newState+ " status: "+status);
+            if (status != BluetoothGatt.GATT_SUCCESS)
+                Log.w(TAG, "onConnectionStateChange state: "+newState+ " status: "+status);
+            else
+                Log.i(TAG, "onConnectionStateChange state: "+newState+ " status: "+status);
             String intentAction;
             if (newState == BluetoothProfile.STATE_CONNECTED && mGattClient != null) {
-                requestQueue.clear();
-                currentRequest = null;
+                mGattHandler.post(mClearRequests);
                 intentAction = "com.geometris.WQ.ACTION_GATT_CONNECTED";
                 mConnectionState =  BluetoothProfile.STATE_CONNECTED;
                 broadcastUpdate(intentAction);
                 Log.d(TAG, "WQSS: Connected to GATT server.");
-                Log.d(TAG, "WQSS: Attempting to start service discovery:" + mGattClient.discoverServices());
+                endLinkSpan(status);
+                mMtu = DEFAULT_MTU;
+                mServicesDiscovered = false;
+                mHandles = GattHandles.NONE;
+                synchronized (WQSmartService.this) {
+                    mConnectionPriority = BluetoothGatt.CONNECTION_PRIORITY_BALANCED;
+                }
+                setBulkTransfer(BULK_SETUP, true);
+                exchangeMtu();
             } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
                 mConnectionState = BluetoothProfile.STATE_DISCONNECTED;
+                mHandles = GattHandles.NONE;
+                mDiscoveryPending.set(false);
+                mGattHandler.removeCallbacks(mMtuExchangeTimeout);
+                setBulkTransfer(BULK_SETUP, false);
                 refreshDeviceCache();
-                requestQueue.clear();
-                currentRequest = null;
+                mGattHandler.post(mClearRequests);
+                endLinkSpan(status != BluetoothGatt.GATT_SUCCESS ? status : Tracer.FAILED);
+                endFrameSpan(Tracer.FAILED);
                 if(mGattClient != null) {
                     disconnect();
                     mGattClient.close();
@@ -124,9 +563,20 @@ public class WQSmartService extends Service {
             }
         }
 
+        @Override
+        public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+            if (status == BluetoothGatt.GATT_SUCCESS)
+                mMtu = mtu;
+            Log.d(TAG, "WQSS: MTU " + mtu + " status: " + status);
+            startServiceDiscovery(status);
+        }
+
         @Override
         public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+            endLinkSpan(status);
             if (status == BluetoothGatt.GATT_SUCCESS) {
+                mHandles = new GattHandles(gatt);
+                mServicesDiscovered = true;
                 Log.v(TAG, "WQSS: onServicesDiscovered mBluetoothGatt = " + mGattClient);
                 broadcastUpdate("com.geometris.WQ.ACTION_GATT_SERVICES_DISCOVERED");
                 mWherequbeService.mMHT.serviceDiscovered();
@@ -139,45 +589,56 @@ public class WQSmartService extends Service {
 
         @Override
         public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
+            mWherequbeService.mMHT.mPipeline.notifications.incrementAndGet();
             onData("com.geometris.WQ.ACTION_OBD_AVAILABLE", characteristic);
         }
 
         /**
-         * After calling registerForNotification this callback should trigger, and then we can perform the actual
-         * enable. It could also be called when a descriptor was requested directly, so that case is handled too.
+         * When the CCC is read before being written, this callback triggers after a notification request, and then
+         * we can perform the actual enable. It could also be called when a descriptor was requested directly, so that case is handled too.
          */
         @Override
         public void onDescriptorRead(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
-            BluetoothGattCharacteristic characteristic = descriptor.getCharacteristic();
-            if (currentRequest.type == WQSmartRequest.RequestType.CHARACTERISTIC_NOTIFICATION) {
-                // Descriptor was requested indirectly as part of registration for notifications.
-                if(currentRequest.value[0] !=0x00) {
-                    if (status != BluetoothGatt.GATT_SUCCESS) {
-                        sendMessage(currentRequest.requestId, MESSAGE_REQUEST_FAILED);
+            mGattHandler.post(() -> {
+                if (onOperationCallback(DESCRIPTOR_READ_CALLBACK, descriptor.getCharacteristic().getUuid()) == null)
+                    return;
+                BluetoothGattCharacteristic characteristic = descriptor.getCharacteristic();
+                endGattSpan(status);
+                if (currentRequest.type == WQSmartRequest.RequestType.CHARACTERISTIC_NOTIFICATION) {
+                    // Descriptor was requested indirectly as part of registration for notifications.
+                    if(currentRequest.value[0] !=0x00) {
+                        if (status != BluetoothGatt.GATT_SUCCESS) {
+                            // Answered already: the CCC is left alone and the queue goes on.
+                            answerRequest(currentRequest, MESSAGE_REQUEST_FAILED);
+                            processNextRequest();
+                            return;
+                        }
                     }
-                }
 
-                if (characteristic.getService().getUuid().compareTo(mPendingCharacteristic.getService().getUuid()) == 0
-                        && characteristic.getUuid().compareTo(mPendingCharacteristic.getUuid()) == 0) {
-                    boolean enablevalue = true;
-                    if(currentRequest.value[0] ==0x00) {
-                        enablevalue = false;
+                    if (characteristic.getService().getUuid().compareTo(mPendingCharacteristic.getService().getUuid()) == 0
+                            && characteristic.getUuid().compareTo(mPendingCharacteristic.getUuid()) == 0) {
+                        boolean enablevalue = true;
+                        if(currentRequest.value[0] ==0x00) {
+                            enablevalue = false;
+                        }
+                        if (!enableNotification(enablevalue, characteristic)) {
+                            answerRequest(currentRequest, MESSAGE_REQUEST_FAILED);
+                            processNextRequest();
+                            return;
+                        }
+                        // Don't call processNextRequest yet as this request isn't
+                        // complete until onDescriptorWrite() triggers.
                     }
-                    if (!enableNotification(enablevalue, characteristic)) {
-                        sendMessage(currentRequest.requestId, MESSAGE_REQUEST_FAILED);
+                } else if (currentRequest.type == WQSmartRequest.RequestType.READ_DESCRIPTOR) {
+                    // Descriptor was requested directly.
+                    if (status == BluetoothGatt.GATT_SUCCESS) {
+                    } else {
+                        answerRequest(currentRequest, MESSAGE_REQUEST_FAILED);
                     }
-                    // Don't call processNextRequest yet as this request isn't
-                    // complete until onDescriptorWrite() triggers.
-                }
-            } else if (currentRequest.type == WQSmartRequest.RequestType.READ_DESCRIPTOR) {
-                // Descriptor was requested directly.
-                if (status == BluetoothGatt.GATT_SUCCESS) {
-                } else {
-                    sendMessage( currentRequest.requestId, MESSAGE_REQUEST_FAILED);
+                    // This request is now complete, so see if there is another.
+                    processNextRequest();
                 }
-                // This request is now complete, so see if there is another.
-                processNextRequest();
-            }
+            });
         }
 
         /**
@@ -186,42 +647,69 @@ public class WQSmartService extends Service {
          */
         @Override
         public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
-            BluetoothGattCharacteristic characteristic = descriptor.getCharacteristic();
-            if (currentRequest.type == WQSmartRequest.RequestType.CHARACTERISTIC_NOTIFICATION) {
-                if (status != BluetoothGatt.GATT_SUCCESS) {
+            mGattHandler.post(() -> {
+                if (onOperationCallback(DESCRIPTOR_WRITE_CALLBACK, descriptor.getCharacteristic().getUuid()) == null)
+                    return;
+                // Ended with the GATT status, recorded as a failure unless it is GATT_SUCCESS.
+                endGattSpan(status);
+                if (currentRequest.type == WQSmartRequest.RequestType.CHARACTERISTIC_NOTIFICATION) {
+                    // No notification arrives if the CCC was not written: the caller is told rather than left waiting.
+                    if (status != BluetoothGatt.GATT_SUCCESS)
+                        answerRequest(currentRequest, MESSAGE_REQUEST_FAILED);
                 }
-            } else if (currentRequest.type == WQSmartRequest.RequestType.WRITE_DESCRIPTOR) {
-                // TODO: If descriptor writing is implemented, add code here to send message to handler.
-            }
-            processNextRequest();
+                processNextRequest();
+            });
         }
 
         @Override
         public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
-            // This can only be in response to the current request as there can't be more than one in progress.
-            // So check this is what we were expecting.
-            if (currentRequest.type == WQSmartRequest.RequestType.READ_CHARACTERISTIC) {
-                if (status == BluetoothGatt.GATT_SUCCESS) {
-                    onData("com.geometris.WQ.ACTION_OBD_AVAILABLE", characteristic);
-                }
-                else
-                {
-                    sendMessage(currentRequest.requestId, MESSAGE_REQUEST_FAILED);
+            mGattHandler.post(() -> {
+                if (onOperationCallback(CHARACTERISTIC_READ_CALLBACK, characteristic.getUuid()) == null)
+                    return;
+                // This can only be in response to the current request as there can't be more than one in progress.
+                // So check this is what we were expecting.
+                endGattSpan(status);
+                if (currentRequest.type == WQSmartRequest.RequestType.READ_CHARACTERISTIC) {
+                    if (status == BluetoothGatt.GATT_SUCCESS) {
+                        mWherequbeService.mMHT.mPipeline.reads.incrementAndGet();
+                        onData("com.geometris.WQ.ACTION_OBD_AVAILABLE", characteristic);
+                    }
+                    else
+                    {
+                        answerRequest(currentRequest, MESSAGE_REQUEST_FAILED);
+                    }
+                    processNextRequest();
                 }
-                processNextRequest();
-            }
+            });
         }
 
         @Override
         public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
-            if (currentRequest.type == WQSmartRequest.RequestType.WRITE_CHARACTERISTIC) {
-                if(status == BluetoothGatt.GATT_SUCCESS)
-                    sendMessage(currentRequest.requestId, MESSAGE_WRITE_COMPLETE);
-                else
-                    sendMessage(currentRequest.requestId, MESSAGE_REQUEST_FAILED);
+            mGattHandler.post(() -> {
+                WQSmartRequest written = onOperationCallback(CHARACTERISTIC_WRITE_CALLBACK, characteristic.getUuid());
+                if (written == null)
+                    return;
+                if (mUnsentWrites.contains(written)) {
+                    // Writes without response are reported in the order they were passed to the stack;
+                    // those passed before this one and never reported are lost.
+                    WQSmartRequest sent;
+                    while ((sent = mUnsentWrites.poll()) != written)
+                        answerRequest(sent, MESSAGE_REQUEST_FAILED);
+                    answerRequest(written, status == BluetoothGatt.GATT_SUCCESS ? MESSAGE_WRITE_COMPLETE : MESSAGE_REQUEST_FAILED);
+                    // The watchdog follows the acknowledged operation while there is one, else the next unsent write.
+                    if (currentRequest == null)
+                        armWatchdog();
+                    startRequests();
+                } else if (written == currentRequest) {
+                    endGattSpan(status);
+                    if(status == BluetoothGatt.GATT_SUCCESS)
+                        answerRequest(currentRequest, MESSAGE_WRITE_COMPLETE);
+                    else
+                        answerRequest(currentRequest, MESSAGE_REQUEST_FAILED);
 
-                processNextRequest();
-            }
+                    processNextRequest();
+                }
+            });
         }
 
     };
@@ -246,27 +734,66 @@ public class WQSmartService extends Service {
     }
 
     private void onData(String action, BluetoothGattCharacteristic characteristic) {
-        new Intent(action);
-
         // A notification for a characteristic has been received, so notify
         // the registered Handler.
         UUID serviceUUID = characteristic.getService().getUuid();
         UUID characteristicUUID = characteristic.getUuid();
+        MsgHandlerThread mht = mWherequbeService.mMHT;
+        PipelineMetrics pipeline = mht.mPipeline;
+        CaptureRecorder recorder = mCaptureRecorder;
+        if (recorder != null) {
+            String address = mBluetoothDeviceAddress;
+            CaptureAddress packed = mCaptureAddress;
+            if (packed == null || packed.address != address) {
+                packed = new CaptureAddress(address);
+                mCaptureAddress = packed;
+            }
+            recorder.append(SystemClock.elapsedRealtimeNanos(), packed.bits,
+                    CaptureRecorder.characteristicId(characteristicUUID), characteristic.getValue());
+        }
         if (serviceUUID.compareTo(WQSmartService.WQSmartUuid.OBD_SERVICE.getUuid()) == 0
                 && characteristicUUID.compareTo(WQSmartService.WQSmartUuid.OBD_MEASUREMENT.getUuid()) == 0) {
             byte[] values = characteristic.getValue();
+            if(mObdDataResetPending) {
+                mObdDataResetPending = false;
+                obdDataInfo.reset();
+                endFrameSpan(Tracer.FAILED);
+            }
+            if(mFrameSpanId == 0) {
+                mFrameSpanId = mSpanIds.incrementAndGet();
+                mWherequbeService.mTracer.begin(Tracer.FRAME_ASSEMBLY, mFrameSpanId, BaseRequest.OBD_MEASUREMENT);
+            }
+            pipeline.fragments.incrementAndGet();
             obdDataInfo.insertPacket(values);
             if(obdDataInfo.isFull())
             {
-                GeoData geoData = obdDataInfo.getGeoData();
-                BaseRequest bs = new BaseRequest(BaseRequest.OBD_MEASUREMENT, WQSmartService.MESSAGE_CHARACTERISTIC_VALUE, (Object) geoData);
-                mWherequbeService.mMHT.onMessage(bs);
-                initOBDDataInfo();
+                endFrameSpan(Tracer.OK);
+                long decodeStart = System.nanoTime();
+                boolean handled = false;
+                collectUnidentifiedEvents();
+                if(mht.hasReqHandler(BaseRequest.OBD_SAMPLE)) {
+                    handled = true;
+                    GeoSample sample = GeoSample.obtain().copyFrom(obdDataInfo.getGeoSample());
+                    mht.onMessage(new BaseRequest(BaseRequest.OBD_SAMPLE, WQSmartService.MESSAGE_CHARACTERISTIC_VALUE, (Object) sample));
+                }
+                // GeoData is only built for applications still handling OBD_MEASUREMENT.
+                if(mht.hasReqHandler(BaseRequest.OBD_MEASUREMENT)) {
+                    handled = true;
+                    GeoData geoData = obdDataInfo.getGeoData();
+                    BaseRequest bs = new BaseRequest(BaseRequest.OBD_MEASUREMENT, WQSmartService.MESSAGE_CHARACTERISTIC_VALUE, (Object) geoData);
+                    mht.onMessage(bs);
+                }
+                if(handled)
+                    pipeline.frameDecoded(System.nanoTime() - decodeStart);
+                else
+                    pipeline.unhandledFrames.incrementAndGet();
+                obdDataInfo.reset();
             }
         }
         else {
 
-            if(currentRequest.requestId == BaseRequest.REQUEST_DEVICE_ADDRESS
+            WQSmartRequest request = currentRequest;
+            if(request != null && request.requestId == BaseRequest.REQUEST_DEVICE_ADDRESS
                     && serviceUUID.compareTo(WQSmartService.WQSmartUuid.OBD_SERVICE.getUuid()) == 0
                     && characteristicUUID.compareTo(WQSmartService.WQSmartUuid.OBD_DEVICE_ADDRESS.getUuid()) == 0
                     ) {
@@ -283,8 +810,11 @@ public class WQSmartService extends Service {
 
                     }
                     address = new String(sb);
-                    BaseResponse bs= new BaseResponse(BaseResponse.REQUEST_DEVICE_ADDRESS, WQSmartService.MESSAGE_CHARACTERISTIC_VALUE, (Object) new DeviceAddress(address));
-                    mWherequbeService.mMHT.onResponse(bs);
+                    // One response per caller whose read was merged into this one.
+                    for (int i = 0; i <= request.merged; i++) {
+                        BaseResponse bs= new BaseResponse(BaseResponse.REQUEST_DEVICE_ADDRESS, WQSmartService.MESSAGE_CHARACTERISTIC_VALUE, (Object) new DeviceAddress(address));
+                        mWherequbeService.mMHT.onResponse(bs);
+                    }
                 }
             }
         }
@@ -329,6 +859,9 @@ public class WQSmartService extends Service {
      */
     @Override
     public void onCreate() {
+        mGattThread = new HandlerThread("GattThread");
+        mGattThread.start();
+        mGattHandler = new Handler(mGattThread.getLooper());
         if (mBtAdapter == null) {
             mBtManager = (BluetoothManager) getSystemService(Context.BLUETOOTH_SERVICE);
             mBtAdapter = mBtManager.getAdapter();
@@ -343,6 +876,7 @@ public class WQSmartService extends Service {
         Log.d(TAG, "WQSS: onDestroy");
         if (mGattClient != null)
             mGattClient.close();
+        mGattThread.quit();
         super.onDestroy();
     }
 
@@ -358,7 +892,7 @@ public class WQSmartService extends Service {
                 localMethod.invoke(mGattClient);
             }
         } catch(Exception localException) {
-            LogMessage(TAG, "Exception refreshing BT cache: "+ localException.toString());
+            Log.w(TAG, "Exception refreshing BT cache: "+ localException.toString());
         }
     }
 
@@ -384,10 +918,12 @@ public class WQSmartService extends Service {
         if(this.mBtAdapter != null && address != null) {
             if(this.mBluetoothDeviceAddress != null && address.equals(this.mBluetoothDeviceAddress) && this.mGattClient != null) {
                 Log.d(TAG, "WQSS: Trying to use an existing mBluetoothGatt for connection.");
+                beginLinkSpan(Tracer.CONNECT);
                 if(this.mGattClient.connect()) {
                     this.mConnectionState = BluetoothAdapter.STATE_CONNECTING;
                     return true;
                 } else {
+                    endLinkSpan(Tracer.FAILED);
                     return false;
                 }
             } else {
@@ -396,6 +932,7 @@ public class WQSmartService extends Service {
                     Log.w(TAG, "WQSS: Device not found.  Unable to connect.");
                     return false;
                 } else {
+                    beginLinkSpan(Tracer.CONNECT);
                     this.mGattClient = device.connectGatt(this, false, this.mGattCallbacks);
                     this.refreshDeviceCache();
                     Log.d(TAG, "WQSS: Trying to create a new connection.");
@@ -435,14 +972,21 @@ public class WQSmartService extends Service {
             Log.w(TAG, "WQSS: ICE BluetoothAdapter not initialized");
             return false;
         }
-        BluetoothGattService serviceObject = mGattClient.getService(serviceUuid);
-        if (serviceObject != null) {
-            mPendingCharacteristic = serviceObject.getCharacteristic(characteristicUuid);
-            if (mPendingCharacteristic != null) {
-                return true;
-            }
-        }
-        return false;
+        return mHandles.getCharacteristic(serviceUuid, characteristicUuid) != null;
+    }
+
+    /**
+     * @return true if the connected device supports version 2 of the BLE protocol, as found by service discovery.
+     */
+    boolean hasVersionTwo() {
+        return isConnected() && mHandles.hasVersionTwo();
+    }
+
+    /**
+     * @return true if the address of the connected device can be read, as found by service discovery.
+     */
+    boolean hasDeviceAddress() {
+        return isConnected() && mHandles.hasDeviceAddress();
     }
     /**
      * Enable notifications for a particular characteristic and register a handler for those notifications. If a request
@@ -459,12 +1003,8 @@ public class WQSmartService extends Service {
 
      */
     public void requestCharacteristicNotification(int requestId, UUID serviceUuid, UUID characteristicUuid, byte[] value) {
-        if (currentRequest == null) {
-            performNotificationRequest(requestId, serviceUuid, characteristicUuid, value);
-        } else {
-            requestQueue.add(new WQSmartRequest(WQSmartRequest.RequestType.CHARACTERISTIC_NOTIFICATION, requestId, serviceUuid,
-                    characteristicUuid, null,  value));
-        }
+        enqueueRequest(new WQSmartRequest(WQSmartRequest.RequestType.CHARACTERISTIC_NOTIFICATION, requestId, serviceUuid,
+                characteristicUuid, null,  value), RequestPriority.DEFAULT);
     }
 
     /**
@@ -480,12 +1020,33 @@ public class WQSmartService extends Service {
 
      */
     public void requestCharacteristicValue(int requestId, UUID service, UUID characteristic) {
-        if (currentRequest == null) {
-            performCharacValueRequest(requestId, service, characteristic);
-        } else {
-            requestQueue.add(new WQSmartRequest(WQSmartRequest.RequestType.READ_CHARACTERISTIC, requestId, service, characteristic,
-                    null));
-        }
+        requestCharacteristicValue(requestId, service, characteristic, RequestPriority.DEFAULT);
+    }
+
+    /**
+     * Request the current value of a characteristic, as an operation of the given priority class.
+     *
+     * @param requestId
+     *            An id provided by the caller that will be included in messages to the handler.
+     * @param service
+     *            The UUID of the service that contains the characteristic of interest.
+     * @param characteristic
+     *            The UUID of the characteristic.
+     * @param priority
+     *            One of the RequestPriority constants.
+     */
+    public void requestCharacteristicValue(int requestId, UUID service, UUID characteristic, int priority) {
+        requestCharacteristicValue(requestId, service, characteristic, priority, -1, -1);
+    }
+
+    // Same as above, for the request of the message handler thread with the given handle, step of the given batch.
+    void requestCharacteristicValue(int requestId, UUID service, UUID characteristic, int priority, long requestHandle,
+                                    long batchHandle) {
+        WQSmartRequest request = new WQSmartRequest(WQSmartRequest.RequestType.READ_CHARACTERISTIC, requestId, service,
+                characteristic, null);
+        request.requestHandle = requestHandle;
+        request.batchHandle = batchHandle;
+        enqueueRequest(request, priority);
     }
 
     /**
@@ -504,12 +1065,8 @@ public class WQSmartService extends Service {
 
      */
     public void requestDescriptorValue(int requestId, UUID service, UUID characteristic, UUID descriptor) {
-        if (currentRequest == null) {
-            performDescValueRequest(requestId, service, characteristic, descriptor);
-        } else {
-            requestQueue.add(new WQSmartRequest(WQSmartRequest.RequestType.READ_DESCRIPTOR, requestId, service, characteristic,
-                    descriptor));
-        }
+        enqueueRequest(new WQSmartRequest(WQSmartRequest.RequestType.READ_DESCRIPTOR, requestId, service, characteristic,
+                descriptor), RequestPriority.DEFAULT);
     }
 
     /**
@@ -525,13 +1082,44 @@ public class WQSmartService extends Service {
 
      */
     public void writeCharacteristicValue(int requestId, UUID service, UUID characteristic, byte[] value){
-        if (currentRequest == null) {
-            performCharacWrite(requestId, service, characteristic,  value);
-        }
-        else {
-            requestQueue.add(new WQSmartRequest(WQSmartRequest.RequestType.WRITE_CHARACTERISTIC, requestId, service, characteristic,
-                    null,  value));
-        }
+        writeCharacteristicValue(requestId, service, characteristic, value, RequestPriority.DEFAULT);
+    }
+
+    /**
+     * Write a value to a charactersitic, as an operation of the given priority class.
+     * @param requestId
+     *         An id to uniquely identify the request. Included in messages to the handler.
+     * @param service
+     *         The service that contains the characteristic to write.
+     * @param characteristic
+     *         The characteristic to write.
+     * @param value
+     *         The value to write to the characteristic.
+     * @param priority
+     *         One of the RequestPriority constants.
+     */
+    public void writeCharacteristicValue(int requestId, UUID service, UUID characteristic, byte[] value, int priority){
+        writeCharacteristicValue(requestId, service, characteristic, value, priority, -1, -1);
+    }
+
+    // Same as above, for the request of the message handler thread with the given handle, step of the given batch.
+    void writeCharacteristicValue(int requestId, UUID service, UUID characteristic, byte[] value, int priority,
+                                  long requestHandle, long batchHandle){
+        WQSmartRequest request = new WQSmartRequest(WQSmartRequest.RequestType.WRITE_CHARACTERISTIC, requestId, service,
+                characteristic, null,  value);
+        request.requestHandle = requestHandle;
+        request.batchHandle = batchHandle;
+        enqueueRequest(request, priority);
+    }
+
+    /**
+     * Drops the queued steps of a batch that failed, timed out or was cancelled; they are not answered, the failure
+     * of the batch being reported instead. Safe to call from any thread.
+     * @param batchHandle handle of the batch
+     */
+    void cancelBatch(long batchHandle) {
+        if (mGattHandler != null)
+            mGattHandler.post(() -> mRequests.removeBatch(batchHandle));
     }
 
 
@@ -563,16 +1151,204 @@ public class WQSmartService extends Service {
     }
 
 
+    /**
+     * Matches a GATT callback with the operation it answers. The stack calls back in the order the operations were
+     * passed to it, so the callback answers the oldest issued operation of the same kind and characteristic; older
+     * ones whose callback never came are forgotten. Called on the GATT thread.
+     *
+     * @param callback
+     *            The kind of the callback, one of the *_CALLBACK constants.
+     * @param characteristic
+     *            The characteristic of the callback.
+     * @return the operation answered, or null if it was cleared by a connection change or already failed by the
+     *         watchdog, or if the callback answers no issued operation.
+     */
+    private WQSmartRequest onOperationCallback(int callback, UUID characteristic) {
+        WQSmartRequest match = null;
+        for (WQSmartRequest issued : mIssuedOperations) {
+            if (issued.pendingCallback == callback && characteristic.equals(issued.characteristicUuid)) {
+                match = issued;
+                break;
+            }
+        }
+        if (match == null)
+            return null;
+        WQSmartRequest issued;
+        do {
+            issued = mIssuedOperations.poll();
+            issued.pendingCallback = NO_CALLBACK;
+        } while (issued != match);
+        if (match.stalled)
+            return null;
+        mConsecutiveStalls = 0;
+        return match;
+    }
+
+    /**
+     * Sets how long GATT operations may wait for their callback, and whether to reset the connection when
+     * several operations in a row time out.
+     * @param timeout          time allowed to each operation, in milliseconds
+     * @param resetAfterStalls number of consecutive timed out operations after which the connection is reset,
+     *                         0 to never reset it
+     * @throws IllegalArgumentException if the timeout is not positive or the count negative
+     */
+    public void setOperationWatchdog(long timeout, int resetAfterStalls) {
+        if (timeout <= 0)
+            throw new IllegalArgumentException("Invalid timeout: " + timeout);
+        if (resetAfterStalls < 0)
+            throw new IllegalArgumentException("Invalid stall count: " + resetAfterStalls);
+        mOperationTimeout = timeout;
+        mStallResetThreshold = resetAfterStalls;
+    }
+
+    /**
+     * @return number of GATT operations failed because their callback did not come in time.
+     */
+    public long getStalledOperationCount() {
+        return mStalledOperations;
+    }
+
+    /**
+     * Queues a GATT operation; it is started on the GATT thread once the operations queued before it in its
+     * priority class, and those of higher classes, are complete. Safe to call from any thread.
+     */
+    private void enqueueRequest(WQSmartRequest request, int priority) {
+        mRequests.offer(request, priority, SystemClock.uptimeMillis());
+        if (mDrainPosted.compareAndSet(false, true))
+            mGattHandler.post(mDrainRequests);
+    }
+
+    /**
+     * Sends the commands to OBD_WQ_DATA_POINT as writes without response, without waiting for the device to
+     * acknowledge each one, so that several commands go in the same connection event. Up to the given number of
+     * writes are passed to the Bluetooth stack before it reports having sent them, even while an acknowledged
+     * operation is in progress. The purge command is always acknowledged, as the device must have cleared its events
+     * before the application forgets them.
+     * <p>Before Android 13 (API 33), BluetoothGatt refuses a write while any other operation is outstanding, the
+     * previous write without response included. A refused write is kept and passed again once an operation
+     * completes, so on those versions the writes go one at a time whatever the credits, saving only the wait for
+     * the device's acknowledgement; several writes per connection event need API 33 or later.
+     * @param enable  true to write commands without response, false for acknowledged writes
+     * @param credits number of writes without response that may be waiting to be sent, at least 1
+     * @throws IllegalArgumentException if credits is less than 1
+     */
+    public void setWriteWithoutResponse(boolean enable, int credits) {
+        if (credits < 1)
+            throw new IllegalArgumentException("Invalid credits: " + credits);
+        mWriteCredits = credits;
+        mWriteWithoutResponse = enable;
+    }
+
+    private boolean isWrittenWithoutResponse(WQSmartRequest request) {
+        if (!mWriteWithoutResponse || request == null || request.type != WQSmartRequest.RequestType.WRITE_CHARACTERISTIC
+                || request.requestId == BaseRequest.PURGE_UDEVENTS
+                || !WQSmartUuid.OBD_WQ_DATA_POINT.getUuid().equals(request.characteristicUuid))
+            return false;
+        BluetoothGattCharacteristic characteristic = mHandles.getCharacteristic(request.serviceUuid, request.characteristicUuid);
+        return characteristic != null
+                && (characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) != 0;
+    }
+
+    // Answers the operations not started yet as failed, before the queue is cleared.
+    private void failQueuedRequests() {
+        if (mDeferredWrite != null) {
+            answerRequest(mDeferredWrite, MESSAGE_REQUEST_FAILED);
+            mDeferredWrite = null;
+        }
+        long now = SystemClock.uptimeMillis();
+        WQSmartRequest queued;
+        while ((queued = mRequests.poll(now)) != null)
+            answerRequest(queued, MESSAGE_REQUEST_FAILED);
+    }
+
+    // Answers the writes without response not yet reported as sent, other than the given one, as failed.
+    private void failUnsentWrites(WQSmartRequest except) {
+        for (WQSmartRequest write : mUnsentWrites) {
+            if (write != except)
+                answerRequest(write, MESSAGE_REQUEST_FAILED);
+        }
+        mUnsentWrites.clear();
+    }
+
+    /**
+     * Answers every caller of an operation, including those whose identical operations were merged into it.
+     */
+    private void answerRequest(WQSmartRequest request, int msgId) {
+        if (request.requestId == BaseRequest.REQUEST_START_UDEVENTS || request.requestId == BaseRequest.REQUEST_STOP_UDEVENTS)
+            onEventStreamingWritten(request.requestId == BaseRequest.REQUEST_START_UDEVENTS, msgId == MESSAGE_WRITE_COMPLETE);
+        for (int i = 0; i <= request.merged; i++)
+            sendMessage(request.requestId, msgId);
+        // The later steps of a failed batch must not reach the device, a purge after a failed read for one.
+        if (msgId == MESSAGE_REQUEST_FAILED && request.batchHandle >= 0)
+            mRequests.removeBatch(request.batchHandle);
+    }
+
     /**
      * Process the next request in the queue for some BLE action (such as characteristic read). This is required because
-     * the Android 4.3 BLE stack only allows one active request at a time.
+     * the Android 4.3 BLE stack only allows one active request at a time. Called once the acknowledged operation in
+     * progress, if any, is complete.
      */
     private void processNextRequest() {
-        if (requestQueue.isEmpty()) {
-            currentRequest = null;
-            return;
+        currentRequest = null;
+        armWatchdog();
+        startRequests();
+    }
+
+    /**
+     * Starts the operations at the head of the queue that can start: writes without response, up to the credits,
+     * whatever operation is in progress, and acknowledged operations one at a time, once no other operation is in
+     * progress. The queue order is kept: an operation that cannot start holds back those behind it.
+     */
+    private void startRequests() {
+        if (mDeferredWrite != null) {
+            WQSmartRequest write = mDeferredWrite;
+            mDeferredWrite = null;
+            performWriteWithoutResponse(write);
+        }
+        long now = SystemClock.uptimeMillis();
+        while (mDeferredWrite == null) {
+            WQSmartRequest request = mRequests.peek(now);
+            if (request == null) {
+                if (currentRequest == null && mUnsentWrites.isEmpty() && mServicesDiscovered
+                        && (mBulkTransfers.get() & BULK_SETUP) != 0)
+                    setBulkTransfer(BULK_SETUP, false);
+                return;
+            }
+            // A step of a batch waits for the previous step to be answered, so that it is dropped if that one fails.
+            if (hasStepInProgress(request.batchHandle))
+                return;
+            if (isWrittenWithoutResponse(request)) {
+                if (mUnsentWrites.size() >= mWriteCredits)
+                    return;
+                if (mRequests.take(request))
+                    performWriteWithoutResponse(request);
+            } else {
+                if (currentRequest != null || !mUnsentWrites.isEmpty())
+                    return;
+                if (mRequests.take(request))
+                    startRequest(request);
+            }
         }
-        WQSmartRequest request = requestQueue.remove();
+    }
+
+    // True if an operation of the given batch is in progress; false if it is -1.
+    private boolean hasStepInProgress(long batchHandle) {
+        if (batchHandle < 0)
+            return false;
+        if (currentRequest != null && currentRequest.batchHandle == batchHandle)
+            return true;
+        for (WQSmartRequest write : mUnsentWrites) {
+            if (write.batchHandle == batchHandle)
+                return true;
+        }
+        return false;
+    }
+
+    // Starts an acknowledged operation, which stays in progress until its callback.
+    private void startRequest(WQSmartRequest request) {
+        currentRequest = request;
+        // The deadline covers the whole operation, including the CCC write following the read of a notification request.
+        armWatchdog();
         switch (request.type) {
             case CHARACTERISTIC_NOTIFICATION:
                 performNotificationRequest(request.requestId, request.serviceUuid, request.characteristicUuid, request.value);
@@ -586,11 +1362,19 @@ public class WQSmartService extends Service {
                 break;
             case WRITE_CHARACTERISTIC:
                 performCharacWrite(request.requestId, request.serviceUuid, request.characteristicUuid, request.value);
+                break;
             default:
                 break;
         }
     }
 
+    // Gives the oldest operation in progress, acknowledged one first, mOperationTimeout to call back.
+    private void armWatchdog() {
+        mGattHandler.removeCallbacks(mOperationWatchdog);
+        if (currentRequest != null || !mUnsentWrites.isEmpty())
+            mGattHandler.postDelayed(mOperationWatchdog, mOperationTimeout);
+    }
+
     /**
      * Perform the notification request now.
      *
@@ -603,30 +1387,53 @@ public class WQSmartService extends Service {
 
      */
     private void performNotificationRequest(int requestId, UUID service, UUID characteristic,  byte[] value) {
-        // This currentRequest object will be used when we get the value back asynchronously in the callback.
-        currentRequest = new WQSmartRequest(WQSmartRequest.RequestType.CHARACTERISTIC_NOTIFICATION, requestId, service,
-                characteristic, null,  value);
         if(!isConnected() || mGattClient == null){
             Log.w(TAG, "WQSS: PNR BluetoothAdapter not initialized");
+            failCurrentRequest();
             return;
         }
-        BluetoothGattService serviceObject = mGattClient.getService(currentRequest.serviceUuid);
-        if (serviceObject != null) {
-            mPendingCharacteristic = serviceObject.getCharacteristic(characteristic);
-            if (mPendingCharacteristic != null) {
-                BluetoothGattDescriptor clientCharacteristicConfig = mPendingCharacteristic
-                        .getDescriptor(WQSmartUuid.CCC.value);
-                // If the CCC exists then attempt to read it.
-                if (clientCharacteristicConfig == null || !mGattClient.readDescriptor(clientCharacteristicConfig)) {
-                    // CCC didn't exist or the read failed early.
-                    // Send the failed message and move onto the next request.
-                    sendMessage( currentRequest.requestId, MESSAGE_REQUEST_FAILED);
-                    processNextRequest();
-                }
-            }
+        GattHandles handles = mHandles;
+        mPendingCharacteristic = handles.getCharacteristic(service, characteristic);
+        if (mPendingCharacteristic == null) {
+            failCurrentRequest();
+            return;
+        }
+        BluetoothGattDescriptor clientCharacteristicConfig = handles.getClientConfig(mPendingCharacteristic);
+        if (!mReadCccFirst) {
+            // Write the CCC right away; the request completes in onDescriptorWrite().
+            if (!enableNotification(value[0] != 0x00, mPendingCharacteristic))
+                failCurrentRequest();
+            return;
+        }
+        // If the CCC exists then attempt to read it.
+        if (clientCharacteristicConfig == null) {
+            failCurrentRequest();
+            return;
+        }
+        beginGattOperation(Tracer.CCC_READ, DESCRIPTOR_READ_CALLBACK, currentRequest);
+        if (!mGattClient.readDescriptor(clientCharacteristicConfig)) {
+            // The read failed early.
+            // Send the failed message and move onto the next request.
+            abortGattOperation();
+            failCurrentRequest();
         }
     }
 
+    /**
+     * Chooses how notifications are enabled or disabled. By default the CCC is written directly, in a single
+     * round trip; reading it first, then writing it once the read completes, is kept for devices expecting it.
+     * @param enable true to read the CCC before writing it
+     */
+    public void setReadCccBeforeWrite(boolean enable) {
+        mReadCccFirst = enable;
+    }
+
+    // Answers the current operation as failed, when it cannot be started, and moves onto the next one.
+    private void failCurrentRequest() {
+        answerRequest(currentRequest, MESSAGE_REQUEST_FAILED);
+        processNextRequest();
+    }
+
 
     /**
      * Perform the characteristic value request now.
@@ -640,21 +1447,21 @@ public class WQSmartService extends Service {
 
      */
     private void performCharacValueRequest(int requestId, UUID service, UUID characteristic) {
-        // This currentRequest object will be used when we get the value back asynchronously in the callback.
         if(!isConnected() || mGattClient == null) {
             // throw new NullPointerException("GATT client not started.");
             Log.w(TAG, "WQSS: PCVR BluetoothAdapter not initialized");
+            failCurrentRequest();
+            return;
         }
-        currentRequest = new WQSmartRequest(WQSmartRequest.RequestType.READ_CHARACTERISTIC, requestId, service, characteristic, null);
-        BluetoothGattService serviceObject = mGattClient.getService(service);
-        if (serviceObject != null) {
-            BluetoothGattCharacteristic characteristicObject = serviceObject.getCharacteristic(characteristic);
-            if (characteristicObject != null) {
-                if (!mGattClient.readCharacteristic(characteristicObject)) {
-                    sendMessage( currentRequest.requestId, MESSAGE_REQUEST_FAILED);
-                    processNextRequest();
-                }
-            }
+        BluetoothGattCharacteristic characteristicObject = mHandles.getCharacteristic(service, characteristic);
+        if (characteristicObject == null) {
+            failCurrentRequest();
+            return;
+        }
+        beginGattOperation(Tracer.CHARACTERISTIC_READ, CHARACTERISTIC_READ_CALLBACK, currentRequest);
+        if (!mGattClient.readCharacteristic(characteristicObject)) {
+            abortGattOperation();
+            failCurrentRequest();
         }
     }
 
@@ -672,25 +1479,27 @@ public class WQSmartService extends Service {
 
      */
     private void performDescValueRequest(int requestId, UUID service, UUID characteristic, UUID descriptor) {
-        // This currentRequest object will be used when we get the value back asynchronously in the callback.
         if(!isConnected() || mGattClient == null) {
             // throw new NullPointerException("GATT client not started.");
             Log.w(TAG, "WQSS: PDVR BluetoothAdapter not initialized");
+            failCurrentRequest();
+            return;
         }
-        currentRequest = new WQSmartRequest(WQSmartRequest.RequestType.READ_CHARACTERISTIC, requestId, service, characteristic,
-                descriptor);
-        BluetoothGattService serviceObject = mGattClient.getService(service);
-        if (serviceObject != null) {
-            BluetoothGattCharacteristic characteristicObject = serviceObject.getCharacteristic(characteristic);
-            if (characteristicObject != null) {
-                BluetoothGattDescriptor descriptorObject = characteristicObject.getDescriptor(descriptor);
-                if (descriptorObject != null) {
-                    if (!mGattClient.readDescriptor(descriptorObject)) {
-                        sendMessage( currentRequest.requestId, MESSAGE_REQUEST_FAILED);
-                        processNextRequest();
-                    }
-                }
-            }
+        GattHandles handles = mHandles;
+        BluetoothGattCharacteristic characteristicObject = handles.getCharacteristic(service, characteristic);
+        BluetoothGattDescriptor descriptorObject = null;
+        if (characteristicObject != null) {
+            descriptorObject = WQSmartUuid.CCC.value.equals(descriptor) ? handles.getClientConfig(characteristicObject)
+                    : characteristicObject.getDescriptor(descriptor);
+        }
+        if (descriptorObject == null) {
+            failCurrentRequest();
+            return;
+        }
+        beginGattOperation(Tracer.DESCRIPTOR_READ, DESCRIPTOR_READ_CALLBACK, currentRequest);
+        if (!mGattClient.readDescriptor(descriptorObject)) {
+            abortGattOperation();
+            failCurrentRequest();
         }
     }
 
@@ -710,24 +1519,69 @@ public class WQSmartService extends Service {
     private void performCharacWrite(int requestId, UUID service, UUID characteristic,  byte[] value) {
         if(!isConnected() || mGattClient == null) {
             Log.w(TAG, "WQSS: PCW BluetoothAdapter not initialized");
+            failCurrentRequest();
             return;
         }
-        currentRequest =
-                new WQSmartRequest(WQSmartRequest.RequestType.WRITE_CHARACTERISTIC, requestId, service, characteristic, null,
-                        value);
-        BluetoothGattService serviceObject = mGattClient.getService(service);
-        if (serviceObject != null) {
-            BluetoothGattCharacteristic characteristicObject = serviceObject.getCharacteristic(characteristic);
-            if (characteristicObject != null) {
-                characteristicObject.setValue(value);
-                if (!mGattClient.writeCharacteristic(characteristicObject)) {
-                    sendMessage(currentRequest.requestId, MESSAGE_REQUEST_FAILED);
-                    //send Response Back to thread;
-                    //send Response Back to thread;
-                    processNextRequest();
-                }
+        BluetoothGattCharacteristic characteristicObject = mHandles.getCharacteristic(service, characteristic);
+        if (characteristicObject == null) {
+            failCurrentRequest();
+            return;
+        }
+        characteristicObject.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+        characteristicObject.setValue(value);
+        beginGattOperation(Tracer.CHARACTERISTIC_WRITE, CHARACTERISTIC_WRITE_CALLBACK, currentRequest);
+        if (!mGattClient.writeCharacteristic(characteristicObject)) {
+            abortGattOperation();
+            answerRequest(currentRequest, MESSAGE_REQUEST_FAILED);
+            //send Response Back to thread;
+            //send Response Back to thread;
+            processNextRequest();
+        }
+    }
+
+    /**
+     * Passes a write without response to the stack, whatever operation is in progress. The write is complete for the
+     * device at once, so the next one can follow without waiting; it is answered once the stack reports it sent.
+     *
+     * @param request
+     *         The write, taken from the queue.
+     */
+    private void performWriteWithoutResponse(WQSmartRequest request) {
+        if(!isConnected() || mGattClient == null) {
+            Log.w(TAG, "WQSS: PWWR BluetoothAdapter not initialized");
+            answerRequest(request, MESSAGE_REQUEST_FAILED);
+            return;
+        }
+        // Null once the handles are reset, for a write deferred or queued before a disconnection or a rediscovery.
+        BluetoothGattCharacteristic characteristicObject = mHandles.getCharacteristic(request.serviceUuid,
+                request.characteristicUuid);
+        if (characteristicObject == null) {
+            answerRequest(request, MESSAGE_REQUEST_FAILED);
+            return;
+        }
+        characteristicObject.setWriteType(BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE);
+        characteristicObject.setValue(request.value);
+        // Traced on its own, as the span of an acknowledged operation may be open.
+        long span = mSpanIds.incrementAndGet();
+        mWherequbeService.mTracer.begin(Tracer.CHARACTERISTIC_WRITE, span, request.requestId, request.requestHandle);
+        request.pendingCallback = CHARACTERISTIC_WRITE_CALLBACK;
+        mIssuedOperations.add(request);
+        if (!mGattClient.writeCharacteristic(characteristicObject)) {
+            mIssuedOperations.pollLast();
+            request.pendingCallback = NO_CALLBACK;
+            mWherequbeService.mTracer.end(Tracer.CHARACTERISTIC_WRITE, span, Tracer.FAILED);
+            if (currentRequest != null || !mUnsentWrites.isEmpty()) {
+                // The stack is busy with the other operations: retried once one of them completes.
+                mDeferredWrite = request;
+            } else {
+                answerRequest(request, MESSAGE_REQUEST_FAILED);
             }
+            return;
         }
+        mWherequbeService.mTracer.end(Tracer.CHARACTERISTIC_WRITE, span, Tracer.OK);
+        mUnsentWrites.add(request);
+        if (currentRequest == null && mUnsentWrites.size() == 1)
+            armWatchdog();
     }
 
     /**
@@ -748,7 +1602,7 @@ public class WQSmartService extends Service {
         if (!mGattClient.setCharacteristicNotification(characteristic, enable)) {
             return false;
         }
-        BluetoothGattDescriptor clientConfig = characteristic.getDescriptor(WQSmartUuid.CCC.value);
+        BluetoothGattDescriptor clientConfig = mHandles.getClientConfig(characteristic);
         if (clientConfig == null) {
             return false;
         }
@@ -758,7 +1612,12 @@ public class WQSmartService extends Service {
             clientConfig.setValue(BluetoothGattDescriptor.DISABLE_NOTIFICATION_VALUE);
         }
 
-        return mGattClient.writeDescriptor(clientConfig);
+        beginGattOperation(Tracer.CCC_WRITE, DESCRIPTOR_WRITE_CALLBACK, currentRequest);
+        if (!mGattClient.writeDescriptor(clientConfig)) {
+            abortGattOperation();
+            return false;
+        }
+        return true;
     }
 
     public enum WQSmartUuid {
@@ -7,11 +7,17 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
+import android.os.Build;
 import android.os.IBinder;
 import android.util.Log;
+import androidx.annotation.RequiresApi;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Singleton object used to handle communications with a Whereqube device,
@@ -44,6 +50,7 @@ public class WherequbeService {
     };
 
     protected MsgHandlerThread mMHT = null;
+    volatile Tracer mTracer = Tracer.NONE;
 
     public WherequbeService() {
     }
@@ -229,25 +236,384 @@ public class WherequbeService {
     }
 
     /**
-     * Does this device support version 2 of the BLE protocol?
+     * Sends a request to the connected device with the given priority, and then calls back the response handler.
+     * The Bluetooth operations of the request are started before those of lower priority classes.
+     * @param request   request data
+     * @param sh        response handler
+     * @param timeout   timeout in ms
+     * @param priority  one of the RequestPriority constants
+     */
+    public void sendRequest(BaseRequest request,  ResponseHandler sh, int timeout, int priority)
+    {
+        this.mMHT.sendRequest(request, sh, timeout, priority);
+    }
+
+    /**
+     * Sends a request to the connected device and returns a future of its response, so that several requests can
+     * be in flight at once and their results combined. The future is completed on the message handler thread; it
+     * fails with a WQRequestException if the device reports a failure, does not answer within the timeout, or the
+     * request cannot be sent. Cancelling the future withdraws the request if it was not answered yet.
+     * @param request   request data
+     * @param timeout   timeout in ms, counted from the time the request is sent
+     * @return the future of the response
+     */
+    @RequiresApi(Build.VERSION_CODES.N)
+    public CompletableFuture<BaseResponse> sendRequestAsync(BaseRequest request, int timeout)
+    {
+        return sendRequestAsync(request, timeout, RequestPriority.DEFAULT);
+    }
+
+    /**
+     * Sends a request to the connected device with the given priority and returns a future of its response.
+     * @param request   request data
+     * @param timeout   timeout in ms, counted from the time the request is sent
+     * @param priority  one of the RequestPriority constants
+     * @return the future of the response
+     * @see #sendRequestAsync(BaseRequest, int)
+     */
+    @RequiresApi(Build.VERSION_CODES.N)
+    public CompletableFuture<BaseResponse> sendRequestAsync(BaseRequest request, int timeout, int priority)
+    {
+        RequestFuture<BaseResponse> future = new RequestFuture<BaseResponse>(request.requestId, response -> response);
+        this.mMHT.sendRequest(request, future, timeout, priority);
+        return future;
+    }
+
+    /**
+     * Sends the steps of a batch one after the other and returns a future of their responses, completed once all
+     * of them are answered, or failed at the first step failing; the steps after it are then never sent.
+     * @param batch     the steps to send
+     * @param timeout   timeout in ms for the whole batch
+     * @return the future of the responses of the steps
+     * @see #sendRequestAsync(BaseRequest, int)
+     */
+    @RequiresApi(Build.VERSION_CODES.N)
+    public CompletableFuture<BatchResponse> sendBatchAsync(BatchRequest batch, int timeout)
+    {
+        RequestFuture<BatchResponse> future = new RequestFuture<BatchResponse>(batch.requestId,
+                response -> (BatchResponse) response);
+        this.mMHT.sendRequest(batch, future, timeout, RequestPriority.DEFAULT);
+        return future;
+    }
+
+    /**
+     * Reads the address of the connected device.
+     * @param timeout   timeout in ms
+     * @return the future of the address
+     * @see #sendRequestAsync(BaseRequest, int)
+     */
+    @RequiresApi(Build.VERSION_CODES.N)
+    public CompletableFuture<DeviceAddress> readDeviceAddressAsync(int timeout)
+    {
+        RequestFuture<DeviceAddress> future = new RequestFuture<DeviceAddress>(BaseRequest.REQUEST_DEVICE_ADDRESS,
+                response -> (DeviceAddress) response.getObject());
+        this.mMHT.sendRequest(new GetDeviceAddress(), future, timeout, RequestPriority.DEFAULT);
+        return future;
+    }
+
+    /**
+     * Enables incremental decoding of OBD data. Each value is then sent to the handler registered for
+     * BaseRequest.OBD_FIELD_UPDATE as soon as it is decoded, as a GeoFieldUpdate, while the complete
+     * GeoData is still sent to the OBD_MEASUREMENT handler once the frame is complete.
+     * Only applies to devices using protocol 1.
+     * @param enable true to publish values before their frame completes
+     * @throws IllegalStateException if the service was not properly initialized.
+     */
+    public void setIncrementalDecoding(boolean enable) {
+        if(this.mService == null) {
+            throw new IllegalStateException("Service is not initialized");
+        }
+        this.mService.setIncrementalDecoding(enable);
+    }
+
+    /**
+     * Sets how long a frame may wait for missing fragments. Once exceeded, the frame is discarded
+     * and reassembly resumes with the next frame header, so a lost fragment costs a single frame.
+     * @param timeout timeout in milliseconds, OBDDataInfo.DEFAULT_FRAGMENT_TIMEOUT by default
+     * @throws IllegalArgumentException if the timeout is not positive.
+     * @throws IllegalStateException if the service was not properly initialized.
+     */
+    public void setFragmentTimeout(long timeout) {
+        if(timeout <= 0) {
+            throw new IllegalArgumentException("Timeout must be positive: " + timeout);
+        }
+        if(this.mService == null) {
+            throw new IllegalStateException("Service is not initialized");
+        }
+        this.mService.setFragmentTimeout(timeout);
+    }
+
+    /**
+     * Counters of the OBD frames reassembled since the service started: complete, incomplete and
+     * recovered frames, and dropped fragments.
+     * @return the current counters
+     * @throws IllegalStateException if the service was not properly initialized.
+     */
+    public ReassemblyStats getReassemblyStats() {
+        if(this.mService == null) {
+            throw new IllegalStateException("Service is not initialized");
+        }
+        return this.mService.getReassemblyStats();
+    }
+
+    /**
+     * Sends the commands to the device, such as the application identifier and the unidentified driver event
+     * commands, without waiting for the device to acknowledge each one, so that a burst of commands takes a single
+     * connection interval. Purge commands remain acknowledged. Disabled by default.
+     * @param enable  true to write commands without response
+     * @param credits number of commands that may be waiting in the Bluetooth stack, at least 1;
+     *                WQSmartService.DEFAULT_WRITE_CREDITS by default
+     * @throws IllegalArgumentException if credits is less than 1
+     * @throws IllegalStateException if the service was not properly initialized.
+     */
+    public void setWriteWithoutResponse(boolean enable, int credits) {
+        if(this.mService == null) {
+            throw new IllegalStateException("Service is not initialized");
+        }
+        this.mService.setWriteWithoutResponse(enable, credits);
+    }
+
+    /**
+     * Sets the ATT MTU negotiated after connecting, WQSmartService.MAX_MTU by default, so that the device sends
+     * each frame in fewer, larger notifications. Takes effect on the next connection.
+     * @param mtu MTU to ask for, WQSmartService.DEFAULT_MTU to keep the default 20 byte notifications
+     * @throws IllegalArgumentException if mtu is below DEFAULT_MTU or above MAX_MTU
+     * @throws IllegalStateException if the service was not properly initialized.
+     */
+    public void setPreferredMtu(int mtu) {
+        if(this.mService == null) {
+            throw new IllegalStateException("Service is not initialized");
+        }
+        this.mService.setPreferredMtu(mtu);
+    }
+
+    /**
+     * Largest value the device can send in a notification on the current connection, once the MTU is negotiated.
+     * @return the payload length in bytes, WherequbeModel.BLE_NUS_MAX_DATA_LEN until then
+     * @throws IllegalStateException if the service was not properly initialized.
+     */
+    public int getMaxPayloadLength() {
+        if(this.mService == null) {
+            throw new IllegalStateException("Service is not initialized");
+        }
+        return this.mService.getMaxPayloadLength();
+    }
+
+    /**
+     * Enables or disables raising the connection priority while a connection is set up and while unidentified
+     * events are streamed, lowering it back to balanced afterwards. Enabled by default.
+     * @param enable true to shorten the connection interval during bulk transfers
+     * @throws IllegalStateException if the service was not properly initialized.
+     */
+    public void setConnectionPriorityControl(boolean enable) {
+        if(this.mService == null) {
+            throw new IllegalStateException("Service is not initialized");
+        }
+        this.mService.setConnectionPriorityControl(enable);
+    }
+
+    /**
+     * Reads the client characteristic configuration of a characteristic before writing it to enable or disable
+     * its notifications, as earlier versions of the library did. By default it is only written, which saves a
+     * round trip for each subscription and shortens the time from connection to the first data.
+     * @param enable true to read the configuration first
+     * @throws IllegalStateException if the service was not properly initialized.
+     */
+    public void setReadCccBeforeWrite(boolean enable) {
+        if(this.mService == null) {
+            throw new IllegalStateException("Service is not initialized");
+        }
+        this.mService.setReadCccBeforeWrite(enable);
+    }
+
+    /**
+     * Sets how long each Bluetooth operation may wait for the device before being failed, which lets the
+     * following requests proceed. As some Bluetooth stacks stop answering altogether, the connection can also
+     * be reset after a number of operations in a row timed out.
+     * @param timeout          time allowed to each operation in ms, WQSmartService.DEFAULT_OPERATION_TIMEOUT by default
+     * @param resetAfterStalls number of consecutive timed out operations after which the device is disconnected,
+     *                         0 to never disconnect it
+     * @throws IllegalArgumentException if the timeout is not positive or the count negative
+     * @throws IllegalStateException if the service was not properly initialized.
+     */
+    public void setOperationWatchdog(long timeout, int resetAfterStalls) {
+        if(this.mService == null) {
+            throw new IllegalStateException("Service is not initialized");
+        }
+        this.mService.setOperationWatchdog(timeout, resetAfterStalls);
+    }
+
+    /**
+     * @return number of Bluetooth operations failed because the device did not answer in time.
+     * @throws IllegalStateException if the service was not properly initialized.
+     */
+    public long getStalledOperationCount() {
+        if(this.mService == null) {
+            throw new IllegalStateException("Service is not initialized");
+        }
+        return this.mService.getStalledOperationCount();
+    }
+
+    /**
+     * Sets the tracer told about the start and end of connections, GATT operations, frames, requests
+     * and handler calls, for instance a ChromeTraceWriter to look at them on a timeline.
+     * @param tracer the tracer, or null to stop tracing
+     */
+    public void setTracer(Tracer tracer) {
+        this.mTracer = tracer != null ? tracer : Tracer.NONE;
+    }
+
+    /**
+     * Counters of the inbound data path since the service was initialized: values received, fragments,
+     * frames completed, decoded and dropped, messages delivered to the handlers, with decoding and handling times.
+     * Take two snapshots and use PipelineStats.since() to get the current rates.
+     * @return a snapshot of the counters
+     * @throws IllegalStateException if the service was not properly initialized.
+     */
+    public PipelineStats getPipelineStats() {
+        if(this.mService == null) {
+            throw new IllegalStateException("Service is not initialized");
+        }
+        return this.mService.getPipelineStats();
+    }
+
+    /**
+     * Logs the inbound data path counters, and their rates over the interval, periodically.
+     * @param interval interval between logs in ms, 0 to stop logging
+     * @throws IllegalStateException if the service was not properly initialized.
+     */
+    public void setPipelineStatsLogInterval(long interval) {
+        if(this.mMHT == null) {
+            throw new IllegalStateException("Service is not initialized");
+        }
+        this.mMHT.setPipelineLogInterval(interval);
+    }
+
+    /**
+     * Latency and outcome statistics of the requests of one type sent since the service was initialized:
+     * round trip time and time spent queued, as histograms, and the number of failures and timeouts.
+     * @param requestType type of the requests, as described by the RequestType constants
+     * @return a snapshot of the statistics, empty if no request of the type was sent
+     * @throws IllegalStateException if the service was not properly initialized.
+     */
+    public RequestStats getRequestStats(int requestType) {
+        if(this.mMHT == null) {
+            throw new IllegalStateException("Service is not initialized");
+        }
+        return this.mMHT.mMetrics.snapshot(requestType);
+    }
+
+    /**
+     * Latency and outcome statistics of every type of request sent since the service was initialized.
+     * @return a snapshot of the statistics, one entry per request type sent
+     * @throws IllegalStateException if the service was not properly initialized.
+     * @see #getRequestStats(int)
+     */
+    public List<RequestStats> getRequestStats() {
+        if(this.mMHT == null) {
+            throw new IllegalStateException("Service is not initialized");
+        }
+        return this.mMHT.mMetrics.snapshot();
+    }
+
+    /**
+     * Clears the request statistics, for instance after changing request timeouts.
+     * @throws IllegalStateException if the service was not properly initialized.
+     */
+    public void resetRequestStats() {
+        if(this.mMHT == null) {
+            throw new IllegalStateException("Service is not initialized");
+        }
+        this.mMHT.mMetrics.reset();
+    }
+
+    /**
+     * Starts recording every value received from the device into memory-mapped segment files,
+     * using the default segment size and count. Read the files back with CaptureReader.
+     * @param directory directory for the segment files, created if needed
+     * @throws IOException if the files cannot be created
+     * @throws IllegalStateException if the service was not properly initialized.
+     */
+    public void startCapture(File directory) throws IOException {
+        startCapture(directory, CaptureRecorder.DEFAULT_SEGMENT_SIZE, CaptureRecorder.DEFAULT_SEGMENT_COUNT);
+    }
+
+    /**
+     * Starts recording every value received from the device into a ring of memory-mapped segment files.
+     * Once all segments are full the oldest one is overwritten.
+     * @param directory    directory for the segment files, created if needed
+     * @param segmentSize  size of each segment file in bytes, at least 4096
+     * @param segmentCount number of segment files
+     * @throws IOException if the files cannot be created
+     * @throws IllegalStateException if the service was not properly initialized.
+     */
+    public void startCapture(File directory, int segmentSize, int segmentCount) throws IOException {
+        if(this.mService == null) {
+            throw new IllegalStateException("Service is not initialized");
+        }
+        this.mService.setCaptureRecorder(new CaptureRecorder(directory, segmentSize, segmentCount));
+    }
+
+    /**
+     * Stops recording started with startCapture() and flushes the segment files.
+     */
+    public void stopCapture() {
+        if(this.mService != null) {
+            this.mService.setCaptureRecorder(null);
+        }
+    }
+
+    /**
+     * Registers a handler for a protocol 1 tag, for tags the library does not decode or to replace
+     * the library's decoding of a tag. Tags that have no registered length are assumed to carry
+     * one 32-bit value and are skipped.
+     * @param tag           tag byte, 0 to 255
+     * @param payloadLength number of bytes following the 16-bit tag word, or TagHandler.COUNTED_PAYLOAD
+     * @param handler       handler called for every frame carrying the tag, or null to skip the tag
+     * @throws IllegalArgumentException if the tag or the length is out of range
+     */
+    public void registerTagHandler(int tag, int payloadLength, TagHandler handler) {
+        TagRegistry.register(tag, payloadLength, handler);
+    }
+
+    /**
+     * Removes a handler registered with registerTagHandler(), restoring the library's decoding of the tag.
+     * @param tag tag byte, 0 to 255
+     * @throws IllegalArgumentException if the tag is out of range
+     */
+    public void unregisterTagHandler(int tag) {
+        TagRegistry.unregister(tag);
+    }
+
+    /**
+     * Does this device support version 2 of the BLE protocol? Answered from the characteristics found when the
+     * services of the device were discovered.
      * @return true if the device supports version 2.
      */
     protected boolean hasSupportVersionTwo()
     {
-        return mService.isCharacterisiticExists(WQSmartService.WQSmartUuid.OBD_SERVICE.getUuid(), WQSmartService.WQSmartUuid.OBD_WQ_DATA_POINT.getUuid());
+        return mService.hasVersionTwo();
     }
 
     /**
      * If the connected device supports version 2 of the BLE protocol, will send a request to the device to begin
      * transmitting events for unidentified drivers.
+     * If a handler is set for BaseRequest.UDEVENT_BATCH, every event of each frame is then sent to it
+     * in UnidentifiedEventBatch objects, with the progress through the device's backlog, from the time
+     * the device accepts the request until it accepts the one sent by stopTransmittingUnidentifiedDriverMessages().
      * @return returns true if the device suppoorts version 2, false otherwise.
      */
     public boolean startTransmittingUnidentifiedDriverMessages()
+    {
+        return startTransmittingUnidentifiedDriverMessages(RequestPriority.DEFAULT, -1, -1);
+    }
+
+    boolean startTransmittingUnidentifiedDriverMessages(int priority, long requestHandle, long batchHandle)
     {
         if(hasSupportVersionTwo()) {
             if (mServiceBound) {
                 mService.writeCharacteristicValue(BaseRequest.REQUEST_START_UDEVENTS, WQSmartService.WQSmartUuid.OBD_SERVICE.getUuid(),
-                        WQSmartService.WQSmartUuid.OBD_WQ_DATA_POINT.getUuid(), new byte[]{0x02, 0x01});
+                        WQSmartService.WQSmartUuid.OBD_WQ_DATA_POINT.getUuid(), new byte[]{0x02, 0x01}, priority, requestHandle, batchHandle);
                 return true;
             }
         }
@@ -256,15 +622,21 @@ public class WherequbeService {
 
     /**
      * If the connected device supports version 2 of the BLE protocol, will send a request to the device to
-     * stop transmitting events for unidentified drivers.
+     * stop transmitting events for unidentified drivers. Once the device accepts it, the events still collected
+     * are sent to the UDEVENT_BATCH handler as the last, complete, batch.
      * @return true if the device supports version 2
      */
     public boolean  stopTransmittingUnidentifiedDriverMessages()
+    {
+        return stopTransmittingUnidentifiedDriverMessages(RequestPriority.DEFAULT, -1, -1);
+    }
+
+    boolean stopTransmittingUnidentifiedDriverMessages(int priority, long requestHandle, long batchHandle)
     {
         if(hasSupportVersionTwo()) {
             if (mServiceBound) {
                 mService.writeCharacteristicValue(BaseRequest.REQUEST_STOP_UDEVENTS, WQSmartService.WQSmartUuid.OBD_SERVICE.getUuid(),
-                        WQSmartService.WQSmartUuid.OBD_WQ_DATA_POINT.getUuid(), new byte[]{0x02, 0x00});
+                        WQSmartService.WQSmartUuid.OBD_WQ_DATA_POINT.getUuid(), new byte[]{0x02, 0x00}, priority, requestHandle, batchHandle);
                 return true;
             }
         }
@@ -277,11 +649,16 @@ public class WherequbeService {
      * @return returns true if the device supports version 2.
      */
     public boolean purgeUnidentifiedDriverMessages()
+    {
+        return purgeUnidentifiedDriverMessages(RequestPriority.DEFAULT, -1, -1);
+    }
+
+    boolean purgeUnidentifiedDriverMessages(int priority, long requestHandle, long batchHandle)
     {
         if(hasSupportVersionTwo()){
             if (mServiceBound) {
                 mService.writeCharacteristicValue(BaseRequest.PURGE_UDEVENTS, WQSmartService.WQSmartUuid.OBD_SERVICE.getUuid(),
-                        WQSmartService.WQSmartUuid.OBD_WQ_DATA_POINT.getUuid(), new byte[]{0x03, 0x01});
+                        WQSmartService.WQSmartUuid.OBD_WQ_DATA_POINT.getUuid(), new byte[]{0x03, 0x01}, priority, requestHandle, batchHandle);
                 return true;
             }
 
@@ -294,13 +671,18 @@ public class WherequbeService {
      * @return returns true if the device supports version 2
      */
     public boolean readDeviceAddress()
+    {
+        return readDeviceAddress(RequestPriority.DEFAULT, -1, -1);
+    }
+
+    boolean readDeviceAddress(int priority, long requestHandle, long batchHandle)
     {
         if(hasSupportVersionTwo()) {
             if (mServiceBound) {
-                if (mService.isCharacterisiticExists(WQSmartService.WQSmartUuid.OBD_SERVICE.getUuid(), WQSmartService.WQSmartUuid.OBD_DEVICE_ADDRESS.getUuid())) {
+                if (mService.hasDeviceAddress()) {
                     Log.d(TAG, "Device Address Characteristics exists:");
                     mService.requestCharacteristicValue(BaseRequest.REQUEST_DEVICE_ADDRESS, WQSmartService.WQSmartUuid.OBD_SERVICE.getUuid(),
-                            WQSmartService.WQSmartUuid.OBD_DEVICE_ADDRESS.getUuid());
+                            WQSmartService.WQSmartUuid.OBD_DEVICE_ADDRESS.getUuid(), priority, requestHandle, batchHandle);
                     return true;
                 }
             }
@@ -0,0 +1,154 @@
+package com.geometris.wqlib;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that CaptureReader reads back what CaptureRecorder wrote, across segments and laps of the ring.
+ */
+public class CaptureRoundTripTest {
+
+    private static final String ADDRESS = "00:11:22:AA:BB:CC";
+    private static final int SEGMENT_SIZE = CaptureRecorder.MIN_SEGMENT_SIZE;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("capture").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void readsBackEveryField() throws IOException {
+        UUID uuid = WQSmartService.WQSmartUuid.values()[0].getUuid();
+        CaptureRecorder recorder = new CaptureRecorder(directory, SEGMENT_SIZE, 2);
+        recorder.append(123456789L, CaptureRecorder.packAddress(ADDRESS), CaptureRecorder.characteristicId(uuid),
+                new byte[]{1, 2, (byte) 0xFF});
+        recorder.append(123456790L, 0, CaptureRecorder.characteristicId(UUID.randomUUID()), new byte[0]);
+        recorder.close();
+
+        CaptureReader reader = new CaptureReader(directory);
+        assertTrue(reader.next());
+        assertEquals(123456789L, reader.getTimestampNanos());
+        assertEquals(ADDRESS, reader.getDeviceAddress());
+        assertEquals(uuid, reader.getCharacteristic());
+        assertArrayEquals(new byte[]{1, 2, (byte) 0xFF}, reader.getValue());
+        assertTrue(reader.next());
+        assertEquals(123456790L, reader.getTimestampNanos());
+        assertEquals("00:00:00:00:00:00", reader.getDeviceAddress());
+        assertNull(reader.getCharacteristic());
+        assertEquals(0, reader.getValue().length);
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void readsAcrossSegmentsInOrder() throws IOException {
+        byte[][] values = randomValues(new Random(12), 200);
+        CaptureRecorder recorder = new CaptureRecorder(directory, SEGMENT_SIZE, 16);
+        for (int i = 0; i < values.length; i++)
+            recorder.append(i, 0, 0, values[i]);
+        recorder.close();
+        assertTrue(directory.listFiles().length > 1);
+
+        CaptureReader reader = new CaptureReader(directory);
+        for (int i = 0; i < values.length; i++) {
+            assertTrue("record " + i, reader.next());
+            assertEquals(i, reader.getTimestampNanos());
+            assertArrayEquals("record " + i, values[i], reader.getValue());
+        }
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void fullRingKeepsNewestRecords() throws IOException {
+        byte[][] values = randomValues(new Random(13), 600);
+        CaptureRecorder recorder = new CaptureRecorder(directory, SEGMENT_SIZE, 3);
+        for (int i = 0; i < values.length; i++)
+            recorder.append(i, 0, 0, values[i]);
+        recorder.close();
+        assertEquals(3, directory.listFiles().length);
+
+        // Whatever survived is a run of consecutive records ending with the last one.
+        CaptureReader reader = new CaptureReader(directory);
+        assertTrue(reader.next());
+        int first = (int) reader.getTimestampNanos();
+        assertTrue(first > 0);
+        for (int i = first; i < values.length; i++) {
+            if (i > first)
+                assertTrue("record " + i, reader.next());
+            assertEquals(i, reader.getTimestampNanos());
+            assertArrayEquals("record " + i, values[i], reader.getValue());
+        }
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void reopenedRecorderContinuesAfterNewestSegment() throws IOException {
+        CaptureRecorder recorder = new CaptureRecorder(directory, SEGMENT_SIZE, 4);
+        recorder.append(1, 0, 0, new byte[]{1});
+        recorder.close();
+        recorder = new CaptureRecorder(directory, SEGMENT_SIZE, 4);
+        recorder.append(2, 0, 0, new byte[]{2});
+        recorder.close();
+
+        CaptureReader reader = new CaptureReader(directory);
+        assertTrue(reader.next());
+        assertEquals(1, reader.getTimestampNanos());
+        assertTrue(reader.next());
+        assertEquals(2, reader.getTimestampNanos());
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void truncatesValuesLargerThanSegment() throws IOException {
+        byte[] value = new byte[SEGMENT_SIZE * 2];
+        new Random(14).nextBytes(value);
+        CaptureRecorder recorder = new CaptureRecorder(directory, SEGMENT_SIZE, 2);
+        recorder.append(1, 0, 0, value);
+        recorder.close();
+
+        CaptureReader reader = new CaptureReader(directory);
+        assertTrue(reader.next());
+        int length = SEGMENT_SIZE - CaptureRecorder.SEGMENT_HEADER - CaptureRecorder.RECORD_HEADER - 4;
+        assertArrayEquals(Arrays.copyOf(value, length), reader.getValue());
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+    private static byte[][] randomValues(Random random, int count) {
+        byte[][] values = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            values[i] = new byte[1 + random.nextInt(WherequbeModel.BLE_NUS_MAX_DATA_LEN)];
+            random.nextBytes(values[i]);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,94 @@
+package com.geometris.wqlib;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FrameCursorTest {
+
+    // Header fragment with payload 1 2 3, an empty fragment, then 4 5 and 6.
+    private static byte[][] frame() {
+        return new byte[][] {
+                {0, (byte) 0xCB, 1, 4, 0, 1, 2, 3},
+                {1},
+                {2, 4, 5},
+                {3, 6},
+        };
+    }
+
+    @Test
+    public void readsAcrossFragments() {
+        FrameCursor cursor = new FrameCursor();
+        cursor.reset(frame(), 4);
+        assertEquals(6, cursor.remaining());
+        for (int expected = 1; expected <= 6; expected++) {
+            assertEquals(expected - 1, cursor.position());
+            assertEquals(expected, cursor.readUint8());
+        }
+        assertEquals(0, cursor.remaining());
+    }
+
+    @Test
+    public void peeksAheadAcrossFragments() {
+        FrameCursor cursor = new FrameCursor();
+        cursor.reset(frame(), 4);
+        cursor.skip(2);
+        assertEquals(3, cursor.peek());
+        assertEquals(4, cursor.peek(1));
+        assertEquals(6, cursor.peek(3));
+        assertEquals(2, cursor.position());
+    }
+
+    @Test
+    public void skipIsClampedToRemaining() {
+        FrameCursor cursor = new FrameCursor();
+        cursor.reset(frame(), 4);
+        cursor.skip(4);
+        assertEquals(5, cursor.peek());
+        cursor.skip(100);
+        assertEquals(6, cursor.position());
+        assertEquals(0, cursor.remaining());
+    }
+
+    @Test
+    public void headerOnlyFrameIsEmpty() {
+        FrameCursor cursor = new FrameCursor();
+        cursor.reset(new byte[][] {{0, (byte) 0xCB, 1, 1, 0}}, 1);
+        assertEquals(0, cursor.remaining());
+        cursor.skip(1);
+        assertEquals(0, cursor.position());
+    }
+
+    @Test
+    public void extendMakesLaterFragmentsReadable() {
+        FrameCursor cursor = new FrameCursor();
+        byte[][] fragments = frame();
+        cursor.reset(fragments, 1);
+        assertEquals(3, cursor.remaining());
+        cursor.skip(3);
+        cursor.extend(3);
+        assertEquals(2, cursor.remaining());
+        assertEquals(4, cursor.readUint8());
+        cursor.extend(4);
+        assertEquals(5, cursor.readUint8());
+        assertEquals(6, cursor.readUint8());
+    }
+
+    @Test
+    public void seekMovesBack() {
+        FrameCursor cursor = new FrameCursor();
+        cursor.reset(frame(), 4);
+        cursor.skip(5);
+        cursor.seek(1);
+        assertEquals(2, cursor.readUint8());
+    }
+
+    @Test
+    public void readsSwappedWords() {
+        FrameCursor cursor = new FrameCursor();
+        // 0x12345678 sent as 34 12 78 56, split over two fragments.
+        cursor.reset(new byte[][] {{0, (byte) 0xCB, 1, 2, 0, 0x34, 0x12}, {1, 0x78, 0x56}}, 2);
+        assertEquals(0x12345678, cursor.readSwappedUint32());
+        assertEquals(0, cursor.remaining());
+    }
+}
@@ -0,0 +1,171 @@
+package com.geometris.wqlib;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how OBDDataInfo recovers from lost, late and repeated fragments without mixing frames.
+ */
+public class FrameResyncTest {
+
+    private static final int FRAGMENT_SIZE = WherequbeModel.BLE_NUS_MAX_DATA_LEN;
+
+    private final Random random = new Random(21);
+    private OBDDataInfo decoder;
+
+    @Before
+    public void setUp() {
+        decoder = new OBDDataInfo();
+    }
+
+    @Test
+    public void lostHeaderDropsFrame() {
+        List<byte[]> first = frame(6);
+        List<byte[]> second = frame(4);
+        String expected = expected(second);
+
+        for (int i = 1; i < first.size(); i++)
+            decoder.insertPacket(first.get(i), 0);
+        assertFalse(decoder.isFull());
+        insertAll(second, 10);
+
+        assertTrue(decoder.isFull());
+        assertEquals(expected, ProtocolOneDecodeTest.describe(decoder.getGeoData()));
+        ReassemblyStats stats = decoder.getReassemblyStats();
+        assertEquals(first.size() - 1, stats.droppedFragments);
+        assertEquals(1, stats.completedFrames);
+        assertEquals(0, stats.incompleteFrames);
+    }
+
+    @Test
+    public void lostTailIsDiscardedByNextHeader() {
+        List<byte[]> first = frame(6);
+        List<byte[]> second = frame(3);
+        String expected = expected(second);
+
+        for (int i = 0; i < first.size() - 1; i++)
+            decoder.insertPacket(first.get(i), 0);
+        insertAll(second, 10);
+
+        assertTrue(decoder.isFull());
+        assertEquals(expected, ProtocolOneDecodeTest.describe(decoder.getGeoData()));
+        ReassemblyStats stats = decoder.getReassemblyStats();
+        assertEquals(1, stats.incompleteFrames);
+        assertEquals(1, stats.completedFrames);
+        assertEquals(0, stats.droppedFragments);
+    }
+
+    @Test
+    public void timeoutDropsLateFragmentsUntilNextHeader() {
+        decoder.setFragmentTimeout(100);
+        List<byte[]> first = frame(4);
+        List<byte[]> second = frame(4);
+        String expected = expected(second);
+
+        decoder.insertPacket(first.get(0), 0);
+        decoder.insertPacket(first.get(1), 50);
+        // The rest of the frame comes too late, and must not be taken for the start of another one.
+        decoder.insertPacket(first.get(2), 151);
+        decoder.insertPacket(first.get(3), 152);
+        assertFalse(decoder.isFull());
+        insertAll(second, 200);
+
+        assertTrue(decoder.isFull());
+        assertEquals(expected, ProtocolOneDecodeTest.describe(decoder.getGeoData()));
+        ReassemblyStats stats = decoder.getReassemblyStats();
+        assertEquals(1, stats.incompleteFrames);
+        assertEquals(2, stats.droppedFragments);
+        assertEquals(1, stats.completedFrames);
+    }
+
+    @Test
+    public void frameWithinTimeoutCompletes() {
+        decoder.setFragmentTimeout(100);
+        List<byte[]> fragments = frame(4);
+        for (int i = 0; i < fragments.size(); i++)
+            decoder.insertPacket(fragments.get(i), i * 99 / (fragments.size() - 1));
+        assertTrue(decoder.isFull());
+        assertEquals(0, decoder.getReassemblyStats().incompleteFrames);
+    }
+
+    @Test
+    public void duplicatesKeepFirstCopy() {
+        List<byte[]> fragments = frame(4);
+        String expected = expected(fragments);
+        byte[] corrupt = new byte[fragments.get(1).length];
+        corrupt[OBDDataInfo.PACKET_COUNT_OFFSET] = 1;
+
+        decoder.insertPacket(fragments.get(0), 0);
+        decoder.insertPacket(fragments.get(1), 0);
+        decoder.insertPacket(corrupt, 0);
+        for (int i = 2; i < fragments.size(); i++)
+            decoder.insertPacket(fragments.get(i), 0);
+
+        assertTrue(decoder.isFull());
+        assertEquals(expected, ProtocolOneDecodeTest.describe(decoder.getGeoData()));
+        ReassemblyStats stats = decoder.getReassemblyStats();
+        assertEquals(1, stats.droppedFragments);
+        assertEquals(0, stats.recoveredFrames);
+    }
+
+    @Test
+    public void reorderedFragmentsAreRecovered() {
+        List<byte[]> fragments = frame(4);
+        String expected = expected(fragments);
+
+        decoder.insertPacket(fragments.get(0), 0);
+        decoder.insertPacket(fragments.get(2), 0);
+        decoder.insertPacket(fragments.get(1), 0);
+        for (int i = 3; i < fragments.size(); i++)
+            decoder.insertPacket(fragments.get(i), 0);
+
+        assertTrue(decoder.isFull());
+        assertEquals(expected, ProtocolOneDecodeTest.describe(decoder.getGeoData()));
+        assertEquals(1, decoder.getReassemblyStats().recoveredFrames);
+    }
+
+    @Test
+    public void fragmentsBeyondTotalAreDropped() {
+        List<byte[]> fragments = frame(3);
+        int last = fragments.size() - 1;
+        byte[] extra = fragments.get(last).clone();
+        extra[OBDDataInfo.PACKET_COUNT_OFFSET] = (byte) fragments.size();
+
+        decoder.insertPacket(fragments.get(0), 0);
+        decoder.insertPacket(extra, 0);
+        for (int i = 1; i < last; i++)
+            decoder.insertPacket(fragments.get(i), 0);
+        assertFalse(decoder.isFull());
+        decoder.insertPacket(fragments.get(last), 0);
+        assertTrue(decoder.isFull());
+        assertEquals(1, decoder.getReassemblyStats().droppedFragments);
+    }
+
+    // A random frame of at least the given number of fragments.
+    private List<byte[]> frame(int minFragments) {
+        while (true) {
+            List<byte[]> fragments = ProtocolFrames.split(ProtocolFrames.randomPayload(random), FRAGMENT_SIZE);
+            if (fragments.size() >= minFragments)
+                return fragments;
+        }
+    }
+
+    private static String expected(List<byte[]> fragments) {
+        OBDDataInfo fresh = new OBDDataInfo();
+        for (byte[] fragment : fragments)
+            fresh.insertPacket(fragment, 0);
+        return ProtocolOneDecodeTest.describe(fresh.getGeoData());
+    }
+
+    private void insertAll(List<byte[]> fragments, long now) {
+        for (byte[] fragment : fragments)
+            decoder.insertPacket(fragment, now);
+    }
+}
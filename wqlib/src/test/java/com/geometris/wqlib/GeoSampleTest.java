@@ -0,0 +1,132 @@
+package com.geometris.wqlib;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the presence bits of GeoSample and its conversions.
+ */
+public class GeoSampleTest {
+
+    @Test
+    public void valuesArePresentOnceSet() {
+        GeoSample sample = new GeoSample();
+        for (int field = GeoSample.PROTOCOL; field <= GeoSample.VIN_LENGTH; field++)
+            assertFalse("field " + field, sample.has(field));
+
+        sample.setDouble(GeoSample.ODOMETER, 0);
+        sample.setLong(GeoSample.VIN_LENGTH, 0);
+        for (int field = GeoSample.PROTOCOL; field <= GeoSample.VIN_LENGTH; field++)
+            assertEquals("field " + field, field == GeoSample.ODOMETER || field == GeoSample.VIN_LENGTH, sample.has(field));
+
+        sample.clear();
+        assertFalse(sample.has(GeoSample.ODOMETER));
+        assertFalse(sample.has(GeoSample.VIN_LENGTH));
+    }
+
+    @Test
+    public void storesDoublesAsRawBits() {
+        GeoSample sample = new GeoSample();
+        sample.setDouble(GeoSample.LATITUDE, -33.8688);
+        sample.setDouble(GeoSample.LONGITUDE, Double.NaN);
+        assertEquals(-33.8688, sample.getDouble(GeoSample.LATITUDE), 0);
+        assertTrue(Double.isNaN(sample.getDouble(GeoSample.LONGITUDE)));
+        assertEquals(0, sample.getDouble(GeoSample.GPS_HEADING), 0);
+    }
+
+    @Test
+    public void truncatesLongVin() {
+        GeoSample sample = new GeoSample();
+        byte[] vin = new byte[GeoSample.MAX_VIN_LENGTH + 5];
+        for (int i = 0; i < vin.length; i++)
+            vin[i] = (byte) ('A' + i % 26);
+        sample.setVin(vin, 0, vin.length);
+        assertEquals(new String(vin, 0, GeoSample.MAX_VIN_LENGTH), sample.getVin());
+
+        // A shorter VIN must not keep bytes of the previous one.
+        sample.setVin("1FT".getBytes(), 0, 3);
+        assertEquals("1FT", sample.getVin());
+    }
+
+    @Test
+    public void copiesAndSerializesEveryWord() {
+        GeoSample sample = filledSample();
+        GeoSample copy = new GeoSample().copyFrom(sample);
+        assertSameWords(sample, copy);
+
+        ByteBuffer buffer = ByteBuffer.allocate(GeoSample.BYTES + 8).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(42);
+        sample.writeTo(buffer);
+        assertEquals(GeoSample.BYTES + 8, buffer.position());
+        buffer.flip();
+        assertEquals(42, buffer.getLong());
+        assertSameWords(sample, new GeoSample().readFrom(buffer));
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void convertsOnlyPresentValues() {
+        GeoData geoData = new GeoSample().toGeoData();
+        assertNull(geoData.getProtocol());
+        assertNull(geoData.getVin());
+        assertNull(geoData.getLatitude());
+        assertNull(geoData.getOdometerTimestamp());
+        assertEquals(0.0, geoData.getOdometer(), 0);
+        assertTrue(geoData.getUnidentifiedEventArrayList().isEmpty());
+
+        geoData = filledSample().toGeoData();
+        assertEquals(1, geoData.getProtocol().intValue());
+        assertEquals("1FTFW1ET5DFC10312", geoData.getVin());
+        assertEquals(1234.5, geoData.getOdometer(), 0);
+        assertEquals(1500000000000L, geoData.getOdometerTimestamp().getMillis());
+        assertEquals(45.5, geoData.getLatitude(), 0);
+        assertEquals(1, geoData.getUnidentifiedEventArrayList().size());
+        assertEquals(3, geoData.getUnidentifiedEventArrayList().get(0).getReason().intValue());
+    }
+
+    @Test
+    public void keepsValuesChangedOnGeoData() {
+        GeoSample sample = filledSample();
+        GeoData geoData = sample.toGeoData();
+        geoData.setVehicleSpeed(88.0);
+        geoData.setFuelLevelTimestamp(new DateTime(1600000000000L));
+        geoData.setVin("2FTFW1ET5DFC10312");
+        sample.updateFrom(geoData);
+
+        assertEquals(88.0, sample.getDouble(GeoSample.VEHICLE_SPEED), 0);
+        assertEquals(1600000000000L, sample.getLong(GeoSample.FUEL_LEVEL_TIME));
+        assertEquals("2FTFW1ET5DFC10312", sample.getVin());
+        // Untouched values, including the GeoData defaults of absent ones, are left as they were.
+        assertEquals(1234.5, sample.getDouble(GeoSample.ODOMETER), 0);
+        assertFalse(sample.has(GeoSample.ENGINE_RPM));
+        assertFalse(sample.has(GeoSample.GPS_HEADING));
+    }
+
+    private static GeoSample filledSample() {
+        GeoSample sample = new GeoSample();
+        sample.setLong(GeoSample.PROTOCOL, 1);
+        sample.setVin("1FTFW1ET5DFC10312".getBytes(), 0, 17);
+        sample.setDouble(GeoSample.ODOMETER, 1234.5);
+        sample.setLong(GeoSample.ODOMETER_TIME, 1500000000000L);
+        sample.setDouble(GeoSample.LATITUDE, 45.5);
+        sample.setLong(GeoSample.EVENT_TIMESTAMP, 1500000000L);
+        sample.setLong(GeoSample.EVENT_REASON, 3);
+        return sample;
+    }
+
+    private static void assertSameWords(GeoSample expected, GeoSample actual) {
+        ByteBuffer a = ByteBuffer.allocate(GeoSample.BYTES);
+        ByteBuffer b = ByteBuffer.allocate(GeoSample.BYTES);
+        expected.writeTo(a);
+        actual.writeTo(b);
+        assertEquals(a.flip(), b.flip());
+    }
+}
@@ -1,10 +0,0 @@
-package com.geometris.wqlib;
-
-/**
- * Represents a request to get a Whereqube device address.
- */
-public class GetDeviceAddress extends BaseRequest{
-    public GetDeviceAddress(){
-        super(BaseRequest.REQUEST_DEVICE_ADDRESS);
-    }
-}
\ No newline at end of file
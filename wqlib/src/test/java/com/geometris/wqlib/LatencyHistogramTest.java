@@ -0,0 +1,92 @@
+package com.geometris.wqlib;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the bucket math of LatencyHistogram and the percentiles read from its snapshots.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketCountCoversMaxValue() {
+        assertEquals(280, LatencyHistogram.BUCKETS);
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.index(LatencyHistogram.MAX_VALUE));
+        assertEquals(LatencyHistogram.MAX_VALUE, LatencyHistogram.highestValue(LatencyHistogram.BUCKETS - 1));
+    }
+
+    @Test
+    public void smallValuesHaveOwnBucket() {
+        for (int value = 0; value < LatencyHistogram.SUB_BUCKETS; value++) {
+            assertEquals(value, LatencyHistogram.index(value));
+            assertEquals(value, LatencyHistogram.highestValue(value));
+        }
+        assertEquals(LatencyHistogram.SUB_BUCKETS, LatencyHistogram.index(LatencyHistogram.SUB_BUCKETS));
+    }
+
+    @Test
+    public void bucketsAreContiguous() {
+        // Each bucket starts right after the previous one ends, so every value has exactly one bucket.
+        for (int i = 1; i < LatencyHistogram.BUCKETS; i++) {
+            long lowest = LatencyHistogram.highestValue(i - 1) + 1;
+            long highest = LatencyHistogram.highestValue(i);
+            assertTrue("bucket " + i, highest >= lowest);
+            assertEquals("bucket " + i, i, LatencyHistogram.index(lowest));
+            assertEquals("bucket " + i, i, LatencyHistogram.index(highest));
+            assertEquals("bucket " + i, i + 1 < LatencyHistogram.BUCKETS ? i + 1 : i,
+                    LatencyHistogram.index(Math.min(highest + 1, LatencyHistogram.MAX_VALUE)));
+        }
+    }
+
+    @Test
+    public void bucketWidthStaysWithinPrecision() {
+        for (int i = LatencyHistogram.SUB_BUCKETS; i < LatencyHistogram.BUCKETS; i++) {
+            long lowest = LatencyHistogram.highestValue(i - 1) + 1;
+            long width = LatencyHistogram.highestValue(i) - lowest + 1;
+            assertTrue("bucket " + i, width * LatencyHistogram.HALF <= lowest);
+        }
+    }
+
+    @Test
+    public void clampsOutOfRangeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        LatencySnapshot snapshot = histogram.snapshot();
+        assertEquals(2, snapshot.getCount());
+        assertEquals(LatencyHistogram.MAX_VALUE, snapshot.getMax());
+        assertEquals(0, snapshot.getValueAtPercentile(50));
+        assertEquals(LatencyHistogram.MAX_VALUE, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void percentilesAreWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 10000; value++)
+            histogram.record(value);
+        LatencySnapshot snapshot = histogram.snapshot();
+        assertEquals(10000, snapshot.getCount());
+        assertEquals(10000, snapshot.getMax());
+        assertEquals(5000.5, snapshot.getMean(), 0);
+        double[] percentiles = {1, 25, 50, 90, 99, 99.9};
+        for (double percentile : percentiles) {
+            long exact = (long) Math.ceil(percentile * 100);
+            long reported = snapshot.getValueAtPercentile(percentile);
+            assertTrue("p" + percentile, reported >= exact);
+            assertTrue("p" + percentile, (reported - exact) * LatencyHistogram.HALF <= exact);
+        }
+        // Never above the largest value recorded, even if its bucket goes further.
+        assertEquals(10000, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void emptySnapshotReportsZero() {
+        LatencySnapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0, snapshot.getMean(), 0);
+        assertEquals(0, snapshot.getValueAtPercentile(99));
+    }
+}
@@ -0,0 +1,109 @@
+package com.geometris.wqlib;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a LazyGeoData keeps decoding its own frame once the decoder that built it moved on.
+ */
+public class LazyGeoDataTest {
+
+    // The baseline decoder copies frames into a 500 byte buffer.
+    private static final int BASELINE_MAX_PAYLOAD = 480;
+
+    @Before
+    public void setUp() {
+        ProtocolFrames.clearRpmFallback();
+    }
+
+    @Test
+    public void resolvesAfterReset() {
+        Random random = new Random(9);
+        OBDDataInfo decoder = new OBDDataInfo();
+        for (int frame = 0; frame < 300; frame++) {
+            byte[] first = payload(random);
+            byte[] second = payload(random);
+
+            String expectedFirst = describeBaseline(first);
+            decode(decoder, first);
+            GeoData lazy = decoder.getGeoData();
+            assertTrue(lazy instanceof LazyGeoData);
+
+            decoder.reset();
+            String expectedSecond = describeBaseline(second);
+            decode(decoder, second);
+            // Read the earlier frame only after the decoder reused its slots for the next one.
+            assertEquals("frame " + frame, expectedFirst, ProtocolOneDecodeTest.describe(lazy));
+            assertEquals("frame " + frame, expectedSecond, ProtocolOneDecodeTest.describe(decoder.getGeoData()));
+            decoder.reset();
+        }
+    }
+
+    @Test
+    public void setValuesReplaceDecodedOnes() {
+        OBDDataInfo decoder = new OBDDataInfo();
+        decode(decoder, payload(new Random(4)));
+        GeoData lazy = decoder.getGeoData();
+        lazy.setOdometer(5.0);
+        lazy.setVin("1FT");
+        lazy.setLatitude(null);
+        decoder.reset();
+        assertEquals(5.0, lazy.getOdometer(), 0);
+        assertEquals("1FT", lazy.getVin());
+        assertNull(lazy.getLatitude());
+    }
+
+    @Test
+    public void serializesDecodedValues() throws IOException, ClassNotFoundException {
+        Random random = new Random(6);
+        OBDDataInfo decoder = new OBDDataInfo();
+        byte[] payload = payload(random);
+        String expected = describeBaseline(payload);
+        decode(decoder, payload);
+        GeoData lazy = decoder.getGeoData();
+        decoder.reset();
+        decode(decoder, payload(random));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(lazy);
+        out.close();
+        Object copy = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+        assertEquals(GeoData.class, copy.getClass());
+        assertEquals(expected, ProtocolOneDecodeTest.describe((GeoData) copy));
+    }
+
+    private static byte[] payload(Random random) {
+        while (true) {
+            byte[] payload = ProtocolFrames.randomPayload(random);
+            if (payload.length <= BASELINE_MAX_PAYLOAD)
+                return payload;
+        }
+    }
+
+    private static void decode(OBDDataInfo decoder, byte[] payload) {
+        for (byte[] fragment : ProtocolFrames.split(payload, WherequbeModel.BLE_NUS_MAX_DATA_LEN))
+            decoder.insertPacket(fragment);
+        assertTrue(decoder.isFull());
+    }
+
+    private static String describeBaseline(byte[] payload) {
+        com.geometris.wqlib.baseline.OBDDataInfo baseline = new com.geometris.wqlib.baseline.OBDDataInfo();
+        List<byte[]> fragments = ProtocolFrames.split(payload, WherequbeModel.BLE_NUS_MAX_DATA_LEN);
+        for (byte[] fragment : fragments)
+            baseline.insertPacket(fragment);
+        return ProtocolOneDecodeTest.describe(baseline.getGeoData());
+    }
+}
@@ -0,0 +1,114 @@
+package com.geometris.wqlib;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds protocol 1 frames for the decoder tests: random TLV payloads and their split into fragments.
+ */
+final class ProtocolFrames {
+
+    private static final int[] TAGS = {
+            0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08, 0x09, 0x0A, 0x0B, 0x0C, 0x0D, 0x0E, 0x0F,
+            0x10, 0x11, 0x12, 0x13, 0x14, 0x15, 0x16, 0x17, 0x18, 0x19, 0x1A, 0x1B, 0x1C, 0x1D, 0x1E, 0x1F
+    };
+
+    private ProtocolFrames() {
+    }
+
+    /**
+     * @return a payload of random tags, starting with the two bytes skipped by the decoder.
+     */
+    static byte[] randomPayload(Random random) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0);
+        out.write(0);
+        int count = 3 + random.nextInt(40);
+        for (int k = 0; k < count; k++) {
+            int tag = TAGS[random.nextInt(TAGS.length)];
+            out.write(tag);
+            out.write(0);
+            if (tag == 0x01) {
+                // VIN: length word, then one character per word.
+                int length = random.nextInt(18);
+                out.write(length);
+                out.write(0);
+                for (int i = 0; i < length; i++) {
+                    out.write('A' + random.nextInt(26));
+                    out.write(0);
+                }
+            } else if (tag == 0x0F) {
+                // Counted payload: count word, then count words.
+                int length = random.nextInt(5);
+                out.write(length);
+                out.write(0);
+                for (int i = 0; i < length * 2; i++)
+                    out.write(random.nextInt(256));
+            } else {
+                int value = random.nextInt(5) == 0 ? -1 : random.nextInt(2000000);
+                writeSwapped(out, value);
+            }
+        }
+        if (random.nextInt(10) == 0) {
+            out.write(0x7E);
+            out.write(0);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a frame with an engine RPM of zero with the current and the baseline decoders. Both keep the last
+     * RPM in static fields and report it for frames lacking one, so tests comparing them start from this state.
+     */
+    static void clearRpmFallback() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0);
+        out.write(0);
+        out.write(0x03);
+        out.write(0);
+        writeSwapped(out, 0);
+        OBDDataInfo decoder = new OBDDataInfo();
+        com.geometris.wqlib.baseline.OBDDataInfo baseline = new com.geometris.wqlib.baseline.OBDDataInfo();
+        for (byte[] fragment : split(out.toByteArray(), WherequbeModel.BLE_NUS_MAX_DATA_LEN)) {
+            decoder.insertPacket(fragment);
+            baseline.insertPacket(fragment);
+        }
+        decoder.getGeoSample();
+        baseline.getGeoData();
+    }
+
+    // 32-bit value as two 16-bit little endian words, most significant word first.
+    static void writeSwapped(ByteArrayOutputStream out, int value) {
+        out.write((value >> 16) & 0xFF);
+        out.write((value >> 24) & 0xFF);
+        out.write(value & 0xFF);
+        out.write((value >> 8) & 0xFF);
+    }
+
+    /**
+     * Splits a payload into protocol 1 fragments of at most the given size.
+     */
+    static List<byte[]> split(byte[] payload, int fragmentSize) {
+        List<byte[]> fragments = new ArrayList<byte[]>();
+        int position = 0;
+        int index = 0;
+        while (position < payload.length || index == 0) {
+            int header = index == 0 ? FrameCursor.FIRST_FRAGMENT_HEADER : FrameCursor.FRAGMENT_HEADER;
+            int take = Math.min(fragmentSize - header, payload.length - position);
+            byte[] fragment = new byte[header + take];
+            fragment[OBDDataInfo.PACKET_COUNT_OFFSET] = (byte) index;
+            if (index == 0) {
+                fragment[OBDDataInfo.PACKET_IDENTIFIER] = (byte) 0xCB;
+                fragment[OBDDataInfo.PROTOCOL_IDENTIFIER] = 1;
+            }
+            System.arraycopy(payload, position, fragment, header, take);
+            position += take;
+            fragments.add(fragment);
+            index++;
+        }
+        fragments.get(0)[OBDDataInfo.TOTAL_PACKET_INDEX] = (byte) fragments.size();
+        return fragments;
+    }
+}
@@ -0,0 +1,104 @@
+package com.geometris.wqlib;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Times the reassembly and decoding of protocol 1 frames, against the baseline decoder.
+ * <p>
+ * Skipped by default, run with {@code ./gradlew :wqlib:testDebugUnitTest -Pbenchmark --tests '*Benchmark'}.
+ * Prints the median time per frame of each round set; the figures only compare decoders run on the same machine.
+ */
+public class ProtocolOneDecodeBenchmark {
+
+    private static final int FRAMES = 500;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 30;
+
+    // The baseline decoder copies frames into a 500 byte buffer.
+    private static final int BASELINE_MAX_PAYLOAD = 480;
+
+    private final List<List<byte[]>> smallFragments = new ArrayList<List<byte[]>>();
+    private final List<List<byte[]>> largeFragments = new ArrayList<List<byte[]>>();
+    private long sink;
+
+    @Before
+    public void setUp() {
+        assumeTrue("benchmarks are run with -Pbenchmark", Boolean.getBoolean("wqlib.benchmark"));
+        Random random = new Random(42);
+        while (smallFragments.size() < FRAMES) {
+            byte[] payload = ProtocolFrames.randomPayload(random);
+            if (payload.length > BASELINE_MAX_PAYLOAD)
+                continue;
+            smallFragments.add(ProtocolFrames.split(payload, WherequbeModel.BLE_NUS_MAX_DATA_LEN));
+            largeFragments.add(ProtocolFrames.split(payload, 244));
+        }
+    }
+
+    @Test
+    public void decodeSmallFragments() {
+        report("decode, 20 byte fragments", timeDecoder(smallFragments));
+    }
+
+    @Test
+    public void decodeLargeFragments() {
+        report("decode, 244 byte fragments", timeDecoder(largeFragments));
+    }
+
+    @Test
+    public void decodeSmallFragmentsBaseline() {
+        report("baseline decode, 20 byte fragments", timeBaseline(smallFragments));
+    }
+
+    private long timeDecoder(List<List<byte[]>> frames) {
+        OBDDataInfo decoder = new OBDDataInfo();
+        long[] samples = new long[ROUNDS];
+        for (int round = -WARMUP_ROUNDS; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (List<byte[]> fragments : frames) {
+                decoder.reset();
+                for (byte[] fragment : fragments)
+                    decoder.insertPacket(fragment);
+                sink += Objects.hashCode(decoder.getGeoData().getTotalUdrvEvents());
+            }
+            if (round >= 0)
+                samples[round] = (System.nanoTime() - start) / frames.size();
+        }
+        return median(samples);
+    }
+
+    private long timeBaseline(List<List<byte[]>> frames) {
+        long[] samples = new long[ROUNDS];
+        for (int round = -WARMUP_ROUNDS; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (List<byte[]> fragments : frames) {
+                // The baseline decoder has no reset, the service used to create one per frame.
+                com.geometris.wqlib.baseline.OBDDataInfo decoder = new com.geometris.wqlib.baseline.OBDDataInfo();
+                for (byte[] fragment : fragments)
+                    decoder.insertPacket(fragment);
+                sink += Objects.hashCode(decoder.getGeoData().getTotalUdrvEvents());
+            }
+            if (round >= 0)
+                samples[round] = (System.nanoTime() - start) / frames.size();
+        }
+        return median(samples);
+    }
+
+    private static long median(long[] samples) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private void report(String name, long nanosPerFrame) {
+        System.out.println(name + ": " + nanosPerFrame + " ns/frame (" + sink + ")");
+    }
+}
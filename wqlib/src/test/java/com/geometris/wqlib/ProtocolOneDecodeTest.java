@@ -0,0 +1,106 @@
+package com.geometris.wqlib;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Decodes random protocol 1 frames with the current decoder and with the baseline one, and checks that every value
+ * comes out the same.
+ */
+public class ProtocolOneDecodeTest {
+
+    // The baseline decoder copies frames into a 500 byte buffer.
+    private static final int BASELINE_MAX_PAYLOAD = 480;
+    private static final int FRAMES = 2000;
+
+    @Before
+    public void setUp() {
+        ProtocolFrames.clearRpmFallback();
+    }
+
+    @Test
+    public void decodesLikeBaseline() {
+        Random random = new Random(42);
+        OBDDataInfo decoder = new OBDDataInfo();
+        int compared = 0;
+        for (int frame = 0; frame < FRAMES; frame++) {
+            byte[] payload = ProtocolFrames.randomPayload(random);
+            if (payload.length > BASELINE_MAX_PAYLOAD)
+                continue;
+            List<byte[]> fragments = ProtocolFrames.split(payload, WherequbeModel.BLE_NUS_MAX_DATA_LEN);
+            com.geometris.wqlib.baseline.OBDDataInfo baseline = new com.geometris.wqlib.baseline.OBDDataInfo();
+            decoder.reset();
+            for (byte[] fragment : fragments) {
+                baseline.insertPacket(fragment.clone());
+                decoder.insertPacket(fragment.clone());
+            }
+            assertTrue(decoder.isFull());
+            assertEquals("frame " + frame, describe(baseline.getGeoData()), describe(decoder.getGeoData()));
+            compared++;
+        }
+        assertTrue(compared > FRAMES / 2);
+    }
+
+    @Test
+    public void decodesLargeFragmentsLikeSmallOnes() {
+        Random random = new Random(7);
+        OBDDataInfo small = new OBDDataInfo();
+        OBDDataInfo large = new OBDDataInfo();
+        for (int frame = 0; frame < 500; frame++) {
+            byte[] payload = ProtocolFrames.randomPayload(random);
+            small.reset();
+            large.reset();
+            for (byte[] fragment : ProtocolFrames.split(payload, WherequbeModel.BLE_NUS_MAX_DATA_LEN))
+                small.insertPacket(fragment);
+            for (byte[] fragment : ProtocolFrames.split(payload, 244))
+                large.insertPacket(fragment);
+            assertEquals("frame " + frame, describe(small.getGeoData()), describe(large.getGeoData()));
+        }
+    }
+
+    static String describe(GeoData data) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(data.getProtocol()).append(' ').append(data.getVin()).append(' ')
+                .append(data.getLatitude()).append(' ').append(data.getLongitude()).append(' ')
+                .append(data.getGpsHeading()).append(' ').append(data.getGpsTime()).append(' ')
+                .append(data.getEngTotalHours()).append(' ').append(data.getEngTotalHoursTimestamp() != null).append(' ')
+                .append(data.getOdometer()).append(' ').append(data.getOdometerTimestamp() != null).append(' ')
+                .append(data.getEngineRPM()).append(' ').append(data.getEngineRpmTimestamp() != null).append(' ')
+                .append(data.getFuelLevel()).append(' ').append(data.getFuelLevelTimestamp() != null).append(' ')
+                .append(data.getVehicleSpeed()).append(' ').append(data.getVehicleSpeedTimestamp() != null).append(' ')
+                .append(data.getTotalUdrvEvents());
+        for (UnidentifiedEvent event : data.getUnidentifiedEventArrayList()) {
+            sb.append(" [").append(event.getReason()).append(' ').append(event.getTimestamp()).append(' ')
+                    .append(event.getEngTotalHours()).append(' ').append(event.getVehicleSpeed()).append(' ')
+                    .append(event.getOdometer()).append(' ').append(event.getLatitude()).append(' ')
+                    .append(event.getLongitude()).append(' ').append(event.getGPSTimestamp()).append(']');
+        }
+        return sb.toString();
+    }
+
+    static String describe(com.geometris.wqlib.baseline.GeoData data) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(data.getProtocol()).append(' ').append(data.getVin()).append(' ')
+                .append(data.getLatitude()).append(' ').append(data.getLongitude()).append(' ')
+                .append(data.getGpsHeading()).append(' ').append(data.getGpsTime()).append(' ')
+                .append(data.getEngTotalHours()).append(' ').append(data.getEngTotalHoursTimestamp() != null).append(' ')
+                .append(data.getOdometer()).append(' ').append(data.getOdometerTimestamp() != null).append(' ')
+                .append(data.getEngineRPM()).append(' ').append(data.getEngineRpmTimestamp() != null).append(' ')
+                .append(data.getFuelLevel()).append(' ').append(data.getFuelLevelTimestamp() != null).append(' ')
+                .append(data.getVehicleSpeed()).append(' ').append(data.getVehicleSpeedTimestamp() != null).append(' ')
+                .append(data.getTotalUdrvEvents());
+        for (com.geometris.wqlib.baseline.UnidentifiedEvent event : data.getUnidentifiedEventArrayList()) {
+            sb.append(" [").append(event.getReason()).append(' ').append(event.getTimestamp()).append(' ')
+                    .append(event.getEngTotalHours()).append(' ').append(event.getVehicleSpeed()).append(' ')
+                    .append(event.getOdometer()).append(' ').append(event.getLatitude()).append(' ')
+                    .append(event.getLongitude()).append(' ').append(event.getGPSTimestamp()).append(']');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,89 @@
+package com.geometris.wqlib;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the fixed-slot reassembly buffer of OBDDataInfo: completion tracking and reuse through reset().
+ */
+public class ReassemblyBufferTest {
+
+    @Test
+    public void completesWhenEveryFragmentArrived() {
+        List<byte[]> fragments = ProtocolFrames.split(ProtocolFrames.randomPayload(new Random(1)), 20);
+        OBDDataInfo decoder = new OBDDataInfo();
+        for (int i = 0; i < fragments.size(); i++) {
+            assertFalse("fragment " + i, decoder.isFull());
+            assertNull(decoder.getGeoData());
+            decoder.insertPacket(fragments.get(i));
+        }
+        assertTrue(decoder.isFull());
+        assertEquals(fragments.size(), decoder.getTotalPacket() & 0xFF);
+        assertEquals(1L, decoder.getReassemblyStats().completedFrames);
+    }
+
+    @Test
+    public void resetClearsSlotsForNextFrame() {
+        Random random = new Random(2);
+        OBDDataInfo decoder = new OBDDataInfo();
+        for (byte[] fragment : ProtocolFrames.split(ProtocolFrames.randomPayload(random), 20))
+            decoder.insertPacket(fragment);
+        assertTrue(decoder.isFull());
+
+        decoder.reset();
+        assertFalse(decoder.isFull());
+        assertEquals(-1, decoder.getProtocolId().intValue());
+        assertEquals(0, decoder.getTotalPacket().intValue());
+
+        // A shorter frame must not be completed by slots left from the previous one.
+        byte[] payload = new byte[40];
+        List<byte[]> fragments = ProtocolFrames.split(payload, 20);
+        assertEquals(3, fragments.size());
+        decoder.insertPacket(fragments.get(0));
+        decoder.insertPacket(fragments.get(1));
+        assertFalse(decoder.isFull());
+        decoder.insertPacket(fragments.get(2));
+        assertTrue(decoder.isFull());
+
+        OBDDataInfo fresh = new OBDDataInfo();
+        for (byte[] fragment : fragments)
+            fresh.insertPacket(fragment);
+        assertEquals(ProtocolOneDecodeTest.describe(fresh.getGeoData()),
+                ProtocolOneDecodeTest.describe(decoder.getGeoData()));
+    }
+
+    @Test
+    public void duplicateFragmentsCountOnce() {
+        List<byte[]> fragments = ProtocolFrames.split(new byte[60], 20);
+        assertEquals(4, fragments.size());
+        OBDDataInfo decoder = new OBDDataInfo();
+        decoder.insertPacket(fragments.get(0));
+        decoder.insertPacket(fragments.get(1));
+        decoder.insertPacket(fragments.get(1));
+        decoder.insertPacket(fragments.get(2));
+        assertFalse(decoder.isFull());
+        decoder.insertPacket(fragments.get(3));
+        assertTrue(decoder.isFull());
+    }
+
+    @Test
+    public void protocolZeroFrameHasSevenPackets() {
+        OBDDataInfo decoder = new OBDDataInfo();
+        for (int i = 0; i < 7; i++) {
+            assertFalse(decoder.isFull());
+            byte[] packet = new byte[20];
+            packet[OBDDataInfo.PACKET_COUNT_OFFSET] = (byte) i;
+            packet[1] = '-';
+            decoder.insertPacket(packet);
+        }
+        assertEquals(0, decoder.getProtocolId().intValue());
+        assertTrue(decoder.isFull());
+    }
+}
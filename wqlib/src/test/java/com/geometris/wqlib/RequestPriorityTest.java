@@ -0,0 +1,102 @@
+package com.geometris.wqlib;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks the order in which RequestQueue starts operations of different priority classes.
+ */
+public class RequestPriorityTest {
+
+    private static final long MAX_WAIT = WQSmartService.MAX_QUEUE_WAIT;
+    private static final UUID DATA_POINT = WQSmartService.WQSmartUuid.OBD_WQ_DATA_POINT.getUuid();
+    private static final UUID DEVICE_ADDRESS = WQSmartService.WQSmartUuid.OBD_DEVICE_ADDRESS.getUuid();
+    private static final UUID SERIAL_NUMBER = WQSmartService.WQSmartUuid.SERIAL_NUMBER.getUuid();
+
+    private final RequestQueue queue = new RequestQueue(MAX_WAIT);
+
+    @Test
+    public void defaultClassDependsOnOperation() {
+        assertEquals(RequestPriority.CONTROL, RequestQueue.defaultPriority(RequestQueueTest.notification(new byte[]{1})));
+        assertEquals(RequestPriority.CONTROL, RequestQueue.defaultPriority(
+                RequestQueueTest.write(BaseRequest.WRITE_APP_IDENTIFIER, DATA_POINT, new byte[]{0x01, 0x02})));
+        assertEquals(RequestPriority.INTERACTIVE, RequestQueue.defaultPriority(
+                RequestQueueTest.write(BaseRequest.PURGE_UDEVENTS, DATA_POINT, new byte[]{0x03, 0x01})));
+        assertEquals(RequestPriority.BACKGROUND, RequestQueue.defaultPriority(
+                RequestQueueTest.read(BaseRequest.REQUEST_DEVICE_ADDRESS, DEVICE_ADDRESS)));
+    }
+
+    @Test
+    public void higherClassesStartFirst() {
+        WQSmartRequest read = RequestQueueTest.read(BaseRequest.REQUEST_DEVICE_ADDRESS, DEVICE_ADDRESS);
+        WQSmartRequest purge = RequestQueueTest.write(BaseRequest.PURGE_UDEVENTS, DATA_POINT, new byte[]{0x03, 0x01});
+        WQSmartRequest notification = RequestQueueTest.notification(new byte[]{1});
+        queue.offer(read, RequestPriority.DEFAULT, 0);
+        queue.offer(purge, RequestPriority.DEFAULT, 0);
+        queue.offer(notification, RequestPriority.DEFAULT, 0);
+
+        assertSame(notification, queue.peek(0));
+        assertSame(notification, queue.poll(0));
+        assertSame(purge, queue.poll(0));
+        assertSame(read, queue.poll(0));
+        assertNull(queue.poll(0));
+        assertEquals(RequestPriority.BACKGROUND, read.priority);
+    }
+
+    @Test
+    public void explicitClassOverridesDefault() {
+        WQSmartRequest read = RequestQueueTest.read(BaseRequest.REQUEST_DEVICE_ADDRESS, DEVICE_ADDRESS);
+        WQSmartRequest purge = RequestQueueTest.write(BaseRequest.PURGE_UDEVENTS, DATA_POINT, new byte[]{0x03, 0x01});
+        queue.offer(purge, RequestPriority.DEFAULT, 0);
+        queue.offer(read, RequestPriority.CONTROL, 0);
+
+        assertSame(read, queue.poll(0));
+        assertEquals(RequestPriority.CONTROL, read.priority);
+        assertSame(purge, queue.poll(0));
+    }
+
+    @Test
+    public void sameClassKeepsQueueOrder() {
+        WQSmartRequest first = RequestQueueTest.read(BaseRequest.REQUEST_DEVICE_ADDRESS, DEVICE_ADDRESS);
+        WQSmartRequest second = RequestQueueTest.read(BaseRequest.REQUEST_DEVICE_ADDRESS, SERIAL_NUMBER);
+        queue.offer(first, RequestPriority.BACKGROUND, 0);
+        queue.offer(second, RequestPriority.BACKGROUND, 0);
+
+        assertSame(first, queue.poll(0));
+        assertSame(second, queue.poll(0));
+        assertEquals(first.sequence + 1, second.sequence);
+    }
+
+    @Test
+    public void waitingOperationIsNotStarved() {
+        WQSmartRequest read = RequestQueueTest.read(BaseRequest.REQUEST_DEVICE_ADDRESS, DEVICE_ADDRESS);
+        queue.offer(read, RequestPriority.BACKGROUND, 0);
+        WQSmartRequest purge = RequestQueueTest.write(BaseRequest.PURGE_UDEVENTS, DATA_POINT, new byte[]{0x03, 0x01});
+        queue.offer(purge, RequestPriority.INTERACTIVE, MAX_WAIT - 1);
+
+        // Just before its deadline the read still waits; once it is reached the read goes first.
+        assertSame(purge, queue.peek(MAX_WAIT - 1));
+        assertSame(read, queue.poll(MAX_WAIT));
+        assertSame(purge, queue.poll(MAX_WAIT));
+    }
+
+    @Test
+    public void lowestLateClassGoesFirst() {
+        WQSmartRequest read = RequestQueueTest.read(BaseRequest.REQUEST_DEVICE_ADDRESS, DEVICE_ADDRESS);
+        WQSmartRequest purge = RequestQueueTest.write(BaseRequest.PURGE_UDEVENTS, DATA_POINT, new byte[]{0x03, 0x01});
+        WQSmartRequest notification = RequestQueueTest.notification(new byte[]{1});
+        queue.offer(purge, RequestPriority.INTERACTIVE, 0);
+        queue.offer(read, RequestPriority.BACKGROUND, 10);
+        queue.offer(notification, RequestPriority.CONTROL, 2 * MAX_WAIT);
+
+        long now = 2 * MAX_WAIT;
+        assertSame(read, queue.poll(now));
+        assertSame(purge, queue.poll(now));
+        assertSame(notification, queue.poll(now));
+    }
+}
@@ -0,0 +1,194 @@
+package com.geometris.wqlib;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how RequestQueue merges redundant GATT operations.
+ */
+public class RequestQueueTest {
+
+    private static final UUID SERVICE = WQSmartService.WQSmartUuid.OBD_SERVICE.getUuid();
+    private static final UUID DATA_POINT = WQSmartService.WQSmartUuid.OBD_WQ_DATA_POINT.getUuid();
+    private static final UUID DEVICE_ADDRESS = WQSmartService.WQSmartUuid.OBD_DEVICE_ADDRESS.getUuid();
+    private static final UUID MEASUREMENT = WQSmartService.WQSmartUuid.OBD_MEASUREMENT.getUuid();
+    private static final byte[] START = {0x02, 0x01};
+    private static final byte[] STOP = {0x02, 0x00};
+
+    private final RequestQueue queue = new RequestQueue(WQSmartService.MAX_QUEUE_WAIT);
+
+    @Test
+    public void identicalReadsOfAnyPriorityAreMerged() {
+        WQSmartRequest background = read(BaseRequest.REQUEST_DEVICE_ADDRESS, DEVICE_ADDRESS);
+        WQSmartRequest interactive = read(BaseRequest.REQUEST_DEVICE_ADDRESS, DEVICE_ADDRESS);
+        queue.offer(background, RequestPriority.BACKGROUND, 0);
+        queue.offer(interactive, RequestPriority.INTERACTIVE, 0);
+
+        assertSame(interactive, queue.poll(0));
+        assertEquals(1, interactive.merged);
+        assertNull(queue.poll(0));
+    }
+
+    @Test
+    public void readsForOtherCallersOrCharacteristicsAreKept() {
+        WQSmartRequest first = read(BaseRequest.REQUEST_DEVICE_ADDRESS, DEVICE_ADDRESS);
+        WQSmartRequest otherId = read(BaseRequest.OBD_MEASUREMENT, DEVICE_ADDRESS);
+        WQSmartRequest otherCharacteristic = read(BaseRequest.REQUEST_DEVICE_ADDRESS, MEASUREMENT);
+        queue.offer(first, RequestPriority.DEFAULT, 0);
+        queue.offer(otherId, RequestPriority.DEFAULT, 0);
+        queue.offer(otherCharacteristic, RequestPriority.DEFAULT, 0);
+
+        assertSame(first, queue.poll(0));
+        assertSame(otherId, queue.poll(0));
+        assertSame(otherCharacteristic, queue.poll(0));
+        assertEquals(0, first.merged + otherId.merged + otherCharacteristic.merged);
+    }
+
+    @Test
+    public void repeatedCommandsAreMergedUntilAnotherCommand() {
+        WQSmartRequest first = write(BaseRequest.REQUEST_START_UDEVENTS, DATA_POINT, START);
+        WQSmartRequest repeated = write(BaseRequest.REQUEST_START_UDEVENTS, DATA_POINT, START);
+        WQSmartRequest stop = write(BaseRequest.REQUEST_STOP_UDEVENTS, DATA_POINT, STOP);
+        WQSmartRequest restart = write(BaseRequest.REQUEST_START_UDEVENTS, DATA_POINT, START);
+        queue.offer(first, RequestPriority.DEFAULT, 0);
+        queue.offer(repeated, RequestPriority.DEFAULT, 0);
+        queue.offer(stop, RequestPriority.DEFAULT, 0);
+        queue.offer(restart, RequestPriority.DEFAULT, 0);
+
+        // The command after a different one is kept, or the device would end up in the wrong state.
+        assertSame(first, queue.poll(0));
+        assertEquals(1, first.merged);
+        assertSame(stop, queue.poll(0));
+        assertSame(restart, queue.poll(0));
+        assertEquals(0, restart.merged);
+        assertNull(queue.poll(0));
+    }
+
+    @Test
+    public void commandsOfOtherPrioritiesOrCharacteristicsAreKept() {
+        WQSmartRequest interactive = write(BaseRequest.REQUEST_START_UDEVENTS, DATA_POINT, START);
+        WQSmartRequest background = write(BaseRequest.REQUEST_START_UDEVENTS, DATA_POINT, START);
+        WQSmartRequest other = write(BaseRequest.REQUEST_START_UDEVENTS, MEASUREMENT, START);
+        WQSmartRequest otherAgain = write(BaseRequest.REQUEST_START_UDEVENTS, MEASUREMENT, START);
+        queue.offer(interactive, RequestPriority.INTERACTIVE, 0);
+        queue.offer(background, RequestPriority.BACKGROUND, 0);
+        queue.offer(other, RequestPriority.INTERACTIVE, 0);
+        queue.offer(otherAgain, RequestPriority.INTERACTIVE, 0);
+
+        assertSame(interactive, queue.poll(0));
+        assertSame(other, queue.poll(0));
+        assertSame(otherAgain, queue.poll(0));
+        assertSame(background, queue.poll(0));
+        assertEquals(0, interactive.merged + other.merged + otherAgain.merged + background.merged);
+    }
+
+    @Test
+    public void notificationRequestIsSupersededByLaterOne() {
+        WQSmartRequest enable = notification(new byte[]{1});
+        WQSmartRequest read = read(BaseRequest.REQUEST_DEVICE_ADDRESS, DEVICE_ADDRESS);
+        WQSmartRequest disable = notification(new byte[]{0});
+        WQSmartRequest enableAgain = notification(new byte[]{1});
+        queue.offer(enable, RequestPriority.DEFAULT, 0);
+        queue.offer(read, RequestPriority.DEFAULT, 0);
+        queue.offer(disable, RequestPriority.DEFAULT, 0);
+        queue.offer(enableAgain, RequestPriority.DEFAULT, 0);
+
+        // Only the last state asked for is written, answering the requests it replaced too.
+        assertSame(enableAgain, queue.poll(0));
+        assertEquals(2, enableAgain.merged);
+        assertSame(read, queue.poll(0));
+        assertNull(queue.poll(0));
+    }
+
+    @Test
+    public void takeMergesLikePoll() {
+        WQSmartRequest enable = notification(new byte[]{1});
+        WQSmartRequest first = read(BaseRequest.REQUEST_DEVICE_ADDRESS, DEVICE_ADDRESS);
+        WQSmartRequest repeated = read(BaseRequest.REQUEST_DEVICE_ADDRESS, DEVICE_ADDRESS);
+        WQSmartRequest disable = notification(new byte[]{0});
+        queue.offer(enable, RequestPriority.DEFAULT, 0);
+        queue.offer(first, RequestPriority.DEFAULT, 0);
+        queue.offer(repeated, RequestPriority.DEFAULT, 0);
+        queue.offer(disable, RequestPriority.DEFAULT, 0);
+
+        // A superseded operation is dropped rather than started, and one taken twice is started once.
+        assertSame(enable, queue.peek(0));
+        assertFalse(queue.take(enable));
+        assertSame(disable, queue.peek(0));
+        assertTrue(queue.take(disable));
+        assertEquals(1, disable.merged);
+        assertSame(first, queue.peek(0));
+        assertTrue(queue.take(first));
+        assertFalse(queue.take(first));
+        assertEquals(1, first.merged);
+        assertNull(queue.peek(0));
+    }
+
+    @Test
+    public void batchStepsAreNeverMerged() {
+        WQSmartRequest read = read(BaseRequest.REQUEST_DEVICE_ADDRESS, DEVICE_ADDRESS);
+        WQSmartRequest step = read(BaseRequest.REQUEST_DEVICE_ADDRESS, DEVICE_ADDRESS);
+        step.batchHandle = 7;
+        WQSmartRequest start = write(BaseRequest.REQUEST_START_UDEVENTS, DATA_POINT, START);
+        WQSmartRequest startStep = write(BaseRequest.REQUEST_START_UDEVENTS, DATA_POINT, START);
+        startStep.batchHandle = 7;
+        queue.offer(read, RequestPriority.INTERACTIVE, 0);
+        queue.offer(step, RequestPriority.INTERACTIVE, 0);
+        queue.offer(start, RequestPriority.INTERACTIVE, 0);
+        queue.offer(startStep, RequestPriority.INTERACTIVE, 0);
+
+        assertSame(read, queue.poll(0));
+        assertSame(step, queue.poll(0));
+        assertSame(start, queue.poll(0));
+        assertSame(startStep, queue.poll(0));
+        assertEquals(0, read.merged + step.merged + start.merged + startStep.merged);
+    }
+
+    @Test
+    public void removeBatchDropsOnlyItsSteps() {
+        WQSmartRequest purge = write(BaseRequest.PURGE_UDEVENTS, DATA_POINT, new byte[]{0x03, 0x01});
+        purge.batchHandle = 7;
+        WQSmartRequest otherBatch = read(BaseRequest.REQUEST_DEVICE_ADDRESS, DEVICE_ADDRESS);
+        otherBatch.batchHandle = 8;
+        WQSmartRequest single = read(BaseRequest.OBD_MEASUREMENT, MEASUREMENT);
+        queue.offer(purge, RequestPriority.DEFAULT, 0);
+        queue.offer(otherBatch, RequestPriority.DEFAULT, 0);
+        queue.offer(single, RequestPriority.DEFAULT, 0);
+
+        assertEquals(1, queue.removeBatch(7));
+        assertEquals(0, queue.removeBatch(7));
+        assertSame(otherBatch, queue.poll(0));
+        assertSame(single, queue.poll(0));
+        assertNull(queue.poll(0));
+    }
+
+    @Test
+    public void clearRemovesEveryOperation() {
+        queue.offer(notification(new byte[]{1}), RequestPriority.DEFAULT, 0);
+        queue.offer(read(BaseRequest.REQUEST_DEVICE_ADDRESS, DEVICE_ADDRESS), RequestPriority.DEFAULT, 0);
+        queue.clear();
+        assertNull(queue.peek(0));
+        assertNull(queue.poll(0));
+    }
+
+    static WQSmartRequest read(int requestId, UUID characteristic) {
+        return new WQSmartRequest(WQSmartRequest.RequestType.READ_CHARACTERISTIC, requestId, SERVICE, characteristic, null);
+    }
+
+    static WQSmartRequest write(int requestId, UUID characteristic, byte[] value) {
+        return new WQSmartRequest(WQSmartRequest.RequestType.WRITE_CHARACTERISTIC, requestId, SERVICE, characteristic,
+                null, value);
+    }
+
+    static WQSmartRequest notification(byte[] value) {
+        return new WQSmartRequest(WQSmartRequest.RequestType.CHARACTERISTIC_NOTIFICATION, BaseRequest.OBD_MEASUREMENT,
+                SERVICE, MEASUREMENT, null, value);
+    }
+}
@@ -0,0 +1,164 @@
+package com.geometris.wqlib;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks the payload lengths of TagRegistry and how the decoder skips tags by them.
+ */
+public class TagRegistryTest {
+
+    private static final int UNKNOWN_TAG = 0x40;
+    private static final int ODOMETER = 0x02;
+    private static final int COUNTED_TAG = 0x0F;
+
+    @After
+    public void tearDown() {
+        TagRegistry.unregister(UNKNOWN_TAG);
+        TagRegistry.unregister(ODOMETER);
+    }
+
+    @Test
+    public void builtinLengths() {
+        int[] lengths = new int[256];
+        TagRegistry.copyTo(lengths, new TagHandler[256]);
+        assertEquals(TagHandler.COUNTED_PAYLOAD, lengths[0x01]);
+        assertEquals(TagHandler.COUNTED_PAYLOAD, lengths[COUNTED_TAG]);
+        assertEquals(TagRegistry.DEFAULT_PAYLOAD_LENGTH, lengths[ODOMETER]);
+        assertEquals(TagRegistry.DEFAULT_PAYLOAD_LENGTH, lengths[UNKNOWN_TAG]);
+        assertEquals(TagRegistry.DEFAULT_PAYLOAD_LENGTH, lengths[0xFF]);
+    }
+
+    @Test
+    public void unregisterRestoresBuiltinLength() {
+        TagHandler handler = new RecordingHandler();
+        int version = TagRegistry.version();
+        TagRegistry.register(UNKNOWN_TAG, 6, handler);
+        assertNotEquals(version, TagRegistry.version());
+
+        int[] lengths = new int[256];
+        TagHandler[] handlers = new TagHandler[256];
+        TagRegistry.copyTo(lengths, handlers);
+        assertEquals(6, lengths[UNKNOWN_TAG]);
+        assertSame(handler, handlers[UNKNOWN_TAG]);
+
+        TagRegistry.unregister(UNKNOWN_TAG);
+        handlers = new TagHandler[256];
+        TagRegistry.copyTo(lengths, handlers);
+        assertEquals(TagRegistry.DEFAULT_PAYLOAD_LENGTH, lengths[UNKNOWN_TAG]);
+        assertNull(handlers[UNKNOWN_TAG]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidTag() {
+        TagRegistry.register(256, 4, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidLength() {
+        TagRegistry.register(UNKNOWN_TAG, -2, null);
+    }
+
+    @Test
+    public void skipsCountedAndUnknownTags() {
+        ByteArrayOutputStream out = frameStart();
+        // Counted payload: tag, count 3, then 3 words, 4 + 3 * 2 bytes in all.
+        writeWord(out, COUNTED_TAG);
+        writeWord(out, 3);
+        for (int i = 0; i < 3; i++)
+            writeWord(out, 0x0202);
+        // Unknown tag, one 32-bit value by default.
+        writeWord(out, UNKNOWN_TAG);
+        ProtocolFrames.writeSwapped(out, 0x02020202);
+        writeWord(out, ODOMETER);
+        ProtocolFrames.writeSwapped(out, 12345);
+
+        assertEquals(12345.0, decode(out.toByteArray()).getDouble(GeoSample.ODOMETER), 0);
+    }
+
+    @Test
+    public void registeredLengthAndHandlerAreUsed() {
+        RecordingHandler handler = new RecordingHandler();
+        TagRegistry.register(UNKNOWN_TAG, 6, handler);
+        ByteArrayOutputStream out = frameStart();
+        writeWord(out, UNKNOWN_TAG);
+        writeWord(out, 0x55);
+        ProtocolFrames.writeSwapped(out, 777);
+        writeWord(out, ODOMETER);
+        ProtocolFrames.writeSwapped(out, 12345);
+
+        assertEquals(12345.0, decode(out.toByteArray()).getDouble(GeoSample.ODOMETER), 0);
+        assertEquals(UNKNOWN_TAG, handler.tag);
+        assertEquals(0x55, handler.value);
+    }
+
+    @Test
+    public void registeringWithoutHandlerSkipsBuiltinTag() {
+        TagRegistry.register(ODOMETER, 4, null);
+        ByteArrayOutputStream out = frameStart();
+        writeWord(out, ODOMETER);
+        ProtocolFrames.writeSwapped(out, 12345);
+
+        assertFalse(decode(out.toByteArray()).has(GeoSample.ODOMETER));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void handlerWrittenForGeoDataStillDecodes() {
+        TagRegistry.register(UNKNOWN_TAG, 4, new TagHandler() {
+            @Override
+            public void decode(int tag, FrameCursor payload, GeoData geoData) {
+                geoData.setFuelLevel((double) payload.readSwappedUint32());
+            }
+        });
+        ByteArrayOutputStream out = frameStart();
+        writeWord(out, ODOMETER);
+        ProtocolFrames.writeSwapped(out, 12345);
+        writeWord(out, UNKNOWN_TAG);
+        ProtocolFrames.writeSwapped(out, 61);
+
+        GeoSample sample = decode(out.toByteArray());
+        assertEquals(61.0, sample.getDouble(GeoSample.FUEL_LEVEL), 0);
+        assertEquals(12345.0, sample.getDouble(GeoSample.ODOMETER), 0);
+    }
+
+    private static ByteArrayOutputStream frameStart() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // The two leading bytes skipped by the decoder.
+        writeWord(out, 0);
+        return out;
+    }
+
+    private static void writeWord(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xFF);
+        out.write((value >> 8) & 0xFF);
+    }
+
+    private static GeoSample decode(byte[] payload) {
+        OBDDataInfo decoder = new OBDDataInfo();
+        List<byte[]> fragments = ProtocolFrames.split(payload, WherequbeModel.BLE_NUS_MAX_DATA_LEN);
+        for (byte[] fragment : fragments)
+            decoder.insertPacket(fragment);
+        return decoder.getGeoSample();
+    }
+
+    private static class RecordingHandler implements TagHandler {
+        int tag = -1;
+        int value = -1;
+
+        @Override
+        public void decode(int tag, FrameCursor payload, GeoSample sample) {
+            this.tag = tag;
+            this.value = payload.readUint8();
+        }
+    }
+}
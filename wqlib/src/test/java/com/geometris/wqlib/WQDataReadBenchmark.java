@@ -0,0 +1,114 @@
+package com.geometris.wqlib;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Times the primitive readers of WQData against the boxed getIntValue() path they replace, read into a double
+ * as the decoder does.
+ * <p>
+ * Skipped by default, run with {@code ./gradlew :wqlib:testDebugUnitTest -Pbenchmark --tests '*Benchmark'}.
+ * Prints the median time of a round over the test data for each reader; the figures only compare readers run on
+ * the same machine.
+ */
+public class WQDataReadBenchmark {
+
+    private static final int VALUES = 4096;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 30;
+
+    private final byte[] data = new byte[VALUES * 4];
+    private double sink;
+
+    @Before
+    public void setUp() {
+        assumeTrue("benchmarks are run with -Pbenchmark", Boolean.getBoolean("wqlib.benchmark"));
+        new Random(42).nextBytes(data);
+    }
+
+    @Test
+    public void readUint32() {
+        report("getIntValue(FORMAT_UINT32)", time(this::boxedUint32));
+        report("getUint32", time(this::primitiveUint32));
+    }
+
+    @Test
+    public void readSwappedUint32() {
+        report("fixUint32Endian + getIntValue(FORMAT_UINT32)", time(this::boxedSwappedUint32));
+        report("getSwappedUint32", time(this::primitiveSwappedUint32));
+    }
+
+    @Test
+    public void readSint16() {
+        report("getIntValue(FORMAT_SINT16)", time(this::boxedSint16));
+        report("getSint16", time(this::primitiveSint16));
+    }
+
+    private double boxedUint32() {
+        double sum = 0;
+        for (int offset = 0; offset < data.length; offset += 4)
+            sum += (double) WQData.getIntValue(WQData.FORMAT_UINT32, offset, data);
+        return sum;
+    }
+
+    private double primitiveUint32() {
+        double sum = 0;
+        for (int offset = 0; offset < data.length; offset += 4)
+            sum += (double) WQData.getUint32(offset, data);
+        return sum;
+    }
+
+    private double boxedSwappedUint32() {
+        double sum = 0;
+        for (int offset = 0; offset < data.length; offset += 4)
+            sum += (double) WQData.getIntValue(WQData.FORMAT_UINT32, 0, WQData.fixUint32Endian(data, offset));
+        return sum;
+    }
+
+    private double primitiveSwappedUint32() {
+        double sum = 0;
+        for (int offset = 0; offset < data.length; offset += 4)
+            sum += (double) WQData.getSwappedUint32(offset, data);
+        return sum;
+    }
+
+    private double boxedSint16() {
+        double sum = 0;
+        for (int offset = 0; offset < data.length; offset += 2)
+            sum += (double) WQData.getIntValue(WQData.FORMAT_SINT16, offset, data);
+        return sum;
+    }
+
+    private double primitiveSint16() {
+        double sum = 0;
+        for (int offset = 0; offset < data.length; offset += 2)
+            sum += (double) WQData.getSint16(offset, data);
+        return sum;
+    }
+
+    // Median time of a round over the whole data, in nanoseconds.
+    private long time(Reader reader) {
+        long[] samples = new long[ROUNDS];
+        for (int round = -WARMUP_ROUNDS; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            sink += reader.read();
+            if (round >= 0)
+                samples[round] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+        return samples[ROUNDS / 2];
+    }
+
+    private void report(String name, long nanos) {
+        System.out.println(name + ": " + nanos + " ns for " + data.length + " bytes (" + sink + ")");
+    }
+
+    private interface Reader {
+        double read();
+    }
+}
@@ -0,0 +1,150 @@
+package com.geometris.wqlib;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the primitive readers of WQData against the boxed getIntValue() and fixUint32Endian() they replace,
+ * and the SFLOAT and FLOAT conversions against exact decimal arithmetic.
+ */
+public class WQDataTest {
+
+    private static final byte[] EDGES = {
+            0x00, 0x00, 0x00, 0x00,
+            (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+            (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x7F,
+            (byte) 0x80, 0x00, 0x00, (byte) 0x80,
+            0x01, (byte) 0x80, 0x7F, 0x00
+    };
+
+    @Test
+    public void readsEdgeValues() {
+        assertEquals(0xFF, WQData.getUint8(4, EDGES));
+        assertEquals(-1, WQData.getSint8(4, EDGES));
+        assertEquals(0xFFFF, WQData.getUint16(4, EDGES));
+        assertEquals(-1, WQData.getSint16(4, EDGES));
+        assertEquals(0xFFFFFFFFL, WQData.getUint32(4, EDGES));
+        assertEquals(-1, WQData.getSint32(4, EDGES));
+        assertEquals(0x7FFFFFFF, WQData.getSint32(8, EDGES));
+        assertEquals(0x80000080L, WQData.getUint32(12, EDGES));
+        assertEquals(0x8001, WQData.getUint16(16, EDGES));
+        assertEquals(-32767, WQData.getSint16(16, EDGES));
+    }
+
+    @Test
+    public void matchesBoxedReaders() {
+        Random random = new Random(3);
+        byte[] value = new byte[64];
+        random.nextBytes(value);
+        for (int offset = 0; offset + 4 <= value.length; offset++) {
+            assertEquals(WQData.getIntValue(WQData.FORMAT_UINT8, offset, value).intValue(), WQData.getUint8(offset, value));
+            assertEquals(WQData.getIntValue(WQData.FORMAT_SINT8, offset, value).intValue(), WQData.getSint8(offset, value));
+            assertEquals(WQData.getIntValue(WQData.FORMAT_UINT16, offset, value).intValue(), WQData.getUint16(offset, value));
+            assertEquals(WQData.getIntValue(WQData.FORMAT_SINT16, offset, value).intValue(), WQData.getSint16(offset, value));
+            assertEquals(WQData.getIntValue(WQData.FORMAT_SINT32, offset, value).intValue(), WQData.getSint32(offset, value));
+            assertEquals(WQData.getIntValue(WQData.FORMAT_UINT32, offset, value) & 0xFFFFFFFFL, WQData.getUint32(offset, value));
+            // getIntValue() has always matched the baseline, which the decoders rely on.
+            assertEquals(com.geometris.wqlib.baseline.WQData.getIntValue(WQData.FORMAT_SINT32, offset, value),
+                    WQData.getIntValue(WQData.FORMAT_SINT32, offset, value));
+        }
+    }
+
+    @Test
+    public void swappedReadersMatchFixUint32Endian() {
+        Random random = new Random(5);
+        byte[] value = new byte[64];
+        random.nextBytes(value);
+        for (int offset = 0; offset + 4 <= value.length; offset++) {
+            byte[] fixed = com.geometris.wqlib.baseline.WQData.fixUint32Endian(value, offset);
+            assertArrayEquals(fixed, WQData.fixUint32Endian(value, offset));
+            assertEquals(WQData.getUint32(0, fixed), WQData.getSwappedUint32(offset, value));
+            assertEquals(WQData.getSint32(0, fixed), WQData.getSwappedSint32(offset, value));
+        }
+    }
+
+    @Test
+    public void boxedReaderRejectsShortArrays() {
+        assertNull(WQData.getIntValue(WQData.FORMAT_UINT32, 17, EDGES));
+        assertNull(WQData.getIntValue(WQData.FORMAT_SFLOAT, 0, EDGES));
+    }
+
+    @Test
+    public void convertsEverySFloat() {
+        byte[] value = new byte[2];
+        for (int raw = 0; raw <= 0xFFFF; raw++) {
+            value[0] = (byte) raw;
+            value[1] = (byte) (raw >> 8);
+            int exponent = (raw << 16) >> 28;
+            int mantissa = (raw << 20) >> 20;
+            float converted = WQData.getSFloat(0, value);
+            if (exponent == 0 && mantissa == 0x07FE) {
+                assertEquals(Float.POSITIVE_INFINITY, converted, 0);
+            } else if (exponent == 0 && (mantissa == 0x07FF || mantissa == -0x0800 || mantissa == -0x07FF)) {
+                // NaN, NRes and the reserved value.
+                assertTrue("raw " + raw, Float.isNaN(converted));
+            } else if (exponent == 0 && mantissa == -0x07FE) {
+                assertEquals(Float.NEGATIVE_INFINITY, converted, 0);
+            } else {
+                assertEquals("raw " + raw, decimal(mantissa, exponent), converted, 0);
+            }
+        }
+    }
+
+    @Test
+    public void convertsFloatsOverTheWholeExponentRange() {
+        Random random = new Random(11);
+        byte[] value = new byte[4];
+        for (int exponent = -128; exponent <= 127; exponent++) {
+            for (int k = 0; k < 200; k++) {
+                int mantissa = k == 0 ? 1 : k == 1 ? -1 : k == 2 ? 0x7FFFFD : random.nextInt(0x1000000) - 0x800000;
+                if (exponent == 0 && mantissa >= 0x7FFFFE || exponent == 0 && mantissa <= -0x7FFFFE)
+                    continue;
+                value[0] = (byte) mantissa;
+                value[1] = (byte) (mantissa >> 8);
+                value[2] = (byte) (mantissa >> 16);
+                value[3] = (byte) exponent;
+                assertEquals(mantissa + "e" + exponent, decimal(mantissa, exponent), WQData.getFloat(0, value), 0);
+            }
+        }
+    }
+
+    @Test
+    public void convertsFloatSpecialValues() {
+        assertEquals(Float.POSITIVE_INFINITY, WQData.getFloat(0, new byte[]{(byte) 0xFE, (byte) 0xFF, 0x7F, 0}), 0);
+        assertTrue(Float.isNaN(WQData.getFloat(0, new byte[]{(byte) 0xFF, (byte) 0xFF, 0x7F, 0})));
+        assertTrue(Float.isNaN(WQData.getFloat(0, new byte[]{0, 0, (byte) 0x80, 0})));
+        assertTrue(Float.isNaN(WQData.getFloat(0, new byte[]{1, 0, (byte) 0x80, 0})));
+        assertEquals(Float.NEGATIVE_INFINITY, WQData.getFloat(0, new byte[]{2, 0, (byte) 0x80, 0}), 0);
+        // The same mantissas with another exponent are plain numbers.
+        assertEquals(decimal(0x7FFFFE, 1), WQData.getFloat(0, new byte[]{(byte) 0xFE, (byte) 0xFF, 0x7F, 1}), 0);
+        assertEquals(decimal(-0x800000, -1), WQData.getFloat(0, new byte[]{0, 0, (byte) 0x80, (byte) 0xFF}), 0);
+    }
+
+    @Test
+    public void convertsValueArrays() {
+        byte[] value = {0x0A, (byte) 0xF0, 0x01, 0x00, (byte) 0xFE, 0x07};
+        float[] out = new float[4];
+        WQData.getSFloatValues(0, value, out, 1, 3);
+        assertEquals(0f, out[0], 0);
+        assertEquals(WQData.getSFloat(0, value), out[1], 0);
+        assertEquals(1f, out[2], 0);
+        assertEquals(Float.POSITIVE_INFINITY, out[3], 0);
+
+        byte[] floats = {0x0A, 0, 0, (byte) 0xFF, 0x05, 0, 0, 0x02};
+        WQData.getFloatValues(0, floats, out, 0, 2);
+        assertEquals(1f, out[0], 0);
+        assertEquals(500f, out[1], 0);
+    }
+
+    // Mantissa times ten to the exponent, rounded once to a float.
+    private static float decimal(int mantissa, int exponent) {
+        return new BigDecimal(mantissa).scaleByPowerOfTen(exponent).floatValue();
+    }
+}
@@ -1,4 +1,4 @@
-package com.geometris.wqlib;
+package com.geometris.wqlib.baseline;
 
 import org.joda.time.DateTime;
 
@@ -11,8 +11,9 @@ import java.util.Map;
 /**
  * Represents vehicle and location data as provided by the Whereqube over bluetooth.
  */
-public class GeoData implements Serializable {
 
+public class GeoData implements Serializable {
+    private Integer protocolId;
     private String vin;
     private Double odometer;     // HiResTotalDistance
     private DateTime odometerTimeStamp;
@@ -22,32 +23,38 @@ public class GeoData implements Serializable {
     private DateTime vehicleSpeedTimestamp;
     private Double engineRpm;    // Engine RPM
     private DateTime engineRpmTimestamp;
+    private Double fuelLevel;    // Fuel Level
+    private DateTime fuelLevelTimestamp;
     private Double latitude;        // Latitude
     private Double longitude;        // Longitude
+    private Double gpsHeading;    // Heading
     private Long gpsTime;
     private DateTime timeStamp;
     private Integer totalUdrvEvents;
     private ArrayList<UnidentifiedEvent> unidentifiedEventArrayList;
     private boolean dataSet =false;
 
-
     /**
      * Constructor.
      * By default, all properties begin with null values,
      * and the unidentified events are empty.
      */
     public GeoData() {
+        protocolId = null;
         vin = null;
-        odometer = null;     // HiResTotalDistance
+        odometer = 0.0;     // HiResTotalDistance
         odometerTimeStamp = null;
-        engTotalHours=null;
+        engTotalHours=0.0;
         engTotalHoursTimestamp = null;
-        vehicleSpeed = null; //vehicle Speed
+        vehicleSpeed = 0.0; //vehicle Speed
         vehicleSpeedTimestamp = null;
-        engineRpm = null;    // Engine RPM
+        engineRpm = 0.0;    // Engine RPM
         engineRpmTimestamp = null;
+        fuelLevel = 0.0;//Fuel Level
+        fuelLevelTimestamp = null;
         latitude = null;        // Latitude
         longitude = null;        // Longitude
+        gpsHeading = null;
         gpsTime = null;
         timeStamp = null;
         totalUdrvEvents = null;
@@ -68,6 +75,23 @@ public class GeoData implements Serializable {
         return this;
     }
 
+    /**
+     * the protocol version
+     * @return the protocol version
+     */
+    public Integer getProtocol() {
+        return this.protocolId;
+    }
+
+    /**
+     * Sets the protocol version to the given parameter.
+     * @param protocol value for the protocol version.
+     */
+    public void setProtocol(Integer protocol) {
+        this.protocolId = protocol;
+        dataSet = true;
+    }
+
     /**
      * The vehicle identification number.
      * @return the vehicle VIN
@@ -121,7 +145,14 @@ public class GeoData implements Serializable {
         dataSet = true;
     }
 
+    public Double getGpsHeading() {
+        return gpsHeading;
+    }
 
+    public void setGpsHeading(Double gpsHeading) {
+        this.gpsHeading = gpsHeading;
+        dataSet = true;
+    }
     /**
      *
      * @return Age of GPS fix, in minutes
@@ -136,7 +167,6 @@ public class GeoData implements Serializable {
         this.gpsTime = gpsTime;
     }
 
-
     /**
      *
      * @return Total engine hours.
@@ -208,6 +238,7 @@ public class GeoData implements Serializable {
         this.odometerTimeStamp= odometerTimestamp;
     }
 
+
     /**
      *
      * @return engine revolutions per minute
@@ -241,6 +272,40 @@ public class GeoData implements Serializable {
         this.engineRpmTimestamp = engineRpmTimestamp;
     }
 
+
+    /**
+     *
+     * @return engine revolutions per minute
+     */
+    public Double getFuelLevel(){
+        return this.fuelLevel;
+    }
+
+    /**
+     * {@link GeoData#getFuelLevel()}
+     * @param fuelLevel value to set fuel level
+     * @return returns this object
+     */
+    public GeoData setFuelLevel(Double fuelLevel){
+        this.fuelLevel = fuelLevel;
+        dataSet = true;
+        return this;
+    }
+
+    /**
+     *
+     * @return gets the Fuel Level timestamp
+     */
+    public DateTime getFuelLevelTimestamp(){ return this.fuelLevelTimestamp;}
+
+    /**
+     * {@link GeoData#getFuelLevelTimestamp()}
+     * @param fuelLevelTimestamp value to set fuel level timestamp
+     */
+    public void setFuelLevelTimestamp(DateTime fuelLevelTimestamp){
+        this.fuelLevelTimestamp = fuelLevelTimestamp;
+    }
+
     /**
      *
      * @return gets the vehicle speed.
@@ -330,14 +395,18 @@ public class GeoData implements Serializable {
      */
     public GeoData copy() {
         GeoData newGeoData = new GeoData();
+        newGeoData.protocolId = this.protocolId;
         newGeoData.vin = this.vin;
         newGeoData.latitude = this.latitude;        // Latitude
         newGeoData.longitude = this.longitude;        // Longitude
+        newGeoData.gpsHeading =  this.gpsHeading;
         newGeoData.gpsTime = this.gpsTime;
         newGeoData.odometer = this.odometer;     // HiResTotalDistance
         newGeoData.odometerTimeStamp = this.odometerTimeStamp;
         newGeoData.engineRpm = this.engineRpm;    // Engine RPM
         newGeoData.engineRpmTimestamp = this.engineRpmTimestamp;
+        newGeoData.fuelLevel = this.fuelLevel;    //Fuel Level
+        newGeoData.fuelLevelTimestamp = this.fuelLevelTimestamp;
         newGeoData.vehicleSpeed = this.vehicleSpeed; //vehicle Speed
         newGeoData.vehicleSpeedTimestamp = this.vehicleSpeedTimestamp;
         newGeoData.timeStamp = this.timeStamp;
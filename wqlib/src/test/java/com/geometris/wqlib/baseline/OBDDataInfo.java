@@ -1,90 +1,67 @@
-package com.geometris.wqlib;
+package com.geometris.wqlib.baseline;
+
 
-import android.bluetooth.BluetoothGattCharacteristic;
-import android.os.Bundle;
-import android.os.Message;
-import android.os.ParcelUuid;
 import android.util.Log;
 
 import org.joda.time.DateTime;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Locale;
 import java.util.Set;
 
 /**
- * Buffer of vehicle data used by the WQSmartService class,
- * to translate raw data from the device into easily accessible
- * data about the vehicle, location, etc.
- * Handles two protocol versions of data arriving from the Whereqube
- * Not to be used outside of the WQSmartService class.
+ * Created by bipin_2 on 1/25/2018.
  */
+
 public class OBDDataInfo {
-    public static final String TAG ="GeometrisManager";
+    public static final String TAG ="Geometris";
     public static final int PACKET_COUNT_OFFSET = 0, PACKET_IDENTIFIER=1,PROTOCOL_IDENTIFIER = 2,TOTAL_PACKET_INDEX=3;
+
     public GeoData geoData = null;
+    private static final long RPM_MAX_AGE_IN_MILLIS= 30000; //30 seconds
+    private static final Double RPM_THRESHOLD= 200.00; //30 seconds
+    private static Double prevEngineRpm=0.0;
+    private static DateTime prevEngineRpmTimestamp = DateTime.now();
     private Byte protocolId;
     private Byte totalPacket;
     private Set<Byte> pi;
     private HashMap<Byte, byte[]> packetList;
-    //private ArrayList<Byte> pi;
-    // private ArrayList<byte[]> packetList;
     private boolean complete;
     StringBuilder VINsb = new StringBuilder();
 
     public OBDDataInfo() {
-        //  this.pi = new ArrayList<Byte>();
         this.pi = new HashSet<>();
         this.protocolId = -1;
         this.totalPacket=0;
-        //this.packetList = new ArrayList<byte[]>();
         this.packetList = new HashMap<>();
         this.geoData = new GeoData();
         this.complete = false;
     }
-
-    /**
-     *
-     * @param protocolId specifies protocol version of interpreting and handling messages
-     */
-    public void setProtocolId(Byte protocolId){
+    private void setProtocolId(Byte protocolId){
         this.protocolId = protocolId;
         if(protocolId==0){
             this.totalPacket=7;
         }
 
     }
+    private boolean is_RPM_Active(){
+        if(prevEngineRpm < RPM_THRESHOLD || ((DateTime.now().getMillis()-prevEngineRpmTimestamp.getMillis())>RPM_MAX_AGE_IN_MILLIS)){
+            return false;
+        }
+        return true;
+    }
 
-    /**
-     *
-     * @return current protocol describing message format and handling logic
-     */
     public Byte getProtocolId(){
         return protocolId;
     }
-
-
-    /**
-     *
-     * @param totalPacket value for total packet buffer size
-     */
-    public void setTotalPacket(Byte totalPacket){
+    private void setTotalPacket(Byte totalPacket){
         this.totalPacket = totalPacket;
     }
-
-    /**
-     *
-     * @return how many can fit in the buffer
-     */
     public Byte getTotalPacket(){ return this.totalPacket; }
 
-    /**
-     *
-     * @return returns true if there is no more room to add further packets.
-     */
     public boolean isFull() {
         if(totalPacket>0) {
             if (protocolId == 0)
@@ -95,10 +72,6 @@ public class OBDDataInfo {
         return false;
     }
 
-    /**
-     * Adds a packet to the end of the buffer
-     * @param value packet to buffer
-     */
     public void insertPacket(byte[] value)
     {
         if(value.length<=0) return;
@@ -113,6 +86,8 @@ public class OBDDataInfo {
         logString = new String(sb);
         Log.d(TAG, logString + "\r\n");
 
+        if(packet_count> 0 && pi.isEmpty())
+            return;
         if(packet_count ==0 )
         {
             if(value.length>1 && value[PACKET_IDENTIFIER] == (byte) 0xCB)
@@ -130,31 +105,15 @@ public class OBDDataInfo {
         insertPacket(packet_count, value);
 
     }
-
-    /**
-     *
-     * @param index index value
-     */
-    public void insertIndex(Byte index) {
+    private void insertIndex(Byte index) {
         pi.add(index);
     }
-
-    /**
-     * Add packet to the buffer
-     * @param index packet index
-     * @param packet packet content
-     */
-    public void insertPacket(Byte index, byte[] packet){
+    private void insertPacket(Byte index, byte[] packet){
         packetList.put(index, packet);
    }
+    private HashMap<Byte, byte[]> getPacketList(){ return packetList;};
 
-    /**
-     *
-     * @return current packet list.
-     */
-    public HashMap<Byte, byte[]> getPacketList(){ return packetList;};
-
-    public void insertVIN(Byte index, String data) {
+    private void insertVIN(Byte index, String data) {
         if (index == 0) {
             if (data.length() > 0)
                 VINsb.insert(0, data);
@@ -171,10 +130,22 @@ public class OBDDataInfo {
     }
 
     /**
-     * Reads the buffered packets to create easy access to the information
-     * in a GeoData object
-     * @return Packet data translated into a GeoData object
+     * For Compatibility with older version of firmware.
+     * @param RPM
+     * @param rpmTime
      */
+    private void setRPM(double RPM, DateTime rpmTime){
+        if(RPM !=-1) {
+            geoData.setEngineRPM(RPM);
+            prevEngineRpm = RPM;
+            prevEngineRpmTimestamp=rpmTime;
+        }
+        else
+        {
+            if(is_RPM_Active())
+                geoData.setEngineRPM(prevEngineRpm);
+        }
+    }
     public GeoData getGeoData()
     {
         if(!isFull())
@@ -183,9 +154,11 @@ public class OBDDataInfo {
         geoData.setTimeStamp(now);
         DateTimeFormatter formatter = DateTimeFormat.forPattern("HH:mm:ss");
         HashMap<Byte, byte[]> packets = getPacketList();
+        geoData.setProtocol( getProtocolId().intValue());
+        StringBuilder sb = new StringBuilder();
 
-        // PROTOCOL ZERO
         if(getProtocolId()==0){
+
             Byte ind = 0, totalPacket = getTotalPacket();
 
             while(ind<totalPacket){
@@ -203,16 +176,15 @@ public class OBDDataInfo {
                                         1, packet);
                         if(odometer != -1) {
                             geoData.setOdometer(odometer);
-                            geoData.setOdometerTimestamp(now);
                         }
 
+                        geoData.setOdometerTimestamp(now);
                         double RPM =
                                 (double) WQData.getIntValue(WQData.FORMAT_UINT32,
                                         5,packet);
-                        if(RPM !=-1) {
-                            geoData.setEngineRPM(RPM);
-                            geoData.setEngineRpmTimestamp(now);
-                        }
+
+                        setRPM(RPM, now);
+                        geoData.setEngineRpmTimestamp(now);
                         Log.d(TAG, "rpm:"+RPM);
 
                         double speed =
@@ -220,11 +192,17 @@ public class OBDDataInfo {
                                         13, packet);
                         if(speed != -1) {
                             geoData.setVehicleSpeed(speed);
-                            geoData.setVehicleSpeedTimestamp(now);
                         }
-
+                        geoData.setVehicleSpeedTimestamp(now);
                         break;
                     case 3:
+                        double fuel_level = (double) WQData.getIntValue(WQData.FORMAT_UINT32,
+                                1,packet);
+                        if (fuel_level != -1)
+                            geoData.setFuelLevel(fuel_level);
+                        geoData.setFuelLevelTimestamp(now);
+                        Log.d(TAG, "fuel:"+fuel_level);
+
                         break;
 
                     case 4:
@@ -235,17 +213,14 @@ public class OBDDataInfo {
                         double engine_hours = WQData.getIntValue(WQData.FORMAT_UINT32, 5, packet);
                         if (engine_hours != -1) {
                             geoData.setEngTotalHours(engine_hours / 10); //its divided by 10 because device is sending (hours times 10)
-                            geoData.setEngTotalHoursTimestamp(now);
                         }
+                        geoData.setEngTotalHoursTimestamp(now);
                         break;
                 }
                 ind++;
             }
 
         }
-
-
-        // PROTOCOL ONE
         else if(getProtocolId()==1) {
             byte[] geobuff = new byte[500];
             Byte pi = 0,totalPacket = getTotalPacket();
@@ -285,15 +260,14 @@ public class OBDDataInfo {
 
                         break;
 
-                    case 0x02: // Odometer
+                    case 0x02:
                         index_count+=2;
                         tbytes= WQData.fixUint32Endian(geobuff, index_count);
                         double odometer = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
                         if (odometer != -1) {
                             geoData.setOdometer(odometer);
-                            geoData.setOdometerTimestamp(now);
                         }
-
+                        geoData.setOdometerTimestamp(now);
                         index_count = index_count+4;
                         break;
 
@@ -301,10 +275,9 @@ public class OBDDataInfo {
                         index_count+=2;
                         tbytes= WQData.fixUint32Endian(geobuff, index_count);
                         double RPM = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
-                        if (RPM != -1) {
-                            geoData.setEngineRPM(RPM);
-                            geoData.setEngineRpmTimestamp(now);
-                        }
+                        setRPM(RPM, now);
+                        geoData.setEngineRpmTimestamp(now);
+                        Log.d(TAG, "rpm:"+RPM);
                         index_count = index_count+4;
 
                         break;
@@ -320,13 +293,20 @@ public class OBDDataInfo {
                         double speed = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
                         if (speed != -1) {
                             geoData.setVehicleSpeed(speed);
-                            geoData.setVehicleSpeedTimestamp(now);
                         }
+                        geoData.setVehicleSpeedTimestamp(now);
                         index_count = index_count+4;
                         break;
 
                     case 0x06: //FUEL LEVEL
                         index_count+=2;
+                        tbytes= WQData.fixUint32Endian(geobuff, index_count);
+                        double fuel_level = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
+                        if (fuel_level != -1) {
+                            geoData.setFuelLevel(fuel_level);
+                        }
+                        geoData.setFuelLevelTimestamp(now);
+                        Log.d(TAG, "fuel:"+fuel_level);
                         index_count = index_count+4;
 
                         break;
@@ -387,8 +367,8 @@ public class OBDDataInfo {
                         double engine_hours = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
                         if (engine_hours != -1) {
                             geoData.setEngTotalHours(engine_hours / 10); //its divided by 10 because device is sending (hours times 10)
-                            geoData.setEngTotalHoursTimestamp(now);
                         }
+                        geoData.setEngTotalHoursTimestamp(now);
                         index_count = index_count+4;
                         break;
                     case 0x12:
@@ -420,6 +400,16 @@ public class OBDDataInfo {
                         DateTime _startDate = new DateTime( _startTS );
                         DateTimeFormatter formatter1 = DateTimeFormat.forPattern("yyyy/M/d h:m:s a");
                         Log.d(TAG, "LATLON TIMESTAMP: " + formatter1.print(_startDate));
+                        index_count = index_count+4;
+                        break;
+                    case 0x1F:
+                        index_count+=2;
+                        tbytes= WQData.fixUint32Endian(geobuff, index_count);
+                        double heading = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
+                        if (heading != -1) {
+                            geoData.setGpsHeading(heading);
+                        }
+
                         index_count = index_count+4;
                         break;
                     case 0x16:
@@ -430,8 +420,6 @@ public class OBDDataInfo {
                     case 0x1B:
                     case 0x1C:
                     case 0x1D:
-
-                        // Unidentified driver events
                     case 0x1E:
                         byte index_value =  geobuff[index_count];
                         index_count+=2;
@@ -442,60 +430,42 @@ public class OBDDataInfo {
                                 totalUdrvEvents = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
                                 Log.d(TAG, "Total unidentified Event:" + totalUdrvEvents       +", ");
                                 geoData.setTotalUdrvEvents(totalUdrvEvents);
-                                //unidentifiedEvent.setTimestamp(tstamp);
-                                    /*val contains unidentified driver event timestamp*/
                                 break;
                             case 0x17:
                                 long tstamp = WQData.getIntValue(WQData.FORMAT_UINT32,0, tbytes);
                                 Log.d(TAG, "timestamp:" + tstamp       +", ");
                                 unidentifiedEvent.setTimestamp(tstamp);
-                                        /*val contains unidentified driver event timestamp*/
                                 break;
                             case 0x16:
                                 Integer reason = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
                                 Log.d(TAG, "Unidentified Data:\r\n");
-                                // Log.d(TAG, "Reason:" +reason+", " );
                                 unidentifiedEvent.setReason(reason);
-                                        /*val contains unidentified driver event reason*/
-                                        /* At this point, the unidentified driver data is usable. Reason is packaged last*/
                                 break;
                             case 0x18:
                                 double eHrs = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
-                                //    Log.d(TAG, "Engine Hours:" +eHrs +", ");
                                 unidentifiedEvent.setEngTotalHours(eHrs);
-                                        /*val contains unidentified driver event enginehours*/
                                 break;
                             case 0x19:
                                 double vSpeed = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
-                                // Log.d(TAG, "ECU Speed:" +vSpeed +", ");
                                 unidentifiedEvent.setVehicleSpeed(vSpeed);
-                                        /*val contains unidentified driver event ecu speed*/
                                 break;
                             case 0x1A:
                                 double odom = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
-                                // Log.d(TAG, "Odometer:" +odom +", " );
                                 unidentifiedEvent.setOdometer(odom);
-                                        /*val contains unidentified driver event odometer*/
                                 break;
                             case 0x1B:
                                 double lat = WQData.getIntValue(WQData.FORMAT_UINT32,  0,tbytes);
-                                // Log.d(TAG, "latitude:" +lat + ", " );
                                 if (lat != -1)
                                     unidentifiedEvent.setLatitude(lat / 100000);
-                                                /*val contains unidentified driver event latitude*/
                                 break;
                             case 0x1C:
                                 double lon = WQData.getIntValue(WQData.FORMAT_UINT32,  0,tbytes);
-                                // Log.d(TAG, "longitude:" +lon+", " );
                                 if (lon != -1)
                                     unidentifiedEvent.setLongitude(lon / 100000);
-                                        /*val contains unidentified driver event longitude*/
                                 break;
                             case 0x1D:
                                 long gpsTime = WQData.getIntValue(WQData.FORMAT_UINT32, 0, tbytes);
-                                // Log.d(TAG, "location time:" +gpsTime+"\r\n" );
                                 unidentifiedEvent.setGPSTimestamp(gpsTime);
-                                        /*val contains unidentified driver location time*/
                                 break;
                         }
                         break;
@@ -506,12 +476,40 @@ public class OBDDataInfo {
                 if(parseexit)
                     break;
             }
-        if(unidentifiedEvent.getTimestamp()!=null ){
-            geoData.getUnidentifiedEventArrayList().add(unidentifiedEvent);
-        }
+            if(unidentifiedEvent.getTimestamp()!=null ){
+                geoData.getUnidentifiedEventArrayList().add(unidentifiedEvent);
+            }
+
+    }
+
+    sb.append(new String("vi:"+geoData.getVin()+"("+now+")"));
+    sb.append(new String("od:"+geoData.getOdometer()+"("+now+")"));
+    sb.append(new String("r:"+geoData.getEngineRPM()+"("+now+")"));
+    sb.append(new String("fl:"+geoData.getFuelLevel()+"("+now+")"));
+    sb.append(new String("sp:"+geoData.getVehicleSpeed()+"("+now+")"));
+    sb.append(new String("enhr:"+geoData.getEngTotalHours()+"("+now+")"));
+    sb.append(new String("lt:"+geoData.getLatitude()));
+    sb.append(new String("ln:"+geoData.getLongitude()));
+    DateTime _startDate = new DateTime( geoData.getGpsTime() );
+    DateTimeFormatter formatter1 = DateTimeFormat.forPattern("yyyy/M/d h:m:s a");
+    sb.append(new String("gt:"+formatter1.print(_startDate)));
+    sb.append("TUL: "+geoData.getTotalUdrvEvents() + " ");
+    ArrayList<UnidentifiedEvent> uList =  geoData.getUnidentifiedEventArrayList();
+    for(int i = 0; i <uList.size();i++ ){
+        UnidentifiedEvent ue = uList.get(i);
+        sb.append(new String("( ure:"+ue.getReason()+ " "));
+        sb.append(new String("uts:"+ue.getTimestamp()+" "));
+        sb.append(new String("uhr:"+ue.getEngTotalHours() + " "));
+        sb.append(new String("us:"+ue.getVehicleSpeed()+" "));
+        sb.append(new String("uo:"+ue.getOdometer()+ " "));
+        sb.append(new String("ult:"+ue.getLatitude()+ " "));
+        sb.append(new String("uln:"+ue.getLongitude()+ " "));
+        sb.append(new String("ugt:"+ue.getGPSTimestamp()+ ")"));
 
     }
-    Log.d(TAG, "New Data Updated: RPM:  " + geoData.getEngineRPM()+", Time: "+formatter.print(now));
+    String logString = new String(sb);
+    Log.e(TAG, logString);
+    Log.d(TAG, "New Data Updated: RPM:  " + geoData.getEngineRPM() + ", Time: " + formatter.print(now));
 
     return geoData;
     }
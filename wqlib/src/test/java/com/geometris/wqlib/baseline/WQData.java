@@ -1,4 +1,4 @@
-package com.geometris.wqlib;
+package com.geometris.wqlib.baseline;
 
 /**
  * Utility class to convert from raw binary data into
@@ -0,0 +1,5 @@
+/**
+ * Protocol decoder as it was before protocol 1 decoding was reworked, kept unchanged as the reference
+ * the decode equivalence tests compare the current decoder with.
+ */
+package com.geometris.wqlib.baseline;